@@ -0,0 +1,29 @@
+package de.unisaarland.unsuparse;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks reading the fixture corpus (tokenizing, vocabulary and counts) on one thread.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CorpusBenchmark {
+
+	@Benchmark
+	public Corpus buildCorpus(ParserState state) throws IOException {
+		return new Corpus(state.file.getPath(), new Workers(1), new CorpusOptions(state.file.getPath(), state.usesPos()));
+	}
+
+}
@@ -0,0 +1,93 @@
+package de.unisaarland.unsuparse;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Reproducible corpora for the benchmarks. Word frequencies follow a Zipf distribution
+ * and every word has a fixed POS tag, so the same seed always gives the same corpus.
+ */
+public class Fixtures {
+	public static final int SENTENCES = 2000;
+	public static final long SEED = 42;
+	public static final double THRESHOLD = 0.05;
+
+	private static final int WORDS = 5000;
+	private static final String[] TAGS = {"ART", "NN", "NE", "ADJA", "VVFIN", "VAFIN", "APPR", "ADV", "PPER", "KON", "PTKNEG", "CARD"};
+
+	/**
+	 * Writes a corpus with POS tags to a temporary file.
+	 *
+	 * @param sentences number of sentences
+	 * @param seed
+	 * @return corpus file, deleted on exit
+	 * @throws IOException
+	 */
+	public static File corpus(int sentences, long seed) throws IOException {
+		Random random = new Random(seed);
+		double[] cumulative = new double[WORDS];
+		double sum = 0;
+		for (int w = 0; w < WORDS; w++) {
+			sum += 1.0 / (w + 1);
+			cumulative[w] = sum;
+		}
+		File file = File.createTempFile("unsuparse-bench", ".txt");
+		file.deleteOnExit();
+		PrintWriter writer = new PrintWriter(file, "UTF-8");
+		try {
+			for (int i = 0; i < sentences; i++) {
+				int length = 4 + random.nextInt(37);
+				for (int t = 0; t < length; t++) {
+					int w = -Arrays.binarySearch(cumulative, random.nextDouble() * sum) - 1;
+					w = Math.max(0, Math.min(WORDS - 1, w));
+					writer.println("w" + w + "\t" + TAGS[(w * 7 + w / 13) % TAGS.length]);
+				}
+				writer.println(".\t$.");
+				writer.println();
+			}
+		} finally {
+			writer.close();
+		}
+		return file;
+	}
+
+	/**
+	 * Reads the token lines of the sentences of a corpus file.
+	 *
+	 * @param file
+	 * @return token lines of every sentence
+	 * @throws IOException
+	 */
+	public static List<List<String>> sentences(File file) throws IOException {
+		List<List<String>> sentences = new ArrayList<List<String>>();
+		BufferedReader br = new BufferedReader(new FileReader(file));
+		try {
+			List<String> tokens = new ArrayList<String>();
+			String line;
+			while ((line = br.readLine()) != null) {
+				if (line.equals("")) {
+					if (!tokens.isEmpty()) {
+						sentences.add(tokens);
+						tokens = new ArrayList<String>();
+					}
+				} else {
+					tokens.add(line);
+				}
+			}
+			if (!tokens.isEmpty()) {
+				sentences.add(tokens);
+			}
+		} finally {
+			br.close();
+		}
+		return sentences;
+	}
+
+}
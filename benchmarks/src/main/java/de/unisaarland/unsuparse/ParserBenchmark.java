@@ -0,0 +1,126 @@
+package de.unisaarland.unsuparse;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the per-sentence hot paths of the parser on the fixture corpus.
+ * Benchmarks that change a sentence get a fresh one for every invocation; they work
+ * on whole sentences, so the setup cost per invocation is small in comparison. Note that the
+ * allocation reported by the GC profiler includes creating the fresh sentence.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmark {
+
+	/**
+	 * A fresh sentence for every invocation, going through the corpus in order.
+	 */
+	@State(Scope.Thread)
+	public static class FreshSentence {
+		Sentence sentence;
+		private int next;
+
+		@Setup(Level.Invocation)
+		public void setup(ParserState state) {
+			this.sentence = state.fresh(this.next);
+			this.next += 1;
+		}
+	}
+
+	/**
+	 * Parse trees of all sentences of the corpus.
+	 */
+	@State(Scope.Thread)
+	public static class Trees {
+		ConstituentTree[] trees;
+		private int next;
+
+		@Setup(Level.Trial)
+		public void setup(ParserState state) {
+			this.trees = new ConstituentTree[state.sentenceCount()];
+			for (int i = 0; i < this.trees.length; i++) {
+				this.trees[i] = state.parser.parse(state.fresh(i), Fixtures.THRESHOLD);
+			}
+		}
+
+		ConstituentTree next() {
+			ConstituentTree tree = this.trees[this.next];
+			this.next = (this.next + 1) % this.trees.length;
+			return tree;
+		}
+	}
+
+	/**
+	 * Separation values of all boundaries of a sentence.
+	 */
+	@Benchmark
+	public double sepDist(ParserState state, FreshSentence fresh) {
+		Sentence s = fresh.sentence;
+		double sum = 0;
+		for (int i = 0; i < s.length() - 1; i++) {
+			sum += state.parser.sepDist(s, i);
+		}
+		return sum;
+	}
+
+	/**
+	 * Scoring an unscored sentence and finding its best merge.
+	 */
+	@Benchmark
+	public Merge bestMerge(ParserState state, FreshSentence fresh) {
+		return state.parser.bestMerge(fresh.sentence, Fixtures.THRESHOLD, false);
+	}
+
+	/**
+	 * Merging a scored sentence down to a single constituent, without rescoring.
+	 */
+	@Benchmark
+	public int merge(ParserState state, FreshSentence fresh) {
+		Sentence s = fresh.sentence;
+		state.parser.bestMerge(s, Fixtures.THRESHOLD, false);
+		while (s.length() > 1) {
+			s.merge((s.length() - 1) / 2, false);
+		}
+		return s.length();
+	}
+
+	/**
+	 * Parsing a sentence with the learned model: safe merges and finishing.
+	 */
+	@Benchmark
+	public ConstituentTree parse(ParserState state, FreshSentence fresh) {
+		return state.parser.parse(fresh.sentence, Fixtures.THRESHOLD);
+	}
+
+	/**
+	 * Building the bracketed text of a parse tree.
+	 */
+	@Benchmark
+	public String treeToString(Trees trees) {
+		return trees.next().toString();
+	}
+
+	/**
+	 * Building the label text of a parse tree.
+	 */
+	@Benchmark
+	public String treeLabelText(Trees trees) {
+		return trees.next().getLabelText();
+	}
+
+}
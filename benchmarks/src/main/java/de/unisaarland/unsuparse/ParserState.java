@@ -0,0 +1,53 @@
+package de.unisaarland.unsuparse;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * A parser that has finished safe learning on the fixture corpus, in word or POS mode.
+ * Fresh (unmerged) sentences of the corpus are created from their token lines.
+ */
+@State(Scope.Benchmark)
+public class ParserState {
+	@Param({"words", "pos"})
+	public String mode;
+
+	File file;
+	Parser parser;
+	private SentenceReader reader;
+	private List<List<String>> sentences;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		boolean usePos = this.mode.equals("pos");
+		this.file = Fixtures.corpus(Fixtures.SENTENCES, Fixtures.SEED);
+		this.parser = new Parser(this.file.getPath(), 1, new CorpusOptions(this.file.getPath(), usePos));
+		this.parser.learn(Fixtures.THRESHOLD);
+		this.reader = new SentenceReader(null, usePos, this.parser.getVocabulary());
+		this.sentences = Fixtures.sentences(this.file);
+	}
+
+	boolean usesPos() {
+		return this.mode.equals("pos");
+	}
+
+	int sentenceCount() {
+		return this.sentences.size();
+	}
+
+	/**
+	 * @param i
+	 * @return the i-th sentence of the corpus, not merged yet
+	 */
+	Sentence fresh(int i) {
+		return this.reader.sentence(this.sentences.get(i % this.sentences.size()));
+	}
+
+}
@@ -0,0 +1,51 @@
+package de.unisaarland.unsuparse;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the log-likelihood significance on counts of realistic magnitude.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SigBenchmark {
+	private static final int INPUTS = 1024;
+	private static final double SIZE = 1e6;
+
+	private double[] a = new double[INPUTS];
+	private double[] b = new double[INPUTS];
+	private double[] c = new double[INPUTS];
+	private int i;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(Fixtures.SEED);
+		for (int k = 0; k < INPUTS; k++) {
+			this.b[k] = 0.1 + random.nextInt(10000);
+			this.c[k] = 0.1 + random.nextInt(10000);
+			this.a[k] = 0.1 + random.nextInt((int) Math.min(this.b[k], this.c[k]) + 1);
+		}
+	}
+
+	@Benchmark
+	public double sig() {
+		int k = this.i++ & (INPUTS - 1);
+		return Statistics.sig(this.a[k], this.b[k], this.c[k], SIZE);
+	}
+
+}
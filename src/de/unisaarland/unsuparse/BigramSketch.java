@@ -0,0 +1,221 @@
+package de.unisaarland.unsuparse;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Approximate bigram counts in a fixed amount of memory, for vocabularies whose bigrams do not fit
+ * into an exact table. Counts are kept in a Count-Min sketch with conservative update: every bigram
+ * is hashed to one counter in each of DEPTH rows, an occurrence only raises the counters that are at
+ * the current minimum, and the estimate is the minimum of the counters. Estimates are never too low,
+ * a bigram with estimate 0 was never seen, and the error is at most e/width times the number of
+ * counted bigrams with probability 1-e^-DEPTH.
+ *
+ * The heavy hitters, bigrams seen at least total/heavyLimit times, are counted exactly in the bigram
+ * table of the vocabulary, which is limited to heavyLimit entries. They are found with a second pass
+ * over the corpus after the sketch is filled. A sample of the other bigrams (selected by hash) is also
+ * counted exactly, only to measure the error the sketch actually has.
+ */
+public class BigramSketch {
+	static final int DEPTH = 4; // rows
+	private static final int SAMPLE_BITS = 8; // one in 2^SAMPLE_BITS bigrams is sampled
+	private static final int MAX_SAMPLE = 1 << 16; // distinct bigrams in the sample
+	private static final int HEAVY_SLOT_BYTES = 80; // key, count and significance value, at most 4 slots per entry
+
+	private int width; // counters per row, a power of two
+	private int[] counters; // DEPTH rows of width counters
+	private int heavyLimit; // maximal number of exactly counted bigrams
+	private long total; // bigram occurrences counted in the sketch
+
+	// error measured on the sample when the sketch was filled, -1 if not measured
+	private int sampled;
+	private long maxError;
+	private double meanError;
+	private double exactShare;
+
+	/**
+	 * Creates an empty sketch that uses about the given memory together with the table of heavy hitters,
+	 * three quarters for the sketch and one quarter for the heavy hitters.
+	 *
+	 * @param memory bytes
+	 */
+	public BigramSketch(long memory) {
+		long rowBytes = Math.max(64, memory * 3 / 4 / DEPTH);
+		this.width = (int) Long.highestOneBit(Math.min(rowBytes / 4, 1 << 28));
+		this.counters = new int[DEPTH * this.width];
+		this.heavyLimit = (int) Math.max(16, Math.min(memory / 4 / HEAVY_SLOT_BYTES, 1 << 28));
+		this.total = 0;
+		this.sampled = -1;
+	}
+
+	/**
+	 * Creates a sketch from the arrays of a model file.
+	 */
+	BigramSketch(int width, int heavyLimit, long total, int[] counters) {
+		this.width = width;
+		this.counters = counters;
+		this.heavyLimit = heavyLimit;
+		this.total = total;
+		this.sampled = -1;
+	}
+
+	private static long key(int id1, int id2) {
+		return ((long) id1 << 32) | (id2 & 0xffffffffL);
+	}
+
+	private int index(int row, long key) {
+		long h = (key + (row + 1) * 0x632BE59BD9B4E019L) * 0x9E3779B97F4A7C15L;
+		h ^= h >>> 29;
+		return row * this.width + ((int) h & (this.width - 1));
+	}
+
+	private static boolean isSampled(long key) {
+		long h = key * 0xC2B2AE3D27D4EB4FL;
+		return (h >>> (64 - SAMPLE_BITS)) == 0;
+	}
+
+	private int estimate(long key) {
+		int min = Integer.MAX_VALUE;
+		for (int row = 0; row < DEPTH; row++) {
+			min = Math.min(min, this.counters[this.index(row, key)]);
+		}
+		return min;
+	}
+
+	/**
+	 * Returns how often label id1 preceded label id2, or more.
+	 *
+	 * @param id1
+	 * @param id2
+	 * @return estimated bigram count
+	 */
+	public int estimate(int id1, int id2) {
+		return this.estimate(key(id1, id2));
+	}
+
+	/**
+	 * Counts one occurrence with conservative update.
+	 */
+	private void increment(long key) {
+		int next = this.estimate(key) + 1;
+		for (int row = 0; row < DEPTH; row++) {
+			int i = this.index(row, key);
+			if (this.counters[i] < next) {
+				this.counters[i] = next;
+			}
+		}
+		this.total += 1;
+	}
+
+	/**
+	 * Counts the bigrams of the sentences. Bigrams already in the table of heavy hitters are counted there.
+	 * If promote is set, the bigrams that turn out to be heavy hitters are added to the table afterwards,
+	 * with all of their occurrences in the sentences, and the error of the sketch is measured. This is
+	 * only correct if the sentences are all the sketch has counted, so promote must not be set when
+	 * sentences are added to a sketch filled before.
+	 *
+	 * @param sents
+	 * @param heavy exact counts of the heavy hitters
+	 * @param promote
+	 */
+	public void count(List<Sentence> sents, BigramTable heavy, boolean promote) {
+		BigramTable sample = promote ? new BigramTable() : null;
+		for (Sentence s : sents) {
+			for (int t = 1; t < s.tokens(); t++) {
+				int id1 = s.getLabel(t-1).getId();
+				int id2 = s.getLabel(t).getId();
+				int slot = heavy.find(id1, id2);
+				if (slot >= 0) {
+					heavy.increment(id1, id2);
+					continue;
+				}
+				long key = key(id1, id2);
+				this.increment(key);
+				if (sample != null && isSampled(key) && (sample.size() < MAX_SAMPLE || sample.find(id1, id2) >= 0)) {
+					sample.increment(id1, id2);
+				}
+			}
+		}
+		if (!promote) {
+			this.sampled = -1;
+			return;
+		}
+
+		long cutoff = Math.max(2, (this.total + this.heavyLimit - 1) / this.heavyLimit);
+		for (Sentence s : sents) {
+			for (int t = 1; t < s.tokens(); t++) {
+				int id1 = s.getLabel(t-1).getId();
+				int id2 = s.getLabel(t).getId();
+				if (heavy.find(id1, id2) >= 0 || (heavy.size() < this.heavyLimit && this.estimate(id1, id2) >= cutoff)) {
+					heavy.increment(id1, id2);
+				}
+			}
+		}
+
+		this.sampled = 0;
+		this.maxError = 0;
+		long errorSum = 0;
+		int exact = 0;
+		for (int slot = 0; slot < sample.capacity(); slot++) {
+			if (sample.isUsed(slot) && heavy.find(sample.firstId(slot), sample.secondId(slot)) < 0) {
+				long error = this.estimate(sample.firstId(slot), sample.secondId(slot)) - sample.count(slot);
+				this.sampled += 1;
+				this.maxError = Math.max(this.maxError, error);
+				errorSum += error;
+				if (error == 0) {
+					exact += 1;
+				}
+			}
+		}
+		this.meanError = this.sampled == 0 ? 0 : errorSum / (double) this.sampled;
+		this.exactShare = this.sampled == 0 ? 1 : exact / (double) this.sampled;
+	}
+
+	/**
+	 * @return the error that is not exceeded with probability 1-e^-DEPTH
+	 */
+	public double errorBound() {
+		return Math.E / this.width * this.total;
+	}
+
+	/**
+	 * @return the sketch parameters, its error bound and the error measured on the sample as a JSON object
+	 */
+	public String toJson() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\"depth\": ").append(DEPTH);
+		sb.append(", \"width\": ").append(this.width);
+		sb.append(", \"bytes\": ").append(4L * this.counters.length);
+		sb.append(", \"heavyLimit\": ").append(this.heavyLimit);
+		sb.append(", \"counted\": ").append(this.total);
+		sb.append(", \"errorBound\": ").append(String.format(Locale.ROOT, "%.1f", this.errorBound()));
+		sb.append(", \"errorProbability\": ").append(String.format(Locale.ROOT, "%.4f", Math.exp(-DEPTH)));
+		if (this.sampled >= 0) {
+			sb.append(", \"sampled\": ").append(this.sampled);
+			sb.append(", \"maxError\": ").append(this.maxError);
+			sb.append(", \"meanError\": ").append(String.format(Locale.ROOT, "%.3f", this.meanError));
+			sb.append(", \"exactShare\": ").append(String.format(Locale.ROOT, "%.4f", this.exactShare));
+		}
+		sb.append("}");
+		return sb.toString();
+	}
+
+	// The raw values are used to write model files.
+
+	int width() {
+		return this.width;
+	}
+
+	int heavyLimit() {
+		return this.heavyLimit;
+	}
+
+	long total() {
+		return this.total;
+	}
+
+	int[] counters() {
+		return this.counters;
+	}
+
+}
@@ -0,0 +1,173 @@
+package de.unisaarland.unsuparse;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash table holding the bigram counts of a corpus.
+ * A bigram is keyed by the ids of its two labels, so no String hashing or
+ * boxing is needed to look up a count.
+ */
+public class BigramTable {
+	private static final long EMPTY = -1L;
+
+	private long[] keys; // (id1, id2) packed into one long, EMPTY for free slots
+	private int[] counts;
+	private int size; // number of used slots
+	private int mask;
+
+	public BigramTable() {
+		this(1024);
+	}
+
+	/**
+	 * @param expected number of bigrams the table should hold without resizing
+	 */
+	public BigramTable(int expected) {
+		int capacity = Integer.highestOneBit(Math.max(16, expected * 2 - 1)) << 1;
+		this.keys = new long[capacity];
+		Arrays.fill(this.keys, EMPTY);
+		this.counts = new int[capacity];
+		this.size = 0;
+		this.mask = capacity - 1;
+	}
+
+	/**
+	 * Creates a table from the arrays of a model file.
+	 */
+	BigramTable(long[] keys, int[] counts, int size) {
+		this.keys = keys;
+		this.counts = counts;
+		this.size = size;
+		this.mask = keys.length - 1;
+	}
+
+	private static long key(int id1, int id2) {
+		return ((long) id1 << 32) | (id2 & 0xffffffffL);
+	}
+
+	private int slot(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & this.mask;
+	}
+
+	/**
+	 * Returns the slot of the bigram (id1, id2), or -1 if it was never seen.
+	 *
+	 * @param id1
+	 * @param id2
+	 * @return slot index
+	 */
+	public int find(int id1, int id2) {
+		long key = key(id1, id2);
+		int i = slot(key);
+		while (this.keys[i] != EMPTY) {
+			if (this.keys[i] == key) {
+				return i;
+			}
+			i = (i + 1) & this.mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns how often label id1 preceded label id2.
+	 *
+	 * @param id1
+	 * @param id2
+	 * @return bigram count
+	 */
+	public int get(int id1, int id2) {
+		int i = this.find(id1, id2);
+		if (i < 0) {
+			return 0;
+		}
+		return this.counts[i];
+	}
+
+	public void increment(int id1, int id2) {
+		this.add(id1, id2, 1);
+	}
+
+	/**
+	 * Adds n to the count of the bigram (id1, id2).
+	 *
+	 * @param id1
+	 * @param id2
+	 * @param n
+	 */
+	public void add(int id1, int id2, int n) {
+		long key = key(id1, id2);
+		int i = slot(key);
+		while (this.keys[i] != EMPTY) {
+			if (this.keys[i] == key) {
+				this.counts[i] += n;
+				return;
+			}
+			i = (i + 1) & this.mask;
+		}
+		this.keys[i] = key;
+		this.counts[i] = n;
+		this.size += 1;
+		if (this.size * 2 > this.keys.length) {
+			this.resize();
+		}
+	}
+
+	private void resize() {
+		long[] oldKeys = this.keys;
+		int[] oldCounts = this.counts;
+		this.keys = new long[oldKeys.length * 2];
+		Arrays.fill(this.keys, EMPTY);
+		this.counts = new int[oldKeys.length * 2];
+		this.mask = this.keys.length - 1;
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (oldKeys[j] != EMPTY) {
+				int i = slot(oldKeys[j]);
+				while (this.keys[i] != EMPTY) {
+					i = (i + 1) & this.mask;
+				}
+				this.keys[i] = oldKeys[j];
+				this.counts[i] = oldCounts[j];
+			}
+		}
+	}
+
+	/**
+	 * @return number of slots, used and free
+	 */
+	public int capacity() {
+		return this.keys.length;
+	}
+
+	/**
+	 * @return number of distinct bigrams
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	public boolean isUsed(int slot) {
+		return this.keys[slot] != EMPTY;
+	}
+
+	public int firstId(int slot) {
+		return (int) (this.keys[slot] >>> 32);
+	}
+
+	public int secondId(int slot) {
+		return (int) this.keys[slot];
+	}
+
+	public int count(int slot) {
+		return this.counts[slot];
+	}
+
+	long[] keys() {
+		return this.keys;
+	}
+
+	int[] counts() {
+		return this.counts;
+	}
+
+}
@@ -0,0 +1,213 @@
+package de.unisaarland.unsuparse;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the separation values of the boundaries of a sentence in a segment tree,
+ * so that the boundary with the lowest value can be found without rescanning the sentence.
+ * Boundaries are addressed by their gap position, i.e. their index at the time the tree
+ * was created, which does not change when constituents are merged. Merged boundaries are
+ * removed from the tree; the index of a boundary in the current constituent list is its
+ * rank among the remaining boundaries.
+ */
+public class BoundaryScores {
+	private int n; // number of gap positions
+	private int leaves; // number of leaves of the tree (power of two)
+	private double[] values; // separation value by gap position
+	private boolean[] present; // false once a boundary has been merged
+	private int[] best; // gap position with the lowest value per tree node, -1 if none
+	private int[] count; // number of present boundaries per tree node
+	private int[] stale; // gap positions that have to be rescored
+	private boolean[] isStale;
+	private int staleCount;
+
+	/**
+	 * Creates the tree for a sentence with n+1 constituents. All boundaries are present and stale.
+	 *
+	 * @param n number of boundaries
+	 */
+	public BoundaryScores(int n) {
+		this.n = n;
+		this.leaves = 1;
+		while (this.leaves < n) {
+			this.leaves *= 2;
+		}
+		this.values = new double[n];
+		this.present = new boolean[n];
+		Arrays.fill(this.present, true);
+		this.best = new int[2*this.leaves];
+		this.count = new int[2*this.leaves];
+		Arrays.fill(this.best, -1);
+		for (int p = 0; p < n; p++) {
+			this.best[this.leaves+p] = p;
+			this.count[this.leaves+p] = 1;
+		}
+		for (int node = this.leaves-1; node > 0; node--) {
+			this.pull(node);
+		}
+		this.stale = new int[n];
+		this.isStale = new boolean[n];
+		for (int p = 0; p < n; p++) {
+			this.markStale(p);
+		}
+	}
+
+	/**
+	 * Lower value wins, on ties the boundary to the left. NaN values never win,
+	 * just like in a linear scan comparing with <.
+	 */
+	private int better(int p, int q) {
+		if (p < 0) {
+			return q;
+		}
+		if (q < 0) {
+			return p;
+		}
+		double a = this.values[p];
+		double b = this.values[q];
+		if (Double.isNaN(a)) {
+			return Double.isNaN(b) ? Math.min(p, q) : q;
+		}
+		if (b < a || (b == a && q < p)) {
+			return q;
+		}
+		return p;
+	}
+
+	private void pull(int node) {
+		this.best[node] = this.better(this.best[2*node], this.best[2*node+1]);
+		this.count[node] = this.count[2*node] + this.count[2*node+1];
+	}
+
+	private void update(int p) {
+		for (int node = (this.leaves+p)/2; node > 0; node /= 2) {
+			this.pull(node);
+		}
+	}
+
+	/**
+	 * Sets the separation value of the boundary at gap position p.
+	 *
+	 * @param p
+	 * @param value
+	 */
+	public void set(int p, double value) {
+		this.values[p] = value;
+		this.update(p);
+	}
+
+	public double get(int p) {
+		return this.values[p];
+	}
+
+	public boolean isPresent(int p) {
+		return this.present[p];
+	}
+
+	/**
+	 * Removes the boundary at gap position p, after the constituents on both sides were merged.
+	 *
+	 * @param p
+	 */
+	public void remove(int p) {
+		this.present[p] = false;
+		this.best[this.leaves+p] = -1;
+		this.count[this.leaves+p] = 0;
+		this.update(p);
+	}
+
+	/**
+	 * Returns the gap position of the boundary with the lowest separation value.
+	 * Like the linear scan in Parser, a NaN value on the first boundary is never replaced.
+	 *
+	 * @return gap position, or -1 if no boundary is left
+	 */
+	public int best() {
+		int first = this.select(0);
+		if (first >= 0 && Double.isNaN(this.values[first])) {
+			return first;
+		}
+		return this.best[1];
+	}
+
+	/**
+	 * @return number of remaining boundaries
+	 */
+	public int size() {
+		return this.count[1];
+	}
+
+	/**
+	 * Returns the index of the boundary at gap position p in the current constituent list.
+	 *
+	 * @param p
+	 * @return number of present boundaries left of p
+	 */
+	public int rank(int p) {
+		int r = 0;
+		for (int node = this.leaves+p; node > 1; node /= 2) {
+			if (node % 2 == 1) {
+				r += this.count[node-1];
+			}
+		}
+		return r;
+	}
+
+	/**
+	 * Returns the gap position of the k-th remaining boundary.
+	 *
+	 * @param k
+	 * @return gap position, or -1 if there are not enough boundaries
+	 */
+	public int select(int k) {
+		if (k < 0 || k >= this.count[1]) {
+			return -1;
+		}
+		int node = 1;
+		while (node < this.leaves) {
+			if (k < this.count[2*node]) {
+				node = 2*node;
+			} else {
+				k -= this.count[2*node];
+				node = 2*node+1;
+			}
+		}
+		return node - this.leaves;
+	}
+
+	/**
+	 * Marks the boundary at gap position p to be rescored.
+	 *
+	 * @param p
+	 */
+	public void markStale(int p) {
+		if (!this.isStale[p]) {
+			this.isStale[p] = true;
+			this.stale[this.staleCount] = p;
+			this.staleCount += 1;
+		}
+	}
+
+	/**
+	 * Returns the gap positions marked stale since the last call and clears the marks.
+	 * Positions that were removed in the meantime are included and have to be skipped.
+	 *
+	 * @return stale gap positions
+	 */
+	public int[] takeStale() {
+		int[] res = Arrays.copyOf(this.stale, this.staleCount);
+		for (int p : res) {
+			this.isStale[p] = false;
+		}
+		this.staleCount = 0;
+		return res;
+	}
+
+	/**
+	 * @return number of gap positions, including removed ones
+	 */
+	public int capacity() {
+		return this.n;
+	}
+
+}
@@ -0,0 +1,304 @@
+package de.unisaarland.unsuparse;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Groups the merges proposed during safe learning by their label sequence. Sequences are looked up
+ * by a 64-bit hash of their label ids, and a hash match is verified by comparing the labels with
+ * those of a proposal already in the group, so colliding sequences get groups of their own.
+ *
+ * Proposals are identified by ids the caller assigns, e.g. the sentence index if every sentence
+ * proposes at most one merge. The labels of a token never change, so the proposed span of any
+ * member stands for the sequence of its group. Every group has at least one member, so all arrays
+ * are allocated once for the number of proposal ids.
+ *
+ * A proposal can carry a weight, the number of sentences it stands for if sentences with the same
+ * labels are only learned on once (see {@link Corpus#getUniqueSentences()}). The size of a group
+ * is the sum of the weights of its members.
+ */
+public class CandidateTable {
+	private List<Sentence> sents;
+	
+	// by proposal
+	private int[] sentence; // index of the proposing sentence
+	private int[] group; // group of the proposal, -1 if it is not in one
+	private int[] next; // next member of the same group, -1 for the last
+	private int[] prev; // previous member of the same group, -1 for the first
+	private int[] start; // first token of the proposed span
+	private int[] end; // last token+1 of the proposed span
+	private int[] weight; // number of sentences the proposal stands for
+	
+	// by group
+	private long[] hash;
+	private int[] head; // first member
+	private int[] size; // sum of the weights of the members
+	private int[] free; // unused group ids
+	private int freeCount;
+	private boolean[] isTouched;
+	private int[] touched; // groups joined since the last call of clearTouched
+	private int touchedCount;
+	
+	private int[] slots; // open-addressing index of the groups by hash, -1 for free slots
+	private int mask;
+	
+	/**
+	 * Creates a table for at most one proposal per sentence, with the sentence index as proposal id.
+	 * 
+	 * @param sents the sentences of the corpus
+	 */
+	public CandidateTable(List<Sentence> sents) {
+		this(sents, sents.size());
+	}
+	
+	/**
+	 * @param sents the sentences of the corpus
+	 * @param n number of proposal ids
+	 */
+	public CandidateTable(List<Sentence> sents, int n) {
+		this.sents = sents;
+		this.sentence = new int[n];
+		this.group = new int[n];
+		Arrays.fill(this.group, -1);
+		this.next = new int[n];
+		this.prev = new int[n];
+		this.start = new int[n];
+		this.end = new int[n];
+		this.weight = new int[n];
+		this.hash = new long[n];
+		this.head = new int[n];
+		this.size = new int[n];
+		this.free = new int[n];
+		for (int g = 0; g < n; g++) {
+			this.free[g] = n - 1 - g;
+		}
+		this.freeCount = n;
+		this.isTouched = new boolean[n];
+		this.touched = new int[n];
+		this.touchedCount = 0;
+		int capacity = Integer.highestOneBit(Math.max(8, n * 2 - 1)) << 1;
+		this.slots = new int[capacity];
+		Arrays.fill(this.slots, -1);
+		this.mask = capacity - 1;
+	}
+	
+	/**
+	 * Returns the hash of the labels of the tokens start to end-1 of a sentence.
+	 * 
+	 * @param s
+	 * @param start
+	 * @param end
+	 * @return 64-bit hash
+	 */
+	public static long hash(Sentence s, int start, int end) {
+		long h = end - start;
+		for (int t = start; t < end; t++) {
+			h = (h ^ s.getLabel(t).getId()) * 0x9E3779B97F4A7C15L;
+			h ^= h >>> 31;
+		}
+		return h;
+	}
+	
+	private int home(long hash) {
+		return (int) (hash ^ (hash >>> 32)) & this.mask;
+	}
+	
+	/**
+	 * @return true if the labels of proposal i are those of group g
+	 */
+	private boolean matches(int i, int g) {
+		int h = this.head[g];
+		int length = this.end[i] - this.start[i];
+		if (length != this.end[h] - this.start[h]) {
+			return false;
+		}
+		Sentence s = this.sents.get(this.sentence[i]);
+		Sentence r = this.sents.get(this.sentence[h]);
+		for (int t = 0; t < length; t++) {
+			if (s.getLabel(this.start[i] + t).getId() != r.getLabel(this.start[h] + t).getId()) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Adds sentence i, which proposes to merge the tokens start to end-1, to the group of its labels.
+	 * 
+	 * @param i sentence index, which is also the proposal id
+	 * @param start
+	 * @param end
+	 * @param hash hash of the labels, see {@link #hash(Sentence, int, int)}
+	 */
+	public void add(int i, int start, int end, long hash) {
+		this.add(i, i, start, end, hash);
+	}
+	
+	/**
+	 * Adds a proposal to merge the tokens start to end-1 of a sentence to the group of its labels.
+	 * 
+	 * @param i proposal id
+	 * @param sentence sentence index
+	 * @param start
+	 * @param end
+	 * @param hash hash of the labels, see {@link #hash(Sentence, int, int)}
+	 */
+	public void add(int i, int sentence, int start, int end, long hash) {
+		this.add(i, sentence, start, end, hash, 1);
+	}
+	
+	/**
+	 * Adds a proposal that stands for several sentences with the same labels to the group of its labels.
+	 * 
+	 * @param i proposal id
+	 * @param sentence sentence index
+	 * @param start
+	 * @param end
+	 * @param hash hash of the labels, see {@link #hash(Sentence, int, int)}
+	 * @param weight number of sentences the proposal stands for
+	 */
+	public void add(int i, int sentence, int start, int end, long hash, int weight) {
+		this.sentence[i] = sentence;
+		this.weight[i] = weight;
+		this.start[i] = start;
+		this.end[i] = end;
+		int p = this.home(hash);
+		int g;
+		while ((g = this.slots[p]) >= 0) {
+			if (this.hash[g] == hash && this.matches(i, g)) {
+				break;
+			}
+			p = (p + 1) & this.mask;
+		}
+		if (g < 0) {
+			this.freeCount -= 1;
+			g = this.free[this.freeCount];
+			this.slots[p] = g;
+			this.hash[g] = hash;
+			this.head[g] = -1;
+			this.size[g] = 0;
+		}
+		this.group[i] = g;
+		this.prev[i] = -1;
+		this.next[i] = this.head[g];
+		if (this.head[g] >= 0) {
+			this.prev[this.head[g]] = i;
+		}
+		this.head[g] = i;
+		this.size[g] += weight;
+		if (!this.isTouched[g]) {
+			this.isTouched[g] = true;
+			this.touched[this.touchedCount] = g;
+			this.touchedCount += 1;
+		}
+	}
+	
+	/**
+	 * Removes proposal i from its group, if it is in one.
+	 * 
+	 * @param i proposal id
+	 */
+	public void remove(int i) {
+		int g = this.group[i];
+		if (g < 0) {
+			return;
+		}
+		if (this.prev[i] >= 0) {
+			this.next[this.prev[i]] = this.next[i];
+		} else {
+			this.head[g] = this.next[i];
+		}
+		if (this.next[i] >= 0) {
+			this.prev[this.next[i]] = this.prev[i];
+		}
+		this.group[i] = -1;
+		this.size[g] -= this.weight[i];
+		if (this.head[g] < 0) {
+			this.release(g);
+		}
+	}
+	
+	/**
+	 * Removes a group and all of its members.
+	 * 
+	 * @param g
+	 */
+	public void removeGroup(int g) {
+		for (int i = this.head[g]; i >= 0; i = this.next[i]) {
+			this.group[i] = -1;
+		}
+		this.head[g] = -1;
+		this.size[g] = 0;
+		this.release(g);
+	}
+	
+	/**
+	 * Frees the slot of an empty group (by backward shifting the following entries) and its id.
+	 */
+	private void release(int g) {
+		int i = this.home(this.hash[g]);
+		while (this.slots[i] != g) {
+			i = (i + 1) & this.mask;
+		}
+		this.slots[i] = -1;
+		int j = i;
+		while (true) {
+			j = (j + 1) & this.mask;
+			if (this.slots[j] < 0) {
+				break;
+			}
+			int h = this.home(this.hash[this.slots[j]]);
+			// move the entry back unless its home lies cyclically in (i, j]
+			if (i <= j ? (h <= i || h > j) : (h <= i && h > j)) {
+				this.slots[i] = this.slots[j];
+				this.slots[j] = -1;
+				i = j;
+			}
+		}
+		this.free[this.freeCount] = g;
+		this.freeCount += 1;
+	}
+	
+	/**
+	 * @return number of groups joined since the last call of {@link #clearTouched()}
+	 */
+	public int touchedCount() {
+		return this.touchedCount;
+	}
+	
+	public int touched(int k) {
+		return this.touched[k];
+	}
+	
+	public void clearTouched() {
+		for (int k = 0; k < this.touchedCount; k++) {
+			this.isTouched[this.touched[k]] = false;
+		}
+		this.touchedCount = 0;
+	}
+	
+	/**
+	 * @param g
+	 * @return number of proposals in the group, counted by their weights
+	 */
+	public int size(int g) {
+		return this.size[g];
+	}
+	
+	/**
+	 * @param g
+	 * @return first proposal of the group, -1 if it is empty
+	 */
+	public int first(int g) {
+		return this.head[g];
+	}
+	
+	/**
+	 * @param i
+	 * @return next proposal in the group of proposal i, -1 if i is the last
+	 */
+	public int next(int i) {
+		return this.next[i];
+	}
+
+}
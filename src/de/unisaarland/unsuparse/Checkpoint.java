@@ -0,0 +1,319 @@
+package de.unisaarland.unsuparse;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+/**
+ * The state of safe learning after an iteration: where the constituents of every sentence start,
+ * the f and l counters of the labels and the number of iterations done. Safe merges are flattened,
+ * so the constituent starts are enough to rebuild the sentences.
+ *
+ * A snapshot is taken on the learning thread and only copies counters and sets bits, the file is
+ * written afterwards (on another thread, see {@link Parser#setCheckpoint(String, int, long)}).
+ * It is first written to a temporary file, which then replaces the previous checkpoint, so the
+ * checkpoint file is complete even if the program is stopped while writing.
+ *
+ * Layout (little-endian): header: magic, version, usePos, batched, iteration, threshold,
+ * sentenceCount, tokens, labelCount, corpusHash; int f[labelCount], int l[labelCount],
+ * long starts[(tokens+63)/64], one bit per token of the corpus in order, set if
+ * a constituent starts at the token.
+ */
+public class Checkpoint {
+	private static final long MAGIC = 0x504b435055534e55L; // "UNSUPCKP"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 64;
+
+	private boolean usePos;
+	private boolean batched;
+	private double threshold;
+	private int iteration;
+	private int sentenceCount;
+	private int tokens;
+	private int labelCount;
+	private long corpusHash;
+	private int[] f;
+	private int[] l;
+	private long[] starts;
+
+	private Checkpoint() {
+	}
+
+	/**
+	 * Takes a snapshot of the safe learning state.
+	 *
+	 * @param sents
+	 * @param vocab
+	 * @param corpusHash see {@link #hash(List)}
+	 * @param usePos
+	 * @param batched
+	 * @param threshold
+	 * @param iteration number of iterations done
+	 * @return the snapshot
+	 */
+	static Checkpoint snapshot(List<Sentence> sents, Vocabulary vocab, long corpusHash, boolean usePos,
+			boolean batched, double threshold, int iteration) {
+		Checkpoint c = new Checkpoint();
+		c.usePos = usePos;
+		c.batched = batched;
+		c.threshold = threshold;
+		c.iteration = iteration;
+		c.sentenceCount = sents.size();
+		c.labelCount = vocab.size();
+		c.corpusHash = corpusHash;
+		c.f = new int[c.labelCount];
+		System.arraycopy(vocab.fCounts(), 0, c.f, 0, c.labelCount);
+		c.l = new int[c.labelCount];
+		System.arraycopy(vocab.lCounts(), 0, c.l, 0, c.labelCount);
+		int tokens = 0;
+		for (Sentence s : sents) {
+			tokens += s.tokens();
+		}
+		c.tokens = tokens;
+		c.starts = new long[(tokens + 63) / 64];
+		int offset = 0;
+		for (Sentence s : sents) {
+			for (int i = 0; i < s.length(); i++) {
+				int t = offset + s.constituentStart(i);
+				c.starts[t >>> 6] |= 1L << (t & 63);
+			}
+			offset += s.tokens();
+		}
+		return c;
+	}
+
+	/**
+	 * Returns a hash of the labels of all sentences, to check that a checkpoint belongs to a corpus.
+	 *
+	 * @param sents
+	 * @return 64-bit hash
+	 */
+	static long hash(List<Sentence> sents) {
+		long h = sents.size();
+		for (Sentence s : sents) {
+			h = (h ^ CandidateTable.hash(s, 0, s.tokens())) * 0x9E3779B97F4A7C15L;
+		}
+		return h;
+	}
+
+	/**
+	 * Writes the checkpoint to a temporary file next to the given one and then replaces the given file.
+	 *
+	 * @param filename
+	 * @throws IOException
+	 */
+	public void write(String filename) throws IOException {
+		int countBytes = 8 * this.labelCount; // f and l
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + countBytes + 8 * this.starts.length).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putLong(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.putInt(this.usePos ? 1 : 0);
+		buffer.putInt(this.batched ? 1 : 0);
+		buffer.putInt(this.iteration);
+		buffer.putDouble(this.threshold);
+		buffer.putInt(this.sentenceCount);
+		buffer.putInt(this.tokens);
+		buffer.putInt(this.labelCount);
+		buffer.putInt(0);
+		buffer.putLong(this.corpusHash);
+		buffer.position(HEADER_SIZE);
+		buffer.asIntBuffer().put(this.f).put(this.l);
+		buffer.position(HEADER_SIZE + countBytes);
+		buffer.asLongBuffer().put(this.starts);
+		buffer.clear();
+
+		File target = new File(filename);
+		File tmp = new File(filename + ".tmp");
+		RandomAccessFile file = new RandomAccessFile(tmp, "rw");
+		try {
+			file.setLength(0);
+			FileChannel channel = file.getChannel();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			channel.force(false);
+		} finally {
+			file.close();
+		}
+		if (!tmp.renameTo(target)) {
+			// renameTo does not replace existing files on every platform
+			if (!target.delete() || !tmp.renameTo(target)) {
+				throw new IOException("could not replace " + filename);
+			}
+		}
+	}
+
+	/**
+	 * Reads a checkpoint file.
+	 *
+	 * @param filename
+	 * @return the checkpoint
+	 * @throws IOException if the file is not a checkpoint of a supported version
+	 */
+	public static Checkpoint read(String filename) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(filename, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+			if (buffer.remaining() < HEADER_SIZE || buffer.getLong() != MAGIC) {
+				throw new IOException(filename + " is not a checkpoint file");
+			}
+			int version = buffer.getInt();
+			if (version != VERSION) {
+				throw new IOException(filename + " has checkpoint version " + version + ", only version " + VERSION + " is supported");
+			}
+			Checkpoint c = new Checkpoint();
+			c.usePos = buffer.getInt() == 1;
+			c.batched = buffer.getInt() == 1;
+			c.iteration = buffer.getInt();
+			c.threshold = buffer.getDouble();
+			c.sentenceCount = buffer.getInt();
+			c.tokens = buffer.getInt();
+			c.labelCount = buffer.getInt();
+			buffer.getInt();
+			c.corpusHash = buffer.getLong();
+			int countBytes = 8 * c.labelCount;
+			if (buffer.limit() != HEADER_SIZE + countBytes + 8 * ((c.tokens + 63) / 64)) {
+				throw new IOException(filename + " is truncated");
+			}
+			c.f = new int[c.labelCount];
+			c.l = new int[c.labelCount];
+			buffer.position(HEADER_SIZE);
+			buffer.asIntBuffer().get(c.f).get(c.l);
+			c.starts = new long[(c.tokens + 63) / 64];
+			buffer.position(HEADER_SIZE + countBytes);
+			buffer.asLongBuffer().get(c.starts);
+			return c;
+		} finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * Brings the sentences and preference counters of a parser that has not merged anything yet
+	 * to the state of the checkpoint.
+	 *
+	 * @param sents
+	 * @param vocab
+	 * @param corpusHash see {@link #hash(List)}
+	 * @param usePos
+	 * @param batched
+	 * @param threshold
+	 * @throws IllegalArgumentException if the checkpoint was taken on another corpus or with other settings
+	 */
+	void restore(List<Sentence> sents, Vocabulary vocab, long corpusHash, boolean usePos, boolean batched,
+			double threshold) {
+		if (this.sentenceCount != sents.size() || this.labelCount != vocab.size() || this.corpusHash != corpusHash) {
+			throw new IllegalArgumentException("the checkpoint was taken on another corpus");
+		}
+		if (this.usePos != usePos || this.batched != batched || this.threshold != threshold) {
+			throw new IllegalArgumentException("the checkpoint was taken with other settings: "
+					+ (this.usePos ? "POS tags" : "words") + ", threshold " + this.threshold
+					+ (this.batched ? ", batched merges" : ""));
+		}
+		vocab.setPrefCounters(this.f, this.l);
+		int offset = 0;
+		for (int i = 0; i < sents.size(); i++) {
+			Sentence s = sents.get(i);
+			// merge every constituent from its first token on, constituents left of it are done already
+			int index = 0;
+			for (int t = 1; t <= s.tokens(); t++) {
+				int g = offset + t;
+				if (t == s.tokens() || (this.starts[g >>> 6] & (1L << (g & 63))) != 0) {
+					while (s.constituentEnd(index) < t) {
+						s.merge(index, true);
+					}
+					index += 1;
+				}
+			}
+			sents.set(i, s); // sentences of a store are written back
+			offset += s.tokens();
+		}
+	}
+
+	/**
+	 * Writes snapshots on a thread of its own when they are due. A snapshot that is due while the
+	 * previous one is still being written is skipped, so learning never waits for the disk.
+	 */
+	static class Writer {
+		private String filename;
+		private int iterations; // iterations between checkpoints, 0 for no limit
+		private long millis; // time between checkpoints, 0 for no limit
+		private int lastIteration;
+		private long lastTime;
+		private Thread thread; // writes the last snapshot, null before the first
+
+		/**
+		 * @param filename
+		 * @param iterations iterations between checkpoints, 0 for no limit
+		 * @param millis time between checkpoints, 0 for no limit
+		 * @param iteration number of iterations done when learning starts
+		 */
+		Writer(String filename, int iterations, long millis, int iteration) {
+			this.filename = filename;
+			this.iterations = iterations;
+			this.millis = millis;
+			this.lastIteration = iteration;
+			this.lastTime = System.currentTimeMillis();
+			this.thread = null;
+		}
+
+		/**
+		 * @param iteration number of iterations done
+		 * @return true if a snapshot should be taken and can be written right away
+		 */
+		boolean isDue(int iteration) {
+			if (this.thread != null && this.thread.isAlive()) {
+				return false;
+			}
+			return (this.iterations > 0 && iteration - this.lastIteration >= this.iterations)
+					|| (this.millis > 0 && System.currentTimeMillis() - this.lastTime >= this.millis);
+		}
+
+		/**
+		 * Starts writing a snapshot.
+		 *
+		 * @param checkpoint
+		 */
+		void write(final Checkpoint checkpoint) {
+			this.lastIteration = checkpoint.iteration;
+			this.lastTime = System.currentTimeMillis();
+			this.thread = new Thread(new Runnable() {
+				public void run() {
+					try {
+						checkpoint.write(filename);
+						System.out.println("\t checkpoint after iteration " + checkpoint.iteration + " written");
+					} catch (IOException e) {
+						System.out.println("WARNING: checkpoint could not be written: " + e.getMessage());
+					}
+				}
+			}, "checkpoint writer");
+			this.thread.start();
+		}
+
+		/**
+		 * Waits until the last snapshot is written.
+		 */
+		void close() {
+			if (this.thread != null) {
+				try {
+					this.thread.join();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return number of safe learning iterations done
+	 */
+	public int getIteration() {
+		return this.iteration;
+	}
+
+}
@@ -4,115 +4,113 @@ import java.util.ArrayList;
 
 /**
  * This is a recursive data structure defining a constituent of a sentence.
- * It can be regarded as a tree, the children are stored in the constitutents attribute. 
+ * It can be regarded as a tree, the children are returned by getSubConstituents.
+ * A ConstituentTree is a view of a node of the parse state of its sentence, its texts
+ * are only built when they are asked for.
  * 
  * @author Julia Dembowski
  *
  */
 public class ConstituentTree {
-	private Label firstLabel;
-	private Label lastLabel;
-	private String text; // raw text spanned by the ConstituentTree
-	private String labelText; // a string with the label names of the ConstituentTree
-	private ArrayList<ConstituentTree> subConstituents; // the sub-constituents (or children) of this constituent
+	private Sentence sentence;
+	private int node; // node of the sentence this tree stands for
 	
-	/**
-	 * Constructor for single word ConstituentTrees (leaves of the parse tree)
-	 * 
-	 * @param label
-	 * @param text
-	 */
-	public ConstituentTree(Label label, String text) {
-		this.firstLabel = label;
-		this.lastLabel = label;
-		this.text = text;
-		this.labelText = label.getText();
-		this.subConstituents = null;
+	ConstituentTree(Sentence sentence, int node) {
+		this.sentence = sentence;
+		this.node = node;
 	}
 	
-	/**
-	 * Constructor for higher order ConstituentTrees
-	 * 
-	 * @param subConstituents
-	 */
-	public ConstituentTree(ArrayList<ConstituentTree> subConstituents) {
-		this.subConstituents = subConstituents;
-		this.firstLabel = subConstituents.get(0).firstLabel;
-		this.lastLabel = subConstituents.get(subConstituents.size()-1).lastLabel;
-		this.text = subConstituents.get(0).text;
-		for (int i = 1; i < subConstituents.size(); i++) {
-			this.text += " " + subConstituents.get(i).text;
-		}
-		this.labelText = subConstituents.get(0).labelText;
-		for (int i = 1; i < subConstituents.size(); i++) {
-			this.labelText += " " + subConstituents.get(i).labelText;
-		}
+	Sentence getSentence() {
+		return this.sentence;
 	}
 	
-	public ArrayList<ConstituentTree> getSubConstituents() {
-		return this.subConstituents;
+	int getNode() {
+		return this.node;
 	}
 	
 	/**
-	 * Flattens the top level of the ConstituentTree.
+	 * @return the sub-constituents (or children) of this constituent, null for a single word
 	 */
-	public void flatten() {
-		if (this.subConstituents == null) {
-			return;
+	public ArrayList<ConstituentTree> getSubConstituents() {
+		int child = this.sentence.firstChild(this.node);
+		if (child < 0) {
+			return null;
 		}
-		ArrayList<ConstituentTree> flattened = new ArrayList<ConstituentTree>();
-		for (ConstituentTree c : this.subConstituents) {
-			if (c.subConstituents == null) {
-				flattened.add(c);
-			} else {
-				for (ConstituentTree subTree : c.subConstituents) {
-					flattened.add(subTree);
-				}
-			}
+		ArrayList<ConstituentTree> subConstituents = new ArrayList<ConstituentTree>();
+		for (; child >= 0; child = this.sentence.nextSibling(child)) {
+			subConstituents.add(new ConstituentTree(this.sentence, child));
 		}
-		this.subConstituents = flattened;
+		return subConstituents;
 	}
 	
 	/**
 	 * @return sentence without brackets
 	 */
 	public String getRawText() {
-		return this.text;
+		StringBuilder sb = new StringBuilder();
+		for (int t = this.sentence.start(this.node); t < this.sentence.end(this.node); t++) {
+			if (sb.length() > 0) {
+				sb.append(' ');
+			}
+			sb.append(this.sentence.getWord(t));
+		}
+		return sb.toString();
 	}
 	
 	/**
 	 * @return the labels of the sentence (can be words or POS tags)
 	 */
 	public String getLabelText() {
-		return this.labelText;
+		StringBuilder sb = new StringBuilder();
+		for (int t = this.sentence.start(this.node); t < this.sentence.end(this.node); t++) {
+			if (sb.length() > 0) {
+				sb.append(' ');
+			}
+			sb.append(this.sentence.getLabel(t).getText());
+		}
+		return sb.toString();
 	}
 	
 	/**
 	 * @return String representation of the parse tree
 	 */
 	public String toString() {
-		if (this.subConstituents == null) {
-			return this.text;
+		StringBuilder sb = new StringBuilder();
+		this.append(sb, this.node);
+		return sb.toString();
+	}
+	
+	private void append(StringBuilder sb, int node) {
+		int child = this.sentence.firstChild(node);
+		if (child < 0) {
+			sb.append(this.sentence.getWord(node));
 		} else {
-			String parsedText = "[";
-			for (ConstituentTree c : this.subConstituents) {
-				parsedText += " " + c.toString();
+			sb.append('[');
+			for (; child >= 0; child = this.sentence.nextSibling(child)) {
+				sb.append(' ');
+				this.append(sb, child);
 			}
-			parsedText += " ]";
-			return parsedText;
+			sb.append(" ]");
 		}
 	}
 	
 	public Label getFirstLabel() {
-		return this.firstLabel;
+		return this.sentence.getLabel(this.sentence.start(this.node));
 	}
 	
 	public Label getLastLabel() {
-		return this.lastLabel;
+		return this.sentence.getLabel(this.sentence.end(this.node)-1);
 	}
 	
+	/**
+	 * @return number of sub-constituents
+	 */
 	public int length() {
-		return this.subConstituents.size();
+		int n = 0;
+		for (int child = this.sentence.firstChild(this.node); child >= 0; child = this.sentence.nextSibling(child)) {
+			n += 1;
+		}
+		return n;
 	}
 
 }
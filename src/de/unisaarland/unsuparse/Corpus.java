@@ -1,13 +1,18 @@
 package de.unisaarland.unsuparse;
 
-import java.io.BufferedReader;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
  * Defines a corpus.
@@ -16,10 +21,29 @@ import java.util.ArrayList;
  *
  */
 public class Corpus {
+	private static final long MIN_CHUNK_SIZE = 1 << 20; // files are split in chunks of at least 1MB
+	private static final long MAX_CHUNK_SIZE = 1 << 30; // and at most 1GB, mapped buffers are limited to 2GB
+	private static final int COMPRESSED_CHUNK_SIZE = 1 << 24; // compressed files are split in chunks of 16MB
+	private static final int STORED_CHUNK_SIZE = 1 << 20; // files read into a sentence store are split in chunks of 1MB
+	
 	private int size; // number of tokens
 	private int sentenceCount; // number of sentences
-	private HashMap<String,Label> labelMap; // maps string representations to their corresponding labels
-	private ArrayList<Sentence> sentences;
+	private Vocabulary vocab; // maps string representations to their corresponding labels and holds their counters
+	private List<Sentence> sentences;
+	private List<Sentence> unique; // first sentence of every label sequence, in order
+	private int[] multiplicity; // number of sentences with the label sequence of every unique sentence
+	private int[] uniqueIndex; // index of the unique sentence with the same label sequence, by sentence
+	private int[] representative; // index of every unique sentence in sentences
+	private LabelFolding folding; // folds rare labels into classes, or null
+	private int foldedLabels; // number of distinct label names that were folded
+	private SentenceStore store; // keeps the sentences in a file instead of on the heap, or null
+	
+	/**
+	 * Takes the chunks of a corpus file in file order.
+	 */
+	private interface ChunkHandler {
+		void add(CorpusChunk chunk) throws IOException;
+	}
 	
 	/**
 	 * A Corpus needs to be initialised with the corpus file and 
@@ -30,94 +54,550 @@ public class Corpus {
 	 * @throws IOException
 	 */
 	public Corpus(String filename, boolean usePos) throws IOException {
+		this(filename, new Workers(1), new CorpusOptions(filename, usePos));
+	}
+	
+	/**
+	 * Creates the corpus and reads the corpus file in parallel with the given workers, with the settings
+	 * of the options. With a memory budget for bigrams, the bigram counts are kept in a {@link BigramSketch}.
+	 * With a folding, labels that are too rare are replaced by their classes before any counts are added
+	 * to the vocabulary; the words of the sentences are kept. With a sentence store, the sentences are
+	 * written to the store while the file is read and are not kept on the heap. The file is then read
+	 * in chunks of 1MB, at most two per thread at a time, so that reading needs little memory as well.
+	 * Labels cannot be folded into a store, since folding needs the counts of the whole file before the
+	 * first sentence is added.
+	 * 
+	 * @param filename
+	 * @param workers
+	 * @param options
+	 * @throws IOException
+	 * @throws IllegalArgumentException if both folding and a store are given
+	 */
+	public Corpus(String filename, Workers workers, CorpusOptions options) throws IOException {
+		if (options.getFolding() != null && options.getStore() != null) {
+			throw new IllegalArgumentException("labels cannot be folded in a corpus with a sentence store");
+		}
 		this.size = 0;
 		this.sentenceCount = 0;
-		this.labelMap = new HashMap<String,Label>(); 
+		this.vocab = new Vocabulary();
 		this.sentences = new ArrayList<Sentence>();
-		this.buildCorpus(filename, usePos);
+		this.folding = options.getFolding();
+		this.store = options.getStore();
+		if (options.getBigramMemory() > 0) {
+			this.vocab.setSketch(new BigramSketch(options.getBigramMemory()));
+		}
+		if (this.store != null) {
+			this.buildStore(filename, options.getFormat(), workers);
+		} else {
+			this.buildCorpus(filename, options.getFormat(), workers);
+		}
 	}
 	
 	/**
-	 * Reads the corpus file and builds the corpus.
+	 * Creates a corpus of new sentences that extends an existing corpus, e.g. the one a model was
+	 * learned on. The counts of the new sentences are added to the vocabulary of the existing corpus,
+	 * and size and sentence count include the existing sentences. Only the new sentences are read
+	 * and kept, so the cost does not depend on the size of the existing corpus. New labels that are
+	 * too rare for the folding of the options are folded; labels of the existing vocabulary never are.
+	 * The bigrams are counted the way the existing vocabulary counts them.
+	 * 
+	 * @param filename file with the new sentences
+	 * @param workers
+	 * @param options
+	 * @param vocab vocabulary of the existing corpus, which is updated
+	 * @param size number of tokens in the existing corpus
+	 * @param sentenceCount number of sentences in the existing corpus
+	 * @throws IOException
+	 * @throws IllegalArgumentException if the options give a sentence store or a memory budget for bigrams
+	 */
+	public Corpus(String filename, Workers workers, CorpusOptions options, Vocabulary vocab, int size, int sentenceCount)
+			throws IOException {
+		if (options.getStore() != null || options.getBigramMemory() > 0) {
+			throw new IllegalArgumentException("a corpus that extends another one has no sentence store and counts bigrams like the other one");
+		}
+		this.size = size;
+		this.sentenceCount = sentenceCount;
+		this.vocab = vocab;
+		this.sentences = new ArrayList<Sentence>();
+		this.folding = options.getFolding();
+		this.buildCorpus(filename, options.getFormat(), workers);
+	}
+	
+	/**
+	 * Creates a corpus of copies of the sentences of another corpus, without their merges,
+	 * see {@link #fork(Vocabulary)}.
+	 */
+	private Corpus(Corpus base, Vocabulary vocab) {
+		if (base.store != null) {
+			throw new IllegalStateException("a corpus with a sentence store cannot be copied");
+		}
+		this.size = base.size;
+		this.sentenceCount = base.sentenceCount;
+		this.vocab = vocab;
+		this.sentences = new ArrayList<Sentence>(base.sentences.size());
+		for (Sentence s : base.sentences) {
+			this.sentences.add(s.copy(vocab));
+		}
+		this.multiplicity = base.multiplicity;
+		this.uniqueIndex = base.uniqueIndex;
+		this.representative = base.representative;
+		this.unique = new ArrayList<Sentence>(this.representative.length);
+		for (int i : this.representative) {
+			this.unique.add(this.sentences.get(i));
+		}
+		this.folding = base.folding;
+		this.foldedLabels = base.foldedLabels;
+	}
+	
+	/**
+	 * Returns a copy of the corpus for parsing it again with other settings: the sentences are
+	 * copied without their merges and get the labels of a vocabulary made by {@link Vocabulary#fork()}.
+	 * 
+	 * @param vocab
+	 * @return the copy
+	 * @throws IllegalStateException if the sentences are kept in a {@link SentenceStore}
+	 */
+	public Corpus fork(Vocabulary vocab) {
+		return new Corpus(this, vocab);
+	}
+	
+	/**
+	 * Reads the corpus file and builds the corpus. The file is memory-mapped in chunks that
+	 * end at blank lines; the chunks are read in parallel and their counts are added in order,
+	 * so labels get the same ids as when reading the file line by line. A gzip-compressed file is
+	 * decompressed into chunks of the same kind, see {@link #readCompressed(String, InputFormat, Workers, boolean, int, ChunkHandler)}.
+	 * Folded labels are added under the name of their class, which gets the id of its first label.
+	 * If the vocabulary keeps its bigrams in a sketch, they are counted from the sentences afterwards instead.
 	 * 
 	 * @param filename
-	 * @param usePos
+	 * @param format
+	 * @param workers
 	 * @throws IOException
 	 */
-	private void buildCorpus(String filename, boolean usePos) throws IOException {
-		Pattern punct = Pattern.compile("\\p{Punct}");
-		
-		BufferedReader br = null;
-		int column;
-		if (usePos) {
-			column = 1;
+	private void buildCorpus(String filename, final InputFormat format, Workers workers) throws IOException {
+		final BigramSketch sketch = this.vocab.getSketch();
+		final ArrayList<CorpusChunk> chunks;
+		if (InputFormat.isGzip(filename)) {
+			chunks = new ArrayList<CorpusChunk>();
+			readCompressed(filename, format, workers, sketch == null, COMPRESSED_CHUNK_SIZE, new ChunkHandler() {
+				public void add(CorpusChunk chunk) {
+					chunks.add(chunk);
+				}
+			});
 		} else {
-			column = 0;
+			ArrayList<Callable<CorpusChunk>> reads = new ArrayList<Callable<CorpusChunk>>();
+			FileChannel channel = new RandomAccessFile(filename, "r").getChannel();
+			try {
+				long[] bounds = chunkBounds(channel, workers.getThreads(), MAX_CHUNK_SIZE);
+				for (int c = 0; c+1 < bounds.length; c++) {
+					final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, bounds[c], bounds[c+1]-bounds[c]);
+					reads.add(new Callable<CorpusChunk>() {
+						public CorpusChunk call() {
+							return new CorpusChunk(buffer, format, sketch == null);
+						}
+					});
+				}
+			} finally {
+				channel.close();
+			}
+			chunks = workers.invokeAll(reads);
+		}
+		
+		HashMap<String,String> folded = null;
+		if (this.folding != null) {
+			folded = this.folding.fold(chunks, this.vocab);
+			this.foldedLabels = folded.size();
 		}
 		
-		try{
-			br = new BufferedReader(new FileReader(filename));
-			String line;
-			Sentence s = new Sentence();
-			while ((line = br.readLine()) != null){
-				if (line.equals("")) { // new sentence
-					ConstituentTree prev = s.getLast();
-					if (prev != null && isPunct(prev.getRawText(),punct)) {
-						s.removeLast();
+		// add the counts of the chunks in order, mapping local to global label ids
+		final ArrayList<int[]> idMaps = new ArrayList<int[]>();
+		for (CorpusChunk chunk : chunks) {
+			idMaps.add(this.addCounts(chunk, folded));
+		}
+		
+		// build the sentences of every chunk
+		ArrayList<ArrayList<Sentence>> chunkSentences = workers.run(chunks.size(), new Workers.RangeTask<ArrayList<Sentence>>() {
+			public ArrayList<Sentence> run(int from, int to) {
+				ArrayList<Sentence> sents = new ArrayList<Sentence>();
+				for (int c = from; c < to; c++) {
+					CorpusChunk chunk = chunks.get(c);
+					int[] ids = idMaps.get(c);
+					for (int i = 0; i < chunk.getSentenceCount(); i++) {
+						Sentence s = new Sentence(chunk.sentenceEnd(i) - chunk.sentenceStart(i));
+						for (int t = chunk.sentenceStart(i); t < chunk.sentenceEnd(i); t++) {
+							s.addWord(vocab.label(ids[chunk.getTokenLabel(t)]), chunk.getWord(t));
+						}
+						sents.add(s);
 					}
-					if (s.length() > 0) {
-						s.getLast().getLastLabel().incrementEndFreq();
-						this.sentences.add(s);
-						this.sentenceCount += 1;
-						this.size += s.length();
-						s = new Sentence();
-					}	
-				} else {
-					String[] fields = line.trim().split("\\s+");
-					String word = fields[0];
-					String wordLabel = fields[column]; // can be word itself or POS, depending on mode
-					Label label;
-					if (this.labelMap.containsKey(wordLabel)) {
-						label = this.labelMap.get(wordLabel);
-					} else {
-						label = new Label(wordLabel);
-						this.labelMap.put(wordLabel, label);
+				}
+				return sents;
+			}
+		});
+		for (ArrayList<Sentence> sents : chunkSentences) {
+			this.sentences.addAll(sents);
+		}
+		if (sketch != null) {
+			// heavy hitters can only be found if the sketch has not counted other sentences before
+			sketch.count(this.sentences, this.vocab.getBigrams(), this.sentenceCount == this.sentences.size());
+		}
+		
+		this.groupSentences(this.sentences);
+		
+		// All labels not seen in the corpus have the same (smoothed) statistics, so they can share one label.
+		if (this.vocab.find(Vocabulary.UNKNOWN) < 0) {
+			this.vocab.add(Vocabulary.UNKNOWN);
+		}
+	}
+	
+	/**
+	 * Reads the corpus file into the sentence store. The chunks are read by the workers as in
+	 * {@link #buildCorpus(String, InputFormat, Workers)}, but they are added to the corpus in order as
+	 * soon as they are read and their sentences are written to the store, so that only a few chunks
+	 * are kept at a time. Labels get the same ids as without a store.
+	 * 
+	 * @param filename
+	 * @param format
+	 * @param workers
+	 * @throws IOException
+	 */
+	private void buildStore(String filename, final InputFormat format, Workers workers) throws IOException {
+		final BigramSketch sketch = this.vocab.getSketch();
+		ChunkHandler handler = new ChunkHandler() {
+			private int[] labels = new int[64];
+			private String[] words = new String[64];
+			
+			public void add(CorpusChunk chunk) throws IOException {
+				int[] ids = addCounts(chunk, null);
+				for (int i = 0; i < chunk.getSentenceCount(); i++) {
+					int tokens = chunk.sentenceEnd(i) - chunk.sentenceStart(i);
+					if (tokens > this.labels.length) {
+						this.labels = new int[tokens];
+						this.words = new String[tokens];
 					}
-					
-					label.incrementFreq();
-					ConstituentTree prev = s.getLast();
-					if (prev == null) {
-						label.incrementStartFreq();
-					} else {
-						prev.getLastLabel().incrementBigramFreq(wordLabel);
+					for (int t = 0; t < tokens; t++) {
+						this.labels[t] = ids[chunk.getTokenLabel(chunk.sentenceStart(i) + t)];
+						this.words[t] = chunk.getWord(chunk.sentenceStart(i) + t);
 					}
-					
-					s.addWord(label, word);	
+					store.append(this.labels, this.words, tokens);
 				}
-			}	
-			// Add last sentence
-			ConstituentTree prev = s.getLast();
-			if (prev != null && isPunct(prev.getRawText(),punct)) {
-				s.removeLast();
-			}
-			if (s.length() > 0) {
-				s.getLast().getLastLabel().incrementEndFreq();
-				this.sentences.add(s);
-				this.sentenceCount += 1;
-				this.size += s.length();
-			}
-		} catch (FileNotFoundException e) {
-		    e.printStackTrace();
-		} catch (IOException e) {
-		    e.printStackTrace();
+			}
+		};
+		if (InputFormat.isGzip(filename)) {
+			readCompressed(filename, format, workers, sketch == null, STORED_CHUNK_SIZE, handler);
+		} else {
+			ArrayList<Callable<CorpusChunk>> reads = new ArrayList<Callable<CorpusChunk>>();
+			FileChannel channel = new RandomAccessFile(filename, "r").getChannel();
+			try {
+				long[] bounds = chunkBounds(channel, workers.getThreads(), STORED_CHUNK_SIZE);
+				for (int c = 0; c+1 < bounds.length; c++) {
+					final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, bounds[c], bounds[c+1]-bounds[c]);
+					reads.add(new Callable<CorpusChunk>() {
+						public CorpusChunk call() {
+							return new CorpusChunk(buffer, format, sketch == null);
+						}
+					});
+				}
+			} finally {
+				channel.close();
+			}
+			ArrayList<Future<CorpusChunk>> pending = new ArrayList<Future<CorpusChunk>>();
+			int added = 0;
+			for (Callable<CorpusChunk> read : reads) {
+				if (pending.size() - added >= 2 * workers.getThreads()) {
+					handler.add(get(pending.get(added)));
+					pending.set(added, null);
+					added += 1;
+				}
+				pending.add(workers.submit(read));
+			}
+			for (; added < pending.size(); added++) {
+				handler.add(get(pending.get(added)));
+				pending.set(added, null);
+			}
+		}
+		this.store.open(this.vocab);
+		this.sentences = this.store;
+		SentenceStore labels = this.store.view(null, false);
+		if (sketch != null) {
+			// the sketch has only counted the sentences of the store
+			sketch.count(labels, this.vocab.getBigrams(), true);
+		}
+		
+		this.groupSentences(labels);
+		
+		// All labels not seen in the corpus have the same (smoothed) statistics, so they can share one label.
+		if (this.vocab.find(Vocabulary.UNKNOWN) < 0) {
+			this.vocab.add(Vocabulary.UNKNOWN);
+		}
+	}
+	
+	/**
+	 * Adds the counts of a chunk to the vocabulary and the size of the corpus.
+	 * 
+	 * @param chunk
+	 * @param folded the class of every folded label name, or null
+	 * @return the global label id of every local label id of the chunk
+	 */
+	private int[] addCounts(CorpusChunk chunk, HashMap<String,String> folded) {
+		int[] ids = new int[chunk.getLabelCount()];
+		for (int localId = 0; localId < ids.length; localId++) {
+			String name = chunk.getName(localId);
+			if (folded != null && folded.containsKey(name)) {
+				name = folded.get(name);
+			}
+			ids[localId] = this.vocab.find(name);
+			if (ids[localId] < 0) {
+				ids[localId] = this.vocab.add(name);
+			}
+			this.vocab.addFreq(ids[localId], chunk.getFreq(localId));
+			this.vocab.addStartFreq(ids[localId], chunk.getStartFreq(localId));
+			this.vocab.addEndFreq(ids[localId], chunk.getEndFreq(localId));
+		}
+		BigramTable bigrams = chunk.getBigrams();
+		for (int slot = 0; bigrams != null && slot < bigrams.capacity(); slot++) {
+			if (bigrams.isUsed(slot)) {
+				this.vocab.getBigrams().add(ids[bigrams.firstId(slot)], ids[bigrams.secondId(slot)], bigrams.count(slot));
+			}
+		}
+		this.sentenceCount += chunk.getSentenceCount();
+		this.size += chunk.getSize();
+		return ids;
+	}
+	
+	/**
+	 * Groups the sentences by their label sequences. Safe learning and finishing only look at the labels,
+	 * so sentences with the same labels are parsed the same way and only the first one of every group
+	 * has to be parsed, with the size of the group as weight (see {@link Parser#learn(double)}).
+	 * Sequences are looked up by hash and compared label by label, so colliding sequences are not grouped.
+	 * 
+	 * @param sents the sentences of the corpus, only their labels are needed
+	 */
+	private void groupSentences(List<Sentence> sents) {
+		int n = sents.size();
+		this.uniqueIndex = new int[n];
+		int[] first = new int[n];
+		int[] count = new int[n];
+		long[] hashes = new long[n];
+		int capacity = Integer.highestOneBit(Math.max(8, n * 2 - 1)) << 1;
+		int[] slots = new int[capacity]; // unique sentences by hash, -1 for free slots
+		Arrays.fill(slots, -1);
+		int u = 0;
+		for (int i = 0; i < n; i++) {
+			Sentence s = sents.get(i);
+			long hash = CandidateTable.hash(s, 0, s.tokens());
+			int p = (int) (hash ^ (hash >>> 32)) & (capacity - 1);
+			int g;
+			while ((g = slots[p]) >= 0 && !(hashes[g] == hash && sameLabels(s, sents.get(first[g])))) {
+				p = (p + 1) & (capacity - 1);
+			}
+			if (g < 0) {
+				g = u;
+				slots[p] = g;
+				hashes[g] = hash;
+				first[g] = i;
+				u += 1;
+			}
+			count[g] += 1;
+			this.uniqueIndex[i] = g;
+		}
+		this.representative = Arrays.copyOf(first, u);
+		this.multiplicity = Arrays.copyOf(count, u);
+		if (this.store != null) {
+			this.unique = this.store.view(this.representative, false);
+		} else {
+			this.unique = new ArrayList<Sentence>(u);
+			for (int i : this.representative) {
+				this.unique.add(this.sentences.get(i));
+			}
+		}
+	}
+	
+	/**
+	 * @return true if both sentences have the same labels
+	 */
+	private static boolean sameLabels(Sentence s, Sentence r) {
+		if (s.tokens() != r.tokens()) {
+			return false;
+		}
+		for (int t = 0; t < s.tokens(); t++) {
+			if (s.getLabel(t).getId() != r.getLabel(t).getId()) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Reads a gzip-compressed corpus file. The file is decompressed on the calling thread (or by the
+	 * workers, see {@link GzipInput}) into buffers of the chunk size, which are cut at their
+	 * last blank line and read as chunks by the workers while the next buffer is decompressed.
+	 * At most two chunks per thread wait to be read, so the decompressed file is never kept as a whole.
+	 * 
+	 * @param filename
+	 * @param format
+	 * @param workers
+	 * @param countBigrams
+	 * @param chunkSize
+	 * @param handler takes the chunks in file order
+	 * @throws IOException
+	 */
+	private static void readCompressed(String filename, final InputFormat format, Workers workers,
+			final boolean countBigrams, int chunkSize, ChunkHandler handler) throws IOException {
+		ArrayList<Future<CorpusChunk>> reads = new ArrayList<Future<CorpusChunk>>();
+		int added = 0; // chunks handed to the handler
+		InputStream in = new GzipInput(filename, workers);
+		try {
+			byte[] buffer = new byte[chunkSize];
+			int filled = 0;
+			boolean done = false;
+			while (!done) {
+				int n = in.read(buffer, filled, buffer.length - filled);
+				if (n > 0) {
+					filled += n;
+				}
+				done = n < 0;
+				if (filled < buffer.length && !done) {
+					continue;
+				}
+				if (filled == 0) {
+					break;
+				}
+				int cut = done ? filled : lastBlankLine(buffer, filled);
+				if (cut <= 0) {
+					// a sentence longer than the buffer
+					buffer = Arrays.copyOf(buffer, 2*buffer.length);
+					continue;
+				}
+				byte[] rest = done ? null : new byte[buffer.length];
+				if (rest != null) {
+					System.arraycopy(buffer, cut, rest, 0, filled - cut);
+				}
+				// the task drops the buffer when it starts, so it can be collected once the chunk is read
+				final ByteBuffer[] data = new ByteBuffer[] {ByteBuffer.wrap(buffer, 0, cut)};
+				if (reads.size() - added >= 2 * workers.getThreads()) {
+					handler.add(get(reads.get(added)));
+					reads.set(added, null);
+					added += 1;
+				}
+				reads.add(workers.submit(new Callable<CorpusChunk>() {
+					public CorpusChunk call() {
+						ByteBuffer chunk = data[0];
+						data[0] = null;
+						return new CorpusChunk(chunk, format, countBigrams);
+					}
+				}));
+				buffer = rest;
+				filled -= cut;
+			}
 		} finally {
-		    br.close();
+			in.close();
+		}
+		for (; added < reads.size(); added++) {
+			handler.add(get(reads.get(added)));
+			reads.set(added, null);
+		}
+	}
+	
+	/**
+	 * Waits for a chunk that is read by the workers.
+	 * 
+	 * @param read
+	 * @return the chunk
+	 */
+	private static CorpusChunk get(Future<CorpusChunk> read) {
+		try {
+			return read.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/**
+	 * Returns the offset of the last blank line in a buffer, see {@link #nextBlankLine(FileChannel, long)}.
+	 * 
+	 * @param buffer
+	 * @param length
+	 * @return offset of the blank line, -1 if there is none
+	 */
+	private static int lastBlankLine(byte[] buffer, int length) {
+		for (int i = length - 1; i > 0; i--) {
+			if (buffer[i] == '\n' && buffer[i-1] == '\n') {
+				return i;
+			}
+			if (buffer[i] == '\n' && buffer[i-1] == '\r' && i > 1 && buffer[i-2] == '\n') {
+				return i - 1;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Splits the file into chunks for the given number of threads. Every chunk but the
+	 * first starts with a blank line, so no sentence is split between two chunks.
+	 * 
+	 * @param channel
+	 * @param threads
+	 * @param maxChunkSize
+	 * @return start offsets of the chunks followed by the file size
+	 * @throws IOException
+	 */
+	private static long[] chunkBounds(FileChannel channel, int threads, long maxChunkSize) throws IOException {
+		long fileSize = channel.size();
+		int chunks = (int) Math.max(1, Math.min(fileSize / MIN_CHUNK_SIZE, threads * 4));
+		chunks = (int) Math.max(chunks, fileSize / maxChunkSize + 1);
+		ArrayList<Long> bounds = new ArrayList<Long>();
+		bounds.add(0L);
+		for (int c = 1; c < chunks; c++) {
+			long bound = nextBlankLine(channel, Math.max(fileSize * c / chunks, bounds.get(bounds.size()-1)));
+			if (bound > bounds.get(bounds.size()-1) && bound < fileSize) {
+				bounds.add(bound);
+			}
+		}
+		bounds.add(fileSize);
+		long[] res = new long[bounds.size()];
+		for (int i = 0; i < res.length; i++) {
+			res[i] = bounds.get(i);
 		}
+		return res;
 	}
 	
-	private boolean isPunct(String text, Pattern p) {
-		Matcher m = p.matcher(text);
-		return m.matches();
+	/**
+	 * Returns the offset of the first blank line starting after the given offset, or the file size.
+	 * 
+	 * @param channel
+	 * @param offset
+	 * @return offset of the blank line
+	 * @throws IOException
+	 */
+	private static long nextBlankLine(FileChannel channel, long offset) throws IOException {
+		ByteBuffer block = ByteBuffer.allocate(1 << 16);
+		byte prev = 0;
+		byte prev2 = 0;
+		long pos = offset;
+		while (channel.read(block, pos) > 0) {
+			block.flip();
+			for (int i = 0; i < block.limit(); i++) {
+				byte b = block.get(i);
+				// "\n\n" or "\n\r\n": the blank line starts after the first \n
+				if (b == '\n' && prev == '\n') {
+					return pos + i;
+				}
+				if (b == '\n' && prev == '\r' && prev2 == '\n') {
+					return pos + i - 1;
+				}
+				prev2 = prev;
+				prev = b;
+			}
+			pos += block.limit();
+			block.clear();
+		}
+		return channel.size();
 	}
 	
 	public int getSize() {
@@ -128,8 +608,57 @@ public class Corpus {
 		return this.sentenceCount;
 	}
 	
-	public ArrayList<Sentence> getSentences() {
+	/**
+	 * @return the sentences, in a {@link SentenceStore} if the corpus has one
+	 */
+	public List<Sentence> getSentences() {
 		return this.sentences;
 	}
 	
+	/**
+	 * @return the first sentence of every label sequence, in order (without their words if the corpus has a store)
+	 */
+	public List<Sentence> getUniqueSentences() {
+		return this.unique;
+	}
+	
+	/**
+	 * @return the store of the sentences, null if they are kept on the heap
+	 */
+	public SentenceStore getStore() {
+		return this.store;
+	}
+	
+	/**
+	 * @return index of the first sentence of every label sequence
+	 */
+	public int[] getRepresentatives() {
+		return this.representative;
+	}
+	
+	/**
+	 * @return number of sentences with the label sequence of every unique sentence
+	 */
+	public int[] getMultiplicity() {
+		return this.multiplicity;
+	}
+	
+	/**
+	 * @return index of the unique sentence with the same label sequence, by sentence
+	 */
+	public int[] getUniqueIndex() {
+		return this.uniqueIndex;
+	}
+	
+	public Vocabulary getVocabulary() {
+		return this.vocab;
+	}
+	
+	/**
+	 * @return number of distinct label names that were folded into classes
+	 */
+	public int getFoldedLabels() {
+		return this.foldedLabels;
+	}
+	
 }
@@ -0,0 +1,299 @@
+package de.unisaarland.unsuparse;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * A part of a corpus file that starts and ends at a sentence boundary.
+ * Chunks are read independently of each other: every chunk counts its labels with
+ * its own local label ids, and the counts are added to the corpus afterwards.
+ */
+public class CorpusChunk {
+	private static final Charset CHARSET = Charset.defaultCharset(); // same as FileReader
+	private static final String PUNCT = "!\"#$%&'()*+,-./:;<=>?@[\\]^_`{|}~"; // \p{Punct}
+
+	private InputFormat format;
+	private HashMap<String,Integer> localIds;
+	private String[] names; // label names by local id
+	private int[] freq;
+	private int[] startFreq;
+	private int[] endFreq;
+	private int labelCount;
+	private BigramTable bigrams; // bigram counts by local ids, null if bigrams are not counted
+	private int[] tokenLabels; // local label id of every token
+	private String[] words; // text of every token
+	private int tokenCount;
+	private int[] sentenceEnds; // end token index (exclusive) of every sentence
+	private int sentenceCount;
+	private int sentenceStart; // first token of the sentence currently read
+	private int size; // number of tokens in the sentences of this chunk
+	private byte[] line; // bytes of the line currently read
+
+	/**
+	 * Reads the lines of the given buffer.
+	 *
+	 * @param buffer
+	 * @param column 1 to use the POS column as label, 0 to use the words
+	 */
+	public CorpusChunk(ByteBuffer buffer, int column) {
+		this(buffer, column, true);
+	}
+
+	/**
+	 * Reads the lines of the given buffer.
+	 *
+	 * @param buffer
+	 * @param column 1 to use the POS column as label, 0 to use the words
+	 * @param countBigrams false if the bigrams are counted elsewhere (see {@link BigramSketch})
+	 */
+	public CorpusChunk(ByteBuffer buffer, int column, boolean countBigrams) {
+		this(buffer, InputFormat.plain(column == 1), countBigrams);
+	}
+
+	/**
+	 * Reads the lines of the given buffer in the given format.
+	 *
+	 * @param buffer
+	 * @param format
+	 * @param countBigrams false if the bigrams are counted elsewhere (see {@link BigramSketch})
+	 */
+	public CorpusChunk(ByteBuffer buffer, InputFormat format, boolean countBigrams) {
+		this.format = format;
+		this.localIds = new HashMap<String,Integer>();
+		this.names = new String[64];
+		this.freq = new int[64];
+		this.startFreq = new int[64];
+		this.endFreq = new int[64];
+		this.labelCount = 0;
+		this.bigrams = countBigrams ? new BigramTable() : null;
+		this.tokenLabels = new int[1024];
+		this.words = new String[1024];
+		this.tokenCount = 0;
+		this.sentenceEnds = new int[64];
+		this.sentenceCount = 0;
+		this.sentenceStart = 0;
+		this.size = 0;
+		this.line = new byte[256];
+		this.read(buffer);
+	}
+
+	/**
+	 * Splits the buffer into lines, like BufferedReader.readLine() does.
+	 */
+	private void read(ByteBuffer buffer) {
+		int limit = buffer.limit();
+		int pos = 0;
+		while (pos < limit) {
+			int end = pos;
+			while (end < limit && buffer.get(end) != '\n' && buffer.get(end) != '\r') {
+				end += 1;
+			}
+			if (end == pos) {
+				this.endSentence();
+			} else {
+				if (end - pos > this.line.length) {
+					this.line = new byte[Math.max(end - pos, 2*this.line.length)];
+				}
+				for (int i = pos; i < end; i++) {
+					this.line[i - pos] = buffer.get(i);
+				}
+				this.addToken(end - pos);
+			}
+			pos = end;
+			if (pos < limit) {
+				if (buffer.get(pos) == '\r' && pos+1 < limit && buffer.get(pos+1) == '\n') {
+					pos += 2;
+				} else {
+					pos += 1;
+				}
+			}
+		}
+		this.endSentence();
+	}
+
+	private static boolean isSpace(byte b) {
+		return b == ' ' || b == '\t' || b == '\n' || b == 0x0B || b == '\f' || b == '\r';
+	}
+
+	/**
+	 * @return true if the byte ends a column: whitespace, or only a tab in CoNLL-U
+	 */
+	private boolean isSeparator(byte b) {
+		return this.format.isConllu() ? b == '\t' : isSpace(b);
+	}
+
+	/**
+	 * Reads the token in the current line. The line is trimmed and split into columns
+	 * at whitespace like line.trim().split("\\s+"), or at every tab in CoNLL-U.
+	 * CoNLL-U lines that are no tokens are skipped (see {@link InputFormat#skip(String)}).
+	 *
+	 * @param length length of the line
+	 */
+	private void addToken(int length) {
+		int start = 0;
+		int end = length;
+		while (start < end && (this.line[start] & 0xff) <= ' ') {
+			start += 1;
+		}
+		while (end > start && (this.line[end-1] & 0xff) <= ' ') {
+			end -= 1;
+		}
+		String word = null;
+		String labelName = null;
+		int last = Math.max(this.format.getWordColumn(), this.format.getLabelColumn());
+		int col = 0;
+		int pos = start;
+		while (col <= last && (pos < end || col == 0)) {
+			int fieldEnd = pos;
+			while (fieldEnd < end && !this.isSeparator(this.line[fieldEnd])) {
+				fieldEnd += 1;
+			}
+			String field = new String(this.line, pos, fieldEnd - pos, CHARSET);
+			if (col == 0 && this.format.skip(field)) {
+				return;
+			}
+			if (col == this.format.getWordColumn()) {
+				word = field;
+			}
+			if (col == this.format.getLabelColumn()) {
+				labelName = field;
+			}
+			col += 1;
+			pos = fieldEnd;
+			if (this.format.isConllu()) {
+				pos = Math.min(pos + 1, end);
+			} else {
+				while (pos < end && isSpace(this.line[pos])) {
+					pos += 1;
+				}
+			}
+		}
+		if (labelName == null || word == null) {
+			throw new IllegalArgumentException("missing column " + (last+1) + " in line: " + new String(this.line, start, end - start, CHARSET));
+		}
+
+		Integer id = this.localIds.get(labelName);
+		if (id == null) {
+			id = this.addLabel(labelName);
+		}
+		this.freq[id] += 1;
+		if (this.tokenCount == this.sentenceStart) {
+			this.startFreq[id] += 1;
+		} else if (this.bigrams != null) {
+			this.bigrams.increment(this.tokenLabels[this.tokenCount-1], id);
+		}
+		if (this.tokenCount == this.words.length) {
+			this.words = Arrays.copyOf(this.words, 2*this.tokenCount);
+			this.tokenLabels = Arrays.copyOf(this.tokenLabels, 2*this.tokenCount);
+		}
+		this.words[this.tokenCount] = word;
+		this.tokenLabels[this.tokenCount] = id;
+		this.tokenCount += 1;
+	}
+
+	private int addLabel(String name) {
+		if (this.labelCount == this.names.length) {
+			this.names = Arrays.copyOf(this.names, 2*this.labelCount);
+			this.freq = Arrays.copyOf(this.freq, 2*this.labelCount);
+			this.startFreq = Arrays.copyOf(this.startFreq, 2*this.labelCount);
+			this.endFreq = Arrays.copyOf(this.endFreq, 2*this.labelCount);
+		}
+		int id = this.labelCount;
+		this.names[id] = name;
+		this.localIds.put(name, id);
+		this.labelCount += 1;
+		return id;
+	}
+
+	/**
+	 * Closes the current sentence. A final punctuation mark is removed from the sentence
+	 * (but stays counted), empty sentences are dropped.
+	 */
+	private void endSentence() {
+		if (this.tokenCount > this.sentenceStart && isPunct(this.words[this.tokenCount-1])) {
+			this.tokenCount -= 1;
+		}
+		if (this.tokenCount > this.sentenceStart) {
+			this.endFreq[this.tokenLabels[this.tokenCount-1]] += 1;
+			if (this.sentenceCount == this.sentenceEnds.length) {
+				this.sentenceEnds = Arrays.copyOf(this.sentenceEnds, 2*this.sentenceCount);
+			}
+			this.sentenceEnds[this.sentenceCount] = this.tokenCount;
+			this.sentenceCount += 1;
+			this.size += this.tokenCount - this.sentenceStart;
+			this.sentenceStart = this.tokenCount;
+		}
+	}
+
+	/**
+	 * @return true if the text is a single punctuation character
+	 */
+	static boolean isPunct(String text) {
+		return text.length() == 1 && PUNCT.indexOf(text.charAt(0)) >= 0;
+	}
+
+	public int getLabelCount() {
+		return this.labelCount;
+	}
+
+	public String getName(int localId) {
+		return this.names[localId];
+	}
+
+	public int getFreq(int localId) {
+		return this.freq[localId];
+	}
+
+	public int getStartFreq(int localId) {
+		return this.startFreq[localId];
+	}
+
+	public int getEndFreq(int localId) {
+		return this.endFreq[localId];
+	}
+
+	/**
+	 * @return bigram counts by local ids, null if bigrams are not counted
+	 */
+	public BigramTable getBigrams() {
+		return this.bigrams;
+	}
+
+	public int getSentenceCount() {
+		return this.sentenceCount;
+	}
+
+	/**
+	 * @return number of tokens in the sentences of this chunk
+	 */
+	public int getSize() {
+		return this.size;
+	}
+
+	/**
+	 * @param i
+	 * @return first token index of sentence i
+	 */
+	public int sentenceStart(int i) {
+		return i == 0 ? 0 : this.sentenceEnds[i-1];
+	}
+
+	/**
+	 * @param i
+	 * @return end token index (exclusive) of sentence i
+	 */
+	public int sentenceEnd(int i) {
+		return this.sentenceEnds[i];
+	}
+
+	public int getTokenLabel(int token) {
+		return this.tokenLabels[token];
+	}
+
+	public String getWord(int token) {
+		return this.words[token];
+	}
+
+}
@@ -0,0 +1,311 @@
+package de.unisaarland.unsuparse;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Generates reproducible corpora with POS tags in the input format, for measuring how the parser
+ * scales with the size of a corpus, the lengths of its sentences and its vocabulary.
+ *
+ * The tags of a sentence follow a Markov chain: every tag (and the start of a sentence) has its own
+ * order of the tags, given by a random offset and a random step coprime to the number of tags, and
+ * the next tag is drawn from a Zipf distribution over that order. Every tag
+ * has its own words, which are drawn from a Zipf distribution as well, so the words of the corpus
+ * follow a Zipf distribution and the tags have the regular contexts the parser learns from. The
+ * length of a sentence is drawn from a length distribution; its last token is always ". $.".
+ * The same seed and settings always give the same corpus.
+ */
+public class CorpusGenerator {
+	private static final String[] DEFAULT_TAGS = {"ART", "NN", "NE", "ADJA", "VVFIN", "VAFIN", "APPR", "ADV", "PPER", "KON", "PTKNEG", "CARD"};
+
+	private long seed;
+	private int vocabulary;
+	private double zipf;
+	private String[] tags;
+	private String lengths;
+
+	/**
+	 * A generator of 12 tags, 10,000 words with a Zipf exponent of 1 and sentences of 4 to 40 tokens.
+	 *
+	 * @param seed
+	 */
+	public CorpusGenerator(long seed) {
+		this.seed = seed;
+		this.vocabulary = 10000;
+		this.zipf = 1.0;
+		this.tags = DEFAULT_TAGS;
+		this.lengths = "uniform:4:40";
+	}
+
+	/**
+	 * Sets the number of distinct words and the exponent of their Zipf distribution.
+	 *
+	 * @param words at least the number of tags when the corpus is written
+	 * @param exponent
+	 */
+	public void setVocabulary(int words, double exponent) {
+		if (words <= 0 || exponent < 0) {
+			throw new IllegalArgumentException("invalid vocabulary of " + words + " words with exponent " + exponent);
+		}
+		this.vocabulary = words;
+		this.zipf = exponent;
+	}
+
+	/**
+	 * Sets the tags, either a number of tags (named T1, T2, ...) or a comma-separated list of their names.
+	 *
+	 * @param spec
+	 */
+	public void setTags(String spec) {
+		String[] names;
+		if (spec.matches("[0-9]+")) {
+			names = new String[Integer.parseInt(spec)];
+			for (int t = 0; t < names.length; t++) {
+				names[t] = "T" + (t+1);
+			}
+		} else {
+			names = spec.split(",");
+		}
+		if (names.length == 0) {
+			throw new IllegalArgumentException("invalid tags: " + spec);
+		}
+		this.tags = names;
+	}
+
+	/**
+	 * Sets the distribution of the sentence lengths (in tokens, including the final ". $."):
+	 * "fixed:n", "uniform:min:max" or "geometric:mean".
+	 *
+	 * @param spec
+	 */
+	public void setLengths(String spec) {
+		lengthDistribution(spec);
+		this.lengths = spec;
+	}
+
+	/**
+	 * Samples the length of a sentence.
+	 */
+	private abstract static class Lengths {
+		abstract int next(Random random);
+	}
+
+	/**
+	 * Reads a length distribution.
+	 *
+	 * @param spec see {@link #setLengths(String)}
+	 * @return the distribution
+	 */
+	private static Lengths lengthDistribution(String spec) {
+		String[] parts = spec.split(":");
+		try {
+			if (parts[0].equals("fixed") && parts.length == 2 && Integer.parseInt(parts[1]) > 0) {
+				final int length = Integer.parseInt(parts[1]);
+				return new Lengths() {
+					int next(Random random) {
+						return length;
+					}
+				};
+			}
+			if (parts[0].equals("uniform") && parts.length == 3 && Integer.parseInt(parts[1]) > 0
+					&& Integer.parseInt(parts[2]) >= Integer.parseInt(parts[1])) {
+				final int min = Integer.parseInt(parts[1]);
+				final int max = Integer.parseInt(parts[2]);
+				return new Lengths() {
+					int next(Random random) {
+						return min + random.nextInt(max - min + 1);
+					}
+				};
+			}
+			if (parts[0].equals("geometric") && parts.length == 2 && Double.parseDouble(parts[1]) >= 1) {
+				// 1 plus the number of failures before the first success with p = 1/mean
+				final double mean = Double.parseDouble(parts[1]);
+				return new Lengths() {
+					int next(Random random) {
+						if (mean == 1) {
+							return 1;
+						}
+						return 1 + (int) Math.min(1 << 20, Math.floor(Math.log(1 - random.nextDouble()) / Math.log(1 - 1 / mean)));
+					}
+				};
+			}
+		} catch (NumberFormatException e) {
+			// reported below
+		}
+		throw new IllegalArgumentException("invalid length distribution: " + spec);
+	}
+
+	/**
+	 * Returns the cumulative weights of a Zipf distribution over n ranks.
+	 *
+	 * @param n
+	 * @param exponent
+	 * @return cumulative weight of every rank
+	 */
+	private static double[] zipf(int n, double exponent) {
+		double[] cumulative = new double[n];
+		double sum = 0;
+		for (int r = 0; r < n; r++) {
+			sum += Math.pow(r + 1, -exponent);
+			cumulative[r] = sum;
+		}
+		return cumulative;
+	}
+
+	/**
+	 * Draws a rank from a Zipf distribution.
+	 *
+	 * @param cumulative see {@link #zipf(int, double)}
+	 * @param random
+	 * @return the rank
+	 */
+	private static int sample(double[] cumulative, Random random) {
+		int r = Arrays.binarySearch(cumulative, random.nextDouble() * cumulative[cumulative.length-1]);
+		return Math.min(cumulative.length - 1, r < 0 ? -r - 1 : r);
+	}
+
+	/**
+	 * Writes a corpus.
+	 *
+	 * @param filename
+	 * @param sentences number of sentences
+	 * @return number of tokens written
+	 * @throws IOException
+	 * @throws IllegalArgumentException if there are fewer words than tags
+	 */
+	public long write(String filename, long sentences) throws IOException {
+		if (this.tags.length > this.vocabulary) {
+			throw new IllegalArgumentException(this.tags.length + " tags need at least as many words, not " + this.vocabulary);
+		}
+		Random random = new Random(this.seed);
+		Lengths lengths = lengthDistribution(this.lengths);
+		int tagCount = this.tags.length;
+		// after tag p (or the start of a sentence, tagCount) the tag of rank r is (offset[p] + r*step[p]) % tagCount
+		int[] offset = new int[tagCount + 1];
+		int[] step = new int[tagCount + 1];
+		for (int p = 0; p <= tagCount; p++) {
+			offset[p] = random.nextInt(tagCount);
+			do {
+				step[p] = 1 + random.nextInt(Math.max(1, tagCount - 1));
+			} while (BigInteger.valueOf(step[p]).gcd(BigInteger.valueOf(tagCount)).intValue() != 1);
+		}
+		double[] tagWeights = zipf(tagCount, 1.0);
+		// word w belongs to tag w % tagCount and has rank w / tagCount among its words
+		double[][] wordWeights = new double[tagCount][];
+		for (int t = 0; t < tagCount; t++) {
+			wordWeights[t] = zipf((this.vocabulary - t + tagCount - 1) / tagCount, this.zipf);
+		}
+
+		long tokens = 0;
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(filename), "UTF-8"), 1 << 16);
+		try {
+			for (long i = 0; i < sentences; i++) {
+				int length = lengths.next(random);
+				int tag = tagCount;
+				for (int k = 1; k < length; k++) {
+					tag = (int) ((offset[tag] + (long) sample(tagWeights, random) * step[tag]) % tagCount);
+					int word = sample(wordWeights[tag], random) * tagCount + tag;
+					writer.write("w" + word + "\t" + this.tags[tag] + "\n");
+				}
+				writer.write(".\t$.\n\n");
+				tokens += length;
+			}
+		} finally {
+			writer.close();
+		}
+		return tokens;
+	}
+
+	/**
+	 * Writes a corpus with the settings given on the command line: "--generate &lt;file&gt;" followed by
+	 * "--sentences &lt;n&gt;" (default 10000), "--vocab &lt;words&gt;", "--zipf &lt;exponent&gt;",
+	 * "--tags &lt;n or names&gt;", "--lengths &lt;distribution&gt;" and "--seed &lt;n&gt;" (default 42).
+	 * An invalid value is reported with a warning and the default is used instead.
+	 *
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void generate(String[] args) throws IOException {
+		long sentences = 10000;
+		long seed = 42;
+		int vocabulary = 10000;
+		double exponent = 1.0;
+		String tags = null;
+		String lengths = null;
+		for (int i = 2; i < args.length; i++) {
+			if (i+1 == args.length) {
+				System.out.println("WARNING: no value for " + args[i] + " specified, ignored");
+				break;
+			}
+			i += 1;
+			switch (args[i-1]) {
+			case "--sentences":
+				try {
+					sentences = Long.parseLong(args[i]);
+				} catch (NumberFormatException e) {
+					System.out.println("WARNING: invalid number of sentences " + args[i] + " specified, default will be used");
+				}
+				break;
+			case "--vocab":
+				try {
+					vocabulary = Integer.parseInt(args[i]);
+				} catch (NumberFormatException e) {
+					System.out.println("WARNING: invalid vocabulary size " + args[i] + " specified, default will be used");
+				}
+				break;
+			case "--zipf":
+				try {
+					exponent = Double.parseDouble(args[i]);
+				} catch (NumberFormatException e) {
+					System.out.println("WARNING: invalid Zipf exponent " + args[i] + " specified, default will be used");
+				}
+				break;
+			case "--tags":
+				tags = args[i];
+				break;
+			case "--lengths":
+				lengths = args[i];
+				break;
+			case "--seed":
+				try {
+					seed = Long.parseLong(args[i]);
+				} catch (NumberFormatException e) {
+					System.out.println("WARNING: invalid seed " + args[i] + " specified, default will be used");
+				}
+				break;
+			default:
+				System.out.println("WARNING: unknown option " + args[i-1] + ", ignored");
+				i -= 1;
+			}
+		}
+		CorpusGenerator generator = new CorpusGenerator(seed);
+		if (tags != null) {
+			try {
+				generator.setTags(tags);
+			} catch (IllegalArgumentException e) {
+				System.out.println("WARNING: invalid tags " + tags + " specified, default will be used");
+			}
+		}
+		try {
+			generator.setVocabulary(vocabulary, exponent);
+		} catch (IllegalArgumentException e) {
+			System.out.println("WARNING: invalid vocabulary of " + vocabulary + " words with Zipf exponent " + exponent + " specified, default will be used");
+		}
+		if (lengths != null) {
+			try {
+				generator.setLengths(lengths);
+			} catch (IllegalArgumentException e) {
+				System.out.println("WARNING: invalid length distribution " + lengths + " specified, default will be used");
+			}
+		}
+		long tokens = generator.write(args[1], sentences);
+		System.out.println("generated " + sentences + " sentences, " + tokens + " tokens in " + args[1]);
+	}
+
+}
@@ -0,0 +1,100 @@
+package de.unisaarland.unsuparse;
+
+/**
+ * Settings for reading a corpus file: its format and, optionally, a memory budget for the bigram
+ * counts, the folding of rare labels and a file to keep the sentences in. Every setting other than
+ * the format is off by default.
+ */
+public class CorpusOptions {
+	private InputFormat format;
+	private long bigramMemory; // memory for bigram counts in bytes, 0 for exact counts
+	private LabelFolding folding; // folds rare labels into classes, or null
+	private SentenceStore store; // keeps the sentences in a file instead of on the heap, or null
+
+	/**
+	 * Creates the settings for a corpus file in the given format, e.g. CoNLL-U.
+	 *
+	 * @param format
+	 */
+	public CorpusOptions(InputFormat format) {
+		this.format = format;
+		this.bigramMemory = 0;
+		this.folding = null;
+		this.store = null;
+	}
+
+	/**
+	 * Creates the settings for a corpus file in the format given by its name, see {@link InputFormat#forFile(String, boolean)}.
+	 *
+	 * @param filename
+	 * @param usePos
+	 */
+	public CorpusOptions(String filename, boolean usePos) {
+		this(InputFormat.forFile(filename, usePos));
+	}
+
+	/**
+	 * @return the format of the corpus file
+	 */
+	public InputFormat getFormat() {
+		return this.format;
+	}
+
+	/**
+	 * @return true if the labels are POS tags
+	 */
+	public boolean usesPos() {
+		return this.format.usesPos();
+	}
+
+	/**
+	 * Keeps the bigram counts in a {@link BigramSketch} that together with the exactly counted heavy
+	 * hitters uses about the given memory, however many distinct bigrams the corpus has.
+	 *
+	 * @param bigramMemory memory for bigram counts in bytes, 0 for exact counts
+	 */
+	public void setBigramMemory(long bigramMemory) {
+		this.bigramMemory = bigramMemory;
+	}
+
+	/**
+	 * @return memory for bigram counts in bytes, 0 for exact counts
+	 */
+	public long getBigramMemory() {
+		return this.bigramMemory;
+	}
+
+	/**
+	 * Folds labels that are too rare into shared classes before any counts are taken (see {@link LabelFolding}).
+	 *
+	 * @param folding folding of rare labels, or null to keep all labels
+	 */
+	public void setFolding(LabelFolding folding) {
+		this.folding = folding;
+	}
+
+	/**
+	 * @return folding of rare labels, or null to keep all labels
+	 */
+	public LabelFolding getFolding() {
+		return this.folding;
+	}
+
+	/**
+	 * Keeps the sentences in a memory-mapped file instead of on the heap (see {@link SentenceStore}).
+	 * Labels cannot be folded then.
+	 *
+	 * @param store empty store for the sentences, or null to keep them on the heap
+	 */
+	public void setStore(SentenceStore store) {
+		this.store = store;
+	}
+
+	/**
+	 * @return store for the sentences, or null to keep them on the heap
+	 */
+	public SentenceStore getStore() {
+		return this.store;
+	}
+
+}
@@ -0,0 +1,210 @@
+package de.unisaarland.unsuparse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Decompresses a gzip file while it is read, without writing the decompressed data anywhere.
+ *
+ * Files of several gzip members whose headers give the size of the member, like the blocked gzip
+ * files of bgzip (members of at most 64KB with a "BC" extra field), are decompressed in parallel:
+ * a batch of members is read and the workers inflate them at the same time. All other files,
+ * including plain concatenations of gzip members, are decompressed on the reading thread with
+ * large buffers. If a member without its size turns up in a blocked file, the rest of the file
+ * is decompressed on the reading thread.
+ */
+public class GzipInput extends InputStream {
+	private static final int BUFFER_SIZE = 1 << 20;
+	private static final int MEMBERS_PER_THREAD = 64; // members inflated per thread and batch
+	private static final int FEXTRA = 4; // header flag of the extra field
+
+	private RandomAccessFile file;
+	private FileChannel channel;
+	private Workers workers;
+	private InputStream sequential; // decompresses on the reading thread, null while members are inflated in parallel
+	private ArrayList<byte[]> batch; // inflated members of the current batch
+	private int member; // member of the batch that is read
+	private int offset; // offset in that member
+	private byte[] single; // buffer for read()
+
+	/**
+	 * @param filename gzip file
+	 * @param workers workers for inflating members in parallel
+	 * @throws IOException
+	 */
+	public GzipInput(String filename, Workers workers) throws IOException {
+		this.file = new RandomAccessFile(filename, "r");
+		this.channel = this.file.getChannel();
+		this.workers = workers;
+		this.batch = new ArrayList<byte[]>();
+		this.member = 0;
+		this.offset = 0;
+		this.single = new byte[1];
+		if (workers.getThreads() == 1 || memberSize(this.channel, 0) < 0) {
+			this.sequential = new GZIPInputStream(Channels.newInputStream(this.channel), BUFFER_SIZE);
+		}
+	}
+
+	/**
+	 * Returns the size of the gzip member starting at the given position, if its header gives it.
+	 *
+	 * @param channel
+	 * @param position
+	 * @return size of the member in bytes, 0 at the end of the file, -1 if the header has no size
+	 * @throws IOException
+	 */
+	private static int memberSize(FileChannel channel, long position) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(18).order(ByteOrder.LITTLE_ENDIAN);
+		while (header.hasRemaining() && channel.read(header, position + header.position()) > 0) {
+		}
+		if (header.position() == 0) {
+			return 0;
+		}
+		// ID1 ID2 CM FLG MTIME XFL OS XLEN, then the subfield SI1 SI2 SLEN BSIZE
+		if (header.position() < 18 || header.get(0) != 0x1f || (header.get(1) & 0xff) != 0x8b || header.get(2) != 8
+				|| header.get(3) != FEXTRA || header.getShort(10) != 6 || header.get(12) != 'B' || header.get(13) != 'C'
+				|| header.getShort(14) != 2) {
+			return -1;
+		}
+		return (header.getShort(16) & 0xffff) + 1;
+	}
+
+	/**
+	 * Reads the next batch of members and inflates them in parallel.
+	 *
+	 * @return false at the end of the file
+	 * @throws IOException
+	 */
+	private boolean nextBatch() throws IOException {
+		this.batch.clear();
+		this.member = 0;
+		this.offset = 0;
+		ArrayList<Callable<byte[]>> inflates = new ArrayList<Callable<byte[]>>();
+		long position = this.channel.position();
+		while (inflates.size() < MEMBERS_PER_THREAD * this.workers.getThreads()) {
+			int size = memberSize(this.channel, position);
+			if (size <= 0) {
+				if (size < 0) {
+					// continue on the reading thread after the members read so far
+					this.channel.position(position);
+					this.sequential = new GZIPInputStream(Channels.newInputStream(this.channel), BUFFER_SIZE);
+				}
+				break;
+			}
+			final ByteBuffer data = ByteBuffer.allocate(size);
+			while (data.hasRemaining()) {
+				if (this.channel.read(data, position + data.position()) < 0) {
+					throw new IOException("unexpected end of gzip file");
+				}
+			}
+			position += size;
+			inflates.add(new Callable<byte[]>() {
+				public byte[] call() throws IOException {
+					return inflate(data.array());
+				}
+			});
+		}
+		if (this.sequential == null) {
+			this.channel.position(position);
+		}
+		try {
+			this.batch.addAll(this.workers.invokeAll(inflates));
+		} catch (RuntimeException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw e;
+		}
+		return !this.batch.isEmpty();
+	}
+
+	/**
+	 * Inflates a member with a header of 18 bytes and checks its size and CRC.
+	 *
+	 * @param data
+	 * @return the decompressed member
+	 * @throws IOException
+	 */
+	private static byte[] inflate(byte[] data) throws IOException {
+		ByteBuffer trailer = ByteBuffer.wrap(data, data.length - 8, 8).order(ByteOrder.LITTLE_ENDIAN);
+		int crc = trailer.getInt();
+		byte[] res = new byte[trailer.getInt()];
+		Inflater inflater = new Inflater(true);
+		try {
+			// with the trailer as input, the inflater always has the extra byte it may need at the end
+			inflater.setInput(data, 18, data.length - 18);
+			int n = 0;
+			while (n < res.length && !inflater.finished()) {
+				int k = inflater.inflate(res, n, res.length - n);
+				if (k == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				n += k;
+			}
+			if (n != res.length) {
+				throw new IOException("corrupt gzip member");
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("corrupt gzip member: " + e.getMessage());
+		} finally {
+			inflater.end();
+		}
+		CRC32 check = new CRC32();
+		check.update(res, 0, res.length);
+		if ((int) check.getValue() != crc) {
+			throw new IOException("CRC error in gzip member");
+		}
+		return res;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		while (this.member == this.batch.size() || this.offset == this.batch.get(this.member).length) {
+			if (this.member < this.batch.size()) {
+				this.member += 1;
+				this.offset = 0;
+			} else if (this.sequential != null) {
+				return this.sequential.read(b, off, len);
+			} else if (!this.nextBatch()) {
+				return this.sequential != null ? this.sequential.read(b, off, len) : -1;
+			}
+		}
+		byte[] data = this.batch.get(this.member);
+		int n = Math.min(len, data.length - this.offset);
+		System.arraycopy(data, this.offset, b, off, n);
+		this.offset += n;
+		return n;
+	}
+
+	@Override
+	public int read() throws IOException {
+		return this.read(this.single, 0, 1) < 0 ? -1 : this.single[0] & 0xff;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			if (this.sequential != null) {
+				// ends its inflater, which is not on the heap
+				this.sequential.close();
+			}
+		} finally {
+			this.file.close();
+		}
+	}
+
+}
@@ -0,0 +1,134 @@
+package de.unisaarland.unsuparse;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+
+/**
+ * The format of a corpus file and the columns that hold the words and labels.
+ *
+ * In the default format every token is a line of whitespace-separated columns, the word
+ * followed by its POS tag, and sentences are separated by blank lines. In CoNLL-U, the
+ * columns are separated by tabs (FORM may contain spaces), the word is the FORM column and
+ * the POS tag the UPOS or XPOS column. Comment lines and the lines of multiword tokens
+ * (ids like 3-4) and empty nodes (ids like 3.1) are skipped, so the tokens are the
+ * syntactic words.
+ *
+ * Both formats can be read gzip-compressed (see {@link GzipInput}), which is recognized by the
+ * first bytes of the file and not by its name.
+ */
+public class InputFormat {
+	private boolean conllu;
+	private boolean usePos;
+	private int wordColumn;
+	private int labelColumn;
+
+	private InputFormat(boolean conllu, boolean usePos, int wordColumn, int labelColumn) {
+		this.conllu = conllu;
+		this.usePos = usePos;
+		this.wordColumn = wordColumn;
+		this.labelColumn = labelColumn;
+	}
+
+	/**
+	 * @param usePos
+	 * @return the default format, labels from the second column if usePos is set, else the words
+	 */
+	public static InputFormat plain(boolean usePos) {
+		return new InputFormat(false, usePos, 0, usePos ? 1 : 0);
+	}
+
+	/**
+	 * @param usePos
+	 * @param xpos true to use the XPOS column instead of UPOS as POS tag
+	 * @return CoNLL-U, labels from the POS column if usePos is set, else the FORM column
+	 */
+	public static InputFormat conllu(boolean usePos, boolean xpos) {
+		return new InputFormat(true, usePos, 1, usePos ? (xpos ? 4 : 3) : 1);
+	}
+
+	/**
+	 * Returns the format of a file by its name: CoNLL-U (with UPOS as POS tag) if the name ends
+	 * with .conllu or .conllu.gz, the default format otherwise.
+	 *
+	 * @param filename
+	 * @param usePos
+	 * @return the format
+	 */
+	public static InputFormat forFile(String filename, boolean usePos) {
+		String name = filename.endsWith(".gz") ? filename.substring(0, filename.length() - 3) : filename;
+		return name.endsWith(".conllu") ? conllu(usePos, false) : plain(usePos);
+	}
+
+	/**
+	 * @return true for CoNLL-U
+	 */
+	public boolean isConllu() {
+		return this.conllu;
+	}
+
+	/**
+	 * @return true if the labels are POS tags
+	 */
+	public boolean usesPos() {
+		return this.usePos;
+	}
+
+	public int getWordColumn() {
+		return this.wordColumn;
+	}
+
+	public int getLabelColumn() {
+		return this.labelColumn;
+	}
+
+	/**
+	 * Returns true if a CoNLL-U line that is not blank has to be skipped: comments, multiword
+	 * tokens and empty nodes. Lines of the default format are never skipped.
+	 *
+	 * @param id the first column of the line
+	 * @return true if the line is no token
+	 */
+	boolean skip(String id) {
+		return this.conllu && (id.startsWith("#") || id.indexOf('-') >= 0 || id.indexOf('.') >= 0);
+	}
+
+	/**
+	 * Returns true if the file is gzip-compressed.
+	 *
+	 * @param filename
+	 * @return true if the file starts with the gzip magic bytes
+	 * @throws IOException
+	 */
+	public static boolean isGzip(String filename) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(filename, "r");
+		try {
+			return file.length() >= 2 && file.read() == 0x1f && file.read() == 0x8b;
+		} finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * Opens a file for reading line by line, decompressing it if it is gzip-compressed.
+	 *
+	 * @param filename
+	 * @param workers workers for decompressing blocked gzip files in parallel
+	 * @return the reader
+	 * @throws IOException
+	 */
+	public static BufferedReader open(String filename, Workers workers) throws IOException {
+		InputStream in;
+		if (isGzip(filename)) {
+			in = new GzipInput(filename, workers);
+		} else {
+			in = new FileInputStream(filename);
+		}
+		// decoded like FileReader does
+		return new BufferedReader(new InputStreamReader(in), 1 << 16);
+	}
+
+}
@@ -0,0 +1,102 @@
+package de.unisaarland.unsuparse;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder events of a parser run. This class is only loaded by {@link Metrics}
+ * if the JVM supports JFR, so the parser still runs on JVMs without it. Events are only created
+ * while JFR is running, so that JFR is not started just for them.
+ */
+class JfrEvents {
+
+	@Name("unsuparse.Phase")
+	@jdk.jfr.Label("Parser Phase")
+	@Category("UnsuParse")
+	@Description("A phase of a parser run, e.g. reading the corpus or safe learning")
+	static class PhaseEvent extends Event {
+		@jdk.jfr.Label("Phase")
+		String phase;
+
+		@jdk.jfr.Label("Heap Used")
+		@jdk.jfr.DataAmount
+		long heapUsed;
+	}
+
+	@Name("unsuparse.SafeIteration")
+	@jdk.jfr.Label("Safe Learning Iteration")
+	@Category("UnsuParse")
+	static class IterationEvent extends Event {
+		@jdk.jfr.Label("Iteration")
+		long iteration;
+
+		@jdk.jfr.Label("Iteration Time")
+		@Timespan
+		long nanos;
+
+		@jdk.jfr.Label("Rescanned Sentences")
+		long rescanned;
+
+		@jdk.jfr.Label("Proposed Merges")
+		long proposed;
+
+		@jdk.jfr.Label("Candidates")
+		long candidates;
+
+		@jdk.jfr.Label("Committed Merges")
+		long committed;
+
+		@jdk.jfr.Label("Rejected Candidates")
+		long rejected;
+
+		@jdk.jfr.Label("Separation Values")
+		long sepCalls;
+	}
+
+	/**
+	 * @return true if JFR has been started (e.g. by -XX:StartFlightRecording or JFR.start)
+	 */
+	static boolean isRecording() {
+		return FlightRecorder.isInitialized();
+	}
+
+	static Object beginPhase() {
+		PhaseEvent event = new PhaseEvent();
+		event.begin();
+		return event;
+	}
+
+	static void endPhase(Object phaseEvent, String phase, long heapUsed) {
+		if (phaseEvent == null) {
+			return;
+		}
+		PhaseEvent event = (PhaseEvent) phaseEvent;
+		event.end();
+		if (event.shouldCommit()) {
+			event.phase = phase;
+			event.heapUsed = heapUsed;
+			event.commit();
+		}
+	}
+
+	static void iteration(long iteration, long nanos, long rescanned, long proposed, long candidates,
+			long committed, long rejected, long sepCalls) {
+		IterationEvent event = new IterationEvent();
+		if (event.isEnabled()) {
+			event.iteration = iteration;
+			event.nanos = nanos;
+			event.rescanned = rescanned;
+			event.proposed = proposed;
+			event.candidates = candidates;
+			event.committed = committed;
+			event.rejected = rejected;
+			event.sepCalls = sepCalls;
+			event.commit();
+		}
+	}
+
+}
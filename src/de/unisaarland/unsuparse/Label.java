@@ -1,104 +1,84 @@
 package de.unisaarland.unsuparse;
 
-import java.util.HashMap;
-
 /**
  * A Label can either represent a word or a POS-tag, depending on the mode used.
- * 
+ * The counters of a label are stored in the Vocabulary of the corpus, the Label
+ * only holds its dense id.
+ *
  * @author Julia Dembowski
  */
 public class Label {
-	private String name;
-	private double freq; // Frequency in the corpus
-	private double startFreq; // Frequency of label at the beginning of sentences
-	private double endFreq; // Frequency of label at the end of sentences
-	private HashMap<String,Double> bigramFreqs; // Contains frequencies of this label preceding other labels
-	private int f; // number of constituents with this label at the first position
-	private int l; // number of constituents with this label at the last position
-	
-	public Label(String name) {
-		this.name = name;
-		this.freq = 0.1;
-		this.startFreq = 0.1;
-		this.endFreq = 0.1;
-		this.bigramFreqs = new HashMap<String,Double>();
-		this.f = 0;
-		this.l = 0;
+	private final int id; // dense id of this label in the vocabulary
+	private final Vocabulary vocab;
+
+	public Label(int id, Vocabulary vocab) {
+		this.id = id;
+		this.vocab = vocab;
+	}
+
+	public int getId() {
+		return this.id;
 	}
-	
 
 	public String getText() {
-		return this.name;
+		return this.vocab.getName(this.id);
 	}
-	
+
 	/**
-	 * Returns frequency of this word/pos preceding the word/pos defined by labelName.
-	 * 
-	 * @param labelName
-	 * @return bigram frequency 
+	 * Returns frequency of this word/pos preceding the word/pos defined by next.
+	 *
+	 * @param next
+	 * @return bigram frequency
 	 */
-	public double getBigramFreq(String labelName) {
-		if (this.bigramFreqs.containsKey(labelName)) {
-			return this.bigramFreqs.get(labelName);
-		} else {
-			return 0.1;
-		}
+	public double getBigramFreq(Label next) {
+		return this.vocab.getBigramFreq(this.id, next.id);
 	}
-	
-	public void incrementBigramFreq(String labelName) {
-		double currentFreq = this.getBigramFreq(labelName);
-		this.bigramFreqs.put(labelName, currentFreq + 1);
+
+	public void incrementBigramFreq(Label next) {
+		this.vocab.incrementBigramFreq(this.id, next.id);
 	}
 
 	public double getStartFreq() {
-		return this.startFreq;
+		return this.vocab.getStartFreq(this.id);
 	}
 
 	public void incrementStartFreq() {
-		this.startFreq += 1;
+		this.vocab.incrementStartFreq(this.id);
 	}
 
 	public double getEndFreq() {
-		return this.endFreq;
+		return this.vocab.getEndFreq(this.id);
 	}
 
 	public void incrementEndFreq() {
-		this.endFreq += 1;
+		this.vocab.incrementEndFreq(this.id);
 	}
 
 
 	public double getFreq() {
-		return this.freq;
+		return this.vocab.getFreq(this.id);
 	}
 
 
 	public void incrementFreq() {
-		this.freq += 1;
+		this.vocab.incrementFreq(this.id);
 	}
-	
+
 	public void incrementF() {
-		this.f += 1;
+		this.vocab.incrementF(this.id);
 	}
-	
+
 	public void incrementL() {
-		this.l += 1;
+		this.vocab.incrementL(this.id);
 	}
-	
+
 	/**
 	 * Returns preference of this label to be the first element in a constituent.
-	 * 
-	 * @return preference value 
+	 *
+	 * @return preference value
 	 */
 	public double pref() {
-		Double exp = (double) (this.f - this.l);
-		if (exp > 50) { // this in necessary to avoid numbers going to infinity
-			exp = 50.0;
-		}
-		if (exp < -50) { // this in necessary to avoid the preference value being zero
-			exp = -50.0;
-		}
-		Double res = Math.pow(2, exp);
-		return res;
+		return this.vocab.pref(this.id);
 	}
 
 }
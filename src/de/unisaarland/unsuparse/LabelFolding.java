@@ -0,0 +1,123 @@
+package de.unisaarland.unsuparse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Folds rare labels into shared classes while a corpus is read, so that words seen only once or
+ * twice do not each get a label with its own counters, bigrams and significance values.
+ * A label is folded if it is seen fewer than minFreq times in the corpus or if it is not among
+ * the maxLabels most frequent labels. Folded labels are replaced by the class of their shape
+ * (upper and lower case letters, digits and other characters, with repetitions collapsed) and,
+ * for longer words, their last two letters, e.g. "<rare Xx -ed>" for "Contained".
+ * Class names contain a space, so they never collide with a token.
+ *
+ * The decision is made on the counts of the whole corpus, after the chunks are read and before
+ * the labels of the vocabulary are created (see {@link Corpus}).
+ */
+public class LabelFolding {
+	private int minFreq; // labels seen fewer times are folded, 0 for none
+	private int maxLabels; // labels beyond the most frequent ones are folded, 0 for no limit
+
+	/**
+	 * @param minFreq labels seen fewer times are folded, 0 for none
+	 * @param maxLabels number of most frequent labels that are kept, 0 for no limit
+	 */
+	public LabelFolding(int minFreq, int maxLabels) {
+		this.minFreq = minFreq;
+		this.maxLabels = maxLabels;
+	}
+
+	/**
+	 * Returns the class a label is folded into.
+	 *
+	 * @param name
+	 * @return class name
+	 */
+	public static String classOf(String name) {
+		StringBuilder sb = new StringBuilder("<rare ");
+		char last = 0;
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			char shape;
+			if (Character.isUpperCase(c)) {
+				shape = 'X';
+			} else if (Character.isLowerCase(c)) {
+				shape = 'x';
+			} else if (Character.isDigit(c)) {
+				shape = 'd';
+			} else if (Character.isLetter(c)) {
+				shape = 'a';
+			} else {
+				shape = c;
+			}
+			if (shape != last) {
+				sb.append(shape);
+				last = shape;
+			}
+		}
+		int n = name.length();
+		if (n >= 4 && Character.isLetter(name.charAt(n-1)) && Character.isLetter(name.charAt(n-2))) {
+			sb.append(" -").append(name.substring(n-2).toLowerCase());
+		}
+		sb.append('>');
+		return sb.toString();
+	}
+
+	/**
+	 * Decides which labels of the chunks of a corpus are folded. Labels that are already in the
+	 * vocabulary (when sentences are added to a model) are always kept.
+	 *
+	 * @param chunks
+	 * @param vocab
+	 * @return the class of every folded label name
+	 */
+	HashMap<String,String> fold(ArrayList<CorpusChunk> chunks, Vocabulary vocab) {
+		// total frequency of every new name, in order of first appearance
+		LinkedHashMap<String,int[]> counts = new LinkedHashMap<String,int[]>();
+		for (CorpusChunk chunk : chunks) {
+			for (int localId = 0; localId < chunk.getLabelCount(); localId++) {
+				String name = chunk.getName(localId);
+				int[] count = counts.get(name);
+				if (count == null) {
+					if (vocab.find(name) >= 0) {
+						continue;
+					}
+					count = new int[1];
+					counts.put(name, count);
+				}
+				count[0] += chunk.getFreq(localId);
+			}
+		}
+
+		HashMap<String,String> folded = new HashMap<String,String>();
+		ArrayList<String> kept = new ArrayList<String>();
+		for (Map.Entry<String,int[]> e : counts.entrySet()) {
+			if (e.getValue()[0] < this.minFreq) {
+				folded.put(e.getKey(), classOf(e.getKey()));
+			} else {
+				kept.add(e.getKey());
+			}
+		}
+		int limit = this.maxLabels - vocab.size();
+		if (this.maxLabels > 0 && kept.size() > Math.max(0, limit)) {
+			final LinkedHashMap<String,int[]> freq = counts;
+			String[] byFreq = kept.toArray(new String[kept.size()]);
+			// stable, so labels with the same frequency stay in order of first appearance
+			Arrays.sort(byFreq, new Comparator<String>() {
+				public int compare(String a, String b) {
+					return Integer.compare(freq.get(b)[0], freq.get(a)[0]);
+				}
+			});
+			for (int i = Math.max(0, limit); i < byFreq.length; i++) {
+				folded.put(byFreq[i], classOf(byFreq[i]));
+			}
+		}
+		return folded;
+	}
+
+}
@@ -0,0 +1,81 @@
+package de.unisaarland.unsuparse;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts latencies in logarithmic buckets (four per power of two, so values are
+ * accurate to about 19%), which is enough to report percentiles cheaply.
+ * Recording is lock-free and can be done by many threads at once.
+ */
+public class LatencyHistogram {
+	private static final int BUCKETS_PER_POWER = 4;
+	private static final int BUCKETS = 64 * BUCKETS_PER_POWER;
+
+	private AtomicLongArray counts;
+
+	public LatencyHistogram() {
+		this.counts = new AtomicLongArray(BUCKETS);
+	}
+
+	private static int bucket(long nanos) {
+		if (nanos < 1) {
+			return 0;
+		}
+		int bucket = (int) Math.floor(BUCKETS_PER_POWER * Math.log(nanos) / Math.log(2));
+		return Math.min(bucket, BUCKETS-1);
+	}
+
+	/**
+	 * @param bucket
+	 * @return the largest latency (in nanoseconds) counted in the bucket
+	 */
+	private static long upperBound(int bucket) {
+		return (long) Math.pow(2, (bucket+1) / (double) BUCKETS_PER_POWER);
+	}
+
+	/**
+	 * @param nanos latency in nanoseconds
+	 */
+	public void record(long nanos) {
+		this.counts.incrementAndGet(bucket(nanos));
+	}
+
+	/**
+	 * @return number of recorded latencies
+	 */
+	public long count() {
+		long n = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			n += this.counts.get(i);
+		}
+		return n;
+	}
+
+	/**
+	 * Returns the latency below which the given share of all recorded latencies lie.
+	 *
+	 * @param p share between 0 and 1, e.g. 0.99
+	 * @return latency in nanoseconds, 0 if nothing was recorded
+	 */
+	public long percentile(double p) {
+		long[] snapshot = new long[BUCKETS];
+		long n = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = this.counts.get(i);
+			n += snapshot[i];
+		}
+		if (n == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(p * n);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= rank && snapshot[i] > 0) {
+				return upperBound(i);
+			}
+		}
+		return upperBound(BUCKETS-1);
+	}
+
+}
@@ -7,34 +7,60 @@ package de.unisaarland.unsuparse;
  *
  */
 public class Merge {
-	private ConstituentTree mergedCons; // the new constituent to be added to the sentence 
+	private static final int LENGTH = 2; // number of constituents merged
+	
+	private Sentence sentence;
 	private int index; // start in index of the merged constituent in the sentence
 	
 	/**
-	 * Creates a new Merge object and takes the merged constituent, its start index and separation value.
+	 * Creates a new Merge object of the constituents index and index+1 of the sentence.
 	 * 
-	 * @param mergedCons
+	 * @param sentence
 	 * @param index
 	 */
-	public Merge(ConstituentTree mergedCons, int index) {
-		this.mergedCons = mergedCons;
+	public Merge(Sentence sentence, int index) {
+		this.sentence = sentence;
 		this.index = index;
 	}
 	
-	public ConstituentTree getCons() {
-		return this.mergedCons;
-	}
-	
 	public int getIndex() {
 		return this.index;
 	}
 	
+	/**
+	 * @return first label of the merged constituent
+	 */
+	public Label getFirstLabel() {
+		return this.sentence.firstLabel(this.index);
+	}
+	
+	/**
+	 * @return last label of the merged constituent
+	 */
+	public Label getLastLabel() {
+		return this.sentence.lastLabel(this.index + LENGTH - 1);
+	}
+	
+	/**
+	 * Returns the labels of the merged constituent. Only valid as long as the sentence is not changed.
+	 * 
+	 * @return label text
+	 */
 	public String text() {
-		return mergedCons.getLabelText();
+		StringBuilder sb = new StringBuilder();
+		int start = this.sentence.constituentStart(this.index);
+		int end = this.sentence.constituentEnd(this.index + LENGTH - 1);
+		for (int t = start; t < end; t++) {
+			if (t > start) {
+				sb.append(' ');
+			}
+			sb.append(this.sentence.getLabel(t).getText());
+		}
+		return sb.toString();
 	}
 	
 	public int length() {
-		return this.mergedCons.length();
+		return LENGTH;
 	}
 
 }
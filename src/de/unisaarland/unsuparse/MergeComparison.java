@@ -0,0 +1,202 @@
+package de.unisaarland.unsuparse;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Compares the trees of batched safe learning (see {@link Parser#setBatchMerges(boolean)}) with
+ * those of the default mode, which commits only the best merge of every sentence per iteration.
+ * Both modes parse their own copy of the corpus. The report lists the safe learning iterations
+ * and the times of both runs, and the unlabeled bracket precision, recall and F1 of the batched
+ * trees measured against the default trees together with the number of identical trees.
+ *
+ * Brackets are the token spans of the constituents with more than one word, without the root.
+ */
+public class MergeComparison {
+	private String corpusFile;
+	private InputFormat format;
+	private int threads;
+	private double threshold;
+	private Result[] runs; // by mode: default, batched
+
+	/**
+	 * Result of parsing the corpus in one mode.
+	 */
+	private static class Result {
+		private long[][] brackets; // sorted brackets of every tree
+		private int iterations;
+		private long safeNanos;
+		private long totalNanos;
+	}
+
+	/**
+	 * @param corpusFile
+	 * @param usePos
+	 * @param threads
+	 */
+	public MergeComparison(String corpusFile, boolean usePos, int threads) {
+		this(corpusFile, InputFormat.forFile(corpusFile, usePos), threads);
+	}
+
+	/**
+	 * @param corpusFile
+	 * @param format
+	 * @param threads
+	 */
+	public MergeComparison(String corpusFile, InputFormat format, int threads) {
+		this.corpusFile = corpusFile;
+		this.format = format;
+		this.threads = threads;
+		this.runs = new Result[2];
+	}
+
+	/**
+	 * Parses the corpus in one mode and keeps the brackets of the trees.
+	 *
+	 * @param batched
+	 * @param threshold
+	 * @param onlySafe
+	 * @param out writer for the trees, closed afterwards, or null
+	 * @return the parser, for its model and metrics
+	 * @throws IOException
+	 */
+	public Parser parse(boolean batched, double threshold, boolean onlySafe, TreeWriter out) throws IOException {
+		long start = System.nanoTime();
+		Parser parser = new Parser(this.corpusFile, this.threads, new CorpusOptions(this.format));
+		parser.setBatchMerges(batched);
+		ArrayList<ConstituentTree> trees = parser.parseCorpus(threshold, onlySafe);
+		Result run = new Result();
+		run.brackets = new long[trees.size()][];
+		for (int i = 0; i < trees.size(); i++) {
+			run.brackets[i] = brackets(trees.get(i));
+		}
+		if (out != null) {
+			try {
+				for (ConstituentTree tree : trees) {
+					out.write(tree);
+				}
+			} finally {
+				out.close();
+			}
+		}
+		run.totalNanos = System.nanoTime() - start;
+		run.iterations = parser.getMetrics().getIterationCount();
+		run.safeNanos = parser.getMetrics().getPhaseNanos("safe learning");
+		this.runs[batched ? 1 : 0] = run;
+		this.threshold = threshold;
+		return parser;
+	}
+
+	/**
+	 * Returns the brackets of a tree, every span packed into a long as start << 32 | end.
+	 *
+	 * @param tree
+	 * @return sorted brackets
+	 */
+	private static long[] brackets(ConstituentTree tree) {
+		Sentence s = tree.getSentence();
+		long[] res = new long[s.tokens()];
+		int count = 0;
+		int[] stack = new int[2*s.tokens()]; // every node is pushed once
+		int top = 0;
+		for (int c = s.firstChild(tree.getNode()); c >= 0; c = s.nextSibling(c)) {
+			stack[top] = c;
+			top += 1;
+		}
+		while (top > 0) {
+			top -= 1;
+			int node = stack[top];
+			if (s.isWord(node)) {
+				continue;
+			}
+			res[count] = ((long) s.start(node) << 32) | s.end(node);
+			count += 1;
+			for (int c = s.firstChild(node); c >= 0; c = s.nextSibling(c)) {
+				stack[top] = c;
+				top += 1;
+			}
+		}
+		res = Arrays.copyOf(res, count);
+		Arrays.sort(res);
+		return res;
+	}
+
+	/**
+	 * Writes the comparison as JSON. Both modes must have been parsed.
+	 *
+	 * @param filename
+	 * @throws IOException
+	 */
+	public void write(String filename) throws IOException {
+		Result classic = this.runs[0];
+		Result batched = this.runs[1];
+		if (classic == null || batched == null) {
+			throw new IllegalStateException("both modes have to be parsed before they can be compared");
+		}
+		long classicBrackets = 0;
+		long batchedBrackets = 0;
+		long matched = 0;
+		int identical = 0;
+		for (int i = 0; i < classic.brackets.length; i++) {
+			long[] a = classic.brackets[i];
+			long[] b = batched.brackets[i];
+			int common = 0;
+			for (int j = 0, k = 0; j < a.length && k < b.length; ) {
+				if (a[j] < b[k]) {
+					j += 1;
+				} else if (a[j] > b[k]) {
+					k += 1;
+				} else {
+					common += 1;
+					j += 1;
+					k += 1;
+				}
+			}
+			classicBrackets += a.length;
+			batchedBrackets += b.length;
+			matched += common;
+			if (common == a.length && common == b.length) {
+				identical += 1;
+			}
+		}
+		double precision = batchedBrackets == 0 ? 1 : matched / (double) batchedBrackets;
+		double recall = classicBrackets == 0 ? 1 : matched / (double) classicBrackets;
+		double f1 = precision + recall == 0 ? 0 : 2 * precision * recall / (precision + recall);
+
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\n");
+		sb.append("  \"corpus\": \"").append(this.corpusFile.replace("\\", "\\\\").replace("\"", "\\\"")).append("\",\n");
+		sb.append("  \"threshold\": ").append(this.threshold).append(",\n");
+		sb.append("  \"sentences\": ").append(classic.brackets.length).append(",\n");
+		appendRun(sb, "classic", classic, classicBrackets);
+		appendRun(sb, "batched", batched, batchedBrackets);
+		sb.append("  \"matchedBrackets\": ").append(matched).append(",\n");
+		sb.append("  \"bracketPrecision\": ").append(format(precision)).append(",\n");
+		sb.append("  \"bracketRecall\": ").append(format(recall)).append(",\n");
+		sb.append("  \"bracketF1\": ").append(format(f1)).append(",\n");
+		sb.append("  \"identicalTrees\": ").append(identical).append("\n");
+		sb.append("}\n");
+
+		PrintWriter writer = new PrintWriter(filename, "UTF-8");
+		try {
+			writer.print(sb);
+		} finally {
+			writer.close();
+		}
+	}
+
+	private static void appendRun(StringBuilder sb, String name, Result run, long brackets) {
+		sb.append("  \"").append(name).append("\": {\"iterations\": ").append(run.iterations);
+		sb.append(", \"safeLearningMs\": ").append(String.format(Locale.ROOT, "%.3f", run.safeNanos / 1e6));
+		sb.append(", \"totalMs\": ").append(String.format(Locale.ROOT, "%.3f", run.totalNanos / 1e6));
+		sb.append(", \"brackets\": ").append(brackets).append("},\n");
+	}
+
+	private static String format(double value) {
+		return String.format(Locale.ROOT, "%.4f", value);
+	}
+
+}
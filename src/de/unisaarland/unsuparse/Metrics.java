@@ -0,0 +1,336 @@
+package de.unisaarland.unsuparse;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * Timers and counters of a parser run: the duration and heap use of every phase, and for every
+ * safe learning iteration the number of rescanned sentences, proposals, candidate groups, commits,
+ * candidates rejected by minFreq and separation value evaluations.
+ *
+ * Recording is cheap enough to be always on: phases and iterations are recorded once each, and
+ * separation value evaluations are counted per scored sentence in a counter of the calling thread.
+ * If Java Flight Recorder is running, every phase and iteration is also committed as a
+ * JFR event (see {@link JfrEvents}). At the end of a run the metrics can be written as JSON, with the
+ * peak heap use and the peak resident set size of the process so far.
+ */
+public class Metrics {
+	private static final boolean JFR = jfrAvailable();
+
+	private ArrayList<Phase> phases;
+	private ArrayList<long[]> iterations;
+	private Counter sepCalls;
+	private long tokens;
+	private long sentences;
+	private long uniqueSentences; // sentences with distinct label sequences, which are parsed
+	private BigramSketch sketch; // approximate bigram counts of the corpus, or null
+
+	/**
+	 * A running or finished phase of a run.
+	 */
+	public class Phase {
+		private String name;
+		private long start;
+		private long nanos;
+		private long heapUsed; // bytes used on the heap at the end of the phase
+		private Object event; // JFR event, if available
+
+		private Phase(String name) {
+			this.name = name;
+			this.start = System.nanoTime();
+			this.nanos = -1;
+			if (JFR && JfrEvents.isRecording()) {
+				this.event = JfrEvents.beginPhase();
+			}
+		}
+
+		/**
+		 * Ends the phase.
+		 */
+		public void end() {
+			this.nanos = System.nanoTime() - this.start;
+			Runtime runtime = Runtime.getRuntime();
+			this.heapUsed = runtime.totalMemory() - runtime.freeMemory();
+			if (this.event != null) {
+				JfrEvents.endPhase(this.event, this.name, this.heapUsed);
+			}
+		}
+	}
+
+	/**
+	 * A counter that every thread increments without synchronization in a cell of its own.
+	 */
+	private static class Counter {
+		private final ArrayList<long[]> cells = new ArrayList<long[]>();
+		private final ThreadLocal<long[]> cell = new ThreadLocal<long[]>() {
+			protected long[] initialValue() {
+				long[] c = new long[1];
+				synchronized (cells) {
+					cells.add(c);
+				}
+				return c;
+			}
+		};
+
+		private void add(long n) {
+			this.cell.get()[0] += n;
+		}
+
+		/**
+		 * @return the sum of all cells, exact once the threads adding to it are joined
+		 */
+		private long sum() {
+			long sum = 0;
+			synchronized (this.cells) {
+				for (long[] c : this.cells) {
+					sum += c[0];
+				}
+			}
+			return sum;
+		}
+	}
+
+	public Metrics() {
+		this.phases = new ArrayList<Phase>();
+		this.iterations = new ArrayList<long[]>();
+		this.sepCalls = new Counter();
+	}
+
+	private static boolean jfrAvailable() {
+		try {
+			Class.forName("jdk.jfr.Event");
+			return true;
+		} catch (ClassNotFoundException e) {
+			return false;
+		} catch (LinkageError e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Starts a phase, which is recorded when it ends.
+	 *
+	 * @param name
+	 * @return the phase
+	 */
+	public synchronized Phase phase(String name) {
+		Phase p = new Phase(name);
+		this.phases.add(p);
+		return p;
+	}
+
+	/**
+	 * Sets the size of the corpus, for the heap use per token.
+	 *
+	 * @param tokens
+	 * @param sentences
+	 */
+	public void setCorpusSize(long tokens, long sentences) {
+		this.tokens = tokens;
+		this.sentences = sentences;
+	}
+
+	/**
+	 * Sets the number of sentences with distinct label sequences, only these are parsed.
+	 *
+	 * @param uniqueSentences
+	 */
+	public void setUniqueSentences(long uniqueSentences) {
+		this.uniqueSentences = uniqueSentences;
+	}
+
+	/**
+	 * Sets the sketch the bigrams of the corpus are counted in, for its error bounds.
+	 *
+	 * @param sketch
+	 */
+	public synchronized void setBigramSketch(BigramSketch sketch) {
+		this.sketch = sketch;
+	}
+
+	/**
+	 * Counts separation value evaluations, can be called by any thread.
+	 *
+	 * @param n
+	 */
+	public void addSepCalls(long n) {
+		this.sepCalls.add(n);
+	}
+
+	/**
+	 * @return separation value evaluations so far
+	 */
+	public long getSepCalls() {
+		return this.sepCalls.sum();
+	}
+
+	/**
+	 * @return number of safe learning iterations recorded
+	 */
+	public synchronized int getIterationCount() {
+		return this.iterations.size();
+	}
+
+	/**
+	 * @param name
+	 * @return total duration of the ended phases with the name in nanoseconds
+	 */
+	public synchronized long getPhaseNanos(String name) {
+		long nanos = 0;
+		for (Phase p : this.phases) {
+			if (p.name.equals(name) && p.nanos >= 0) {
+				nanos += p.nanos;
+			}
+		}
+		return nanos;
+	}
+
+	/**
+	 * Returns the peak heap use so far, the sum of the peak use of every heap memory pool. The pools
+	 * may have peaked at different times, so this is an upper bound.
+	 *
+	 * @return peak heap use in bytes
+	 */
+	public static long getPeakHeapBytes() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+
+	/**
+	 * Returns the peak resident set size of the process so far (VmHWM of /proc/self/status), which
+	 * includes the heap, the code and the mapped pages of files.
+	 *
+	 * @return peak resident set size in bytes, -1 if it is not known (on systems without /proc)
+	 */
+	public static long getPeakRssBytes() {
+		try {
+			BufferedReader br = new BufferedReader(new FileReader("/proc/self/status"));
+			try {
+				String line;
+				while ((line = br.readLine()) != null) {
+					if (line.startsWith("VmHWM:")) {
+						// e.g. "VmHWM:	  123456 kB"
+						return 1024 * Long.parseLong(line.substring(6).trim().split("\\s+")[0]);
+					}
+				}
+			} finally {
+				br.close();
+			}
+		} catch (IOException e) {
+			// not available
+		} catch (NumberFormatException e) {
+			// unknown format
+		}
+		return -1;
+	}
+
+	/**
+	 * Records a safe learning iteration.
+	 *
+	 * @param iteration
+	 * @param nanos duration
+	 * @param rescanned sentences that looked for a new merge
+	 * @param proposed merges proposed below the threshold
+	 * @param candidates candidate label sequences proposed in this iteration
+	 * @param committed merges committed
+	 * @param rejected candidate label sequences below minFreq
+	 * @param sepCalls separation value evaluations
+	 */
+	public synchronized void iteration(long iteration, long nanos, long rescanned, long proposed, long candidates,
+			long committed, long rejected, long sepCalls) {
+		this.iterations.add(new long[] {iteration, nanos, rescanned, proposed, candidates, committed, rejected, sepCalls});
+		if (JFR && JfrEvents.isRecording()) {
+			JfrEvents.iteration(iteration, nanos, rescanned, proposed, candidates, committed, rejected, sepCalls);
+		}
+	}
+
+	/**
+	 * Writes the metrics as JSON.
+	 *
+	 * @param filename
+	 * @throws IOException
+	 */
+	public synchronized void write(String filename) throws IOException {
+		PrintWriter writer = new PrintWriter(filename, "UTF-8");
+		try {
+			writer.print(this.toJson());
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * @return the metrics as a JSON object
+	 */
+	public synchronized String toJson() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\n");
+		sb.append("  \"tokens\": ").append(this.tokens).append(",\n");
+		sb.append("  \"sentences\": ").append(this.sentences).append(",\n");
+		sb.append("  \"uniqueSentences\": ").append(this.uniqueSentences).append(",\n");
+		sb.append("  \"jfr\": ").append(JFR).append(",\n");
+		sb.append("  \"peakHeapBytes\": ").append(getPeakHeapBytes()).append(",\n");
+		sb.append("  \"peakRssBytes\": ").append(getPeakRssBytes()).append(",\n");
+		if (this.sketch != null) {
+			sb.append("  \"bigramSketch\": ").append(this.sketch.toJson()).append(",\n");
+		}
+		sb.append("  \"phases\": [");
+		String sep = "\n";
+		for (Phase p : this.phases) {
+			sb.append(sep).append("    {\"name\": \"").append(p.name).append("\"");
+			sb.append(", \"ms\": ").append(millis(p.nanos));
+			sb.append(", \"heapUsedBytes\": ").append(p.heapUsed);
+			if (this.tokens > 0) {
+				sb.append(", \"heapBytesPerToken\": ").append(String.format(Locale.ROOT, "%.1f", p.heapUsed / (double) this.tokens));
+			}
+			sb.append("}");
+			sep = ",\n";
+		}
+		sb.append("\n  ],\n");
+		long[] totals = new long[8];
+		sb.append("  \"iterations\": [");
+		sep = "\n";
+		for (long[] it : this.iterations) {
+			sb.append(sep).append("    {\"iteration\": ").append(it[0]);
+			sb.append(", \"ms\": ").append(millis(it[1]));
+			sb.append(", \"rescanned\": ").append(it[2]);
+			sb.append(", \"proposed\": ").append(it[3]);
+			sb.append(", \"candidates\": ").append(it[4]);
+			sb.append(", \"committed\": ").append(it[5]);
+			sb.append(", \"rejected\": ").append(it[6]);
+			sb.append(", \"sepCalls\": ").append(it[7]).append("}");
+			for (int k = 1; k < it.length; k++) {
+				totals[k] += it[k];
+			}
+			sep = ",\n";
+		}
+		sb.append("\n  ],\n");
+		sb.append("  \"safeLearning\": {\"iterations\": ").append(this.iterations.size());
+		sb.append(", \"ms\": ").append(millis(totals[1]));
+		sb.append(", \"proposed\": ").append(totals[3]);
+		sb.append(", \"candidates\": ").append(totals[4]);
+		sb.append(", \"committed\": ").append(totals[5]);
+		sb.append(", \"rejected\": ").append(totals[6]);
+		sb.append(", \"sepCalls\": ").append(totals[7]).append("},\n");
+		sb.append("  \"sepCalls\": ").append(this.getSepCalls()).append("\n");
+		sb.append("}\n");
+		return sb.toString();
+	}
+
+	private static String millis(long nanos) {
+		return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+	}
+
+}
@@ -0,0 +1,332 @@
+package de.unisaarland.unsuparse;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * A learned model in a compact binary file: the label vocabulary with its name index,
+ * the label counters and preference values, the bigram table and the precomputed
+ * significance values, the corpus size and sentence count and the threshold used.
+ *
+ * All arrays are stored in the layout they have in memory, so reading a model means
+ * memory-mapping the file and bulk-copying primitive arrays. Nothing is recomputed or
+ * rehashed, and the label names stay in the mapped file until they are needed.
+ *
+ * Layout (little-endian, every section starts at a multiple of 8):
+ * header: magic, version, usePos, threshold, size, sentenceCount, labelCount,
+ * nameSlotCount, bigramCapacity, bigramSize, nameBytes, sketchWidth, heavyLimit;
+ * int nameOffsets[labelCount+1], byte names[nameBytes], int nameSlots[nameSlotCount],
+ * int freq, startFreq, endFreq, f, l [labelCount], double pref, sigBegin, sigEnd [labelCount],
+ * long bigramKeys[bigramCapacity], int bigramCounts[bigramCapacity], double sigBigrams[bigramCapacity]
+ * and, in version 2 for models whose bigrams are counted in a {@link BigramSketch}:
+ * long sketchTotal, int sketchCounters[4*sketchWidth]. Models without a sketch are written as version 1.
+ */
+public class ModelFile {
+	private static final long MAGIC = 0x4c444d5055534e55L; // "UNSUPMDL"
+	private static final int VERSION = 1;
+	private static final int SKETCH_VERSION = 2;
+	private static final int HEADER_SIZE = 64;
+	private static final int MAX_MAP_SIZE = 1 << 30; // arrays are copied in pieces of at most 1GB
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private boolean usePos;
+	private double threshold;
+	private Statistics stats;
+
+	/**
+	 * Reads a model file.
+	 *
+	 * @param filename
+	 * @throws IOException if the file is not a model file of a supported version
+	 */
+	public ModelFile(String filename) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(filename, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			if (header.getLong() != MAGIC) {
+				throw new IOException(filename + " is not a model file");
+			}
+			int version = header.getInt();
+			if (version != VERSION && version != SKETCH_VERSION) {
+				throw new IOException(filename + " has model version " + version + ", only versions " + VERSION
+						+ " and " + SKETCH_VERSION + " are supported");
+			}
+			this.usePos = header.getInt() == 1;
+			this.threshold = header.getDouble();
+			int size = header.getInt();
+			int sentenceCount = header.getInt();
+			int labelCount = header.getInt();
+			int nameSlotCount = header.getInt();
+			int bigramCapacity = header.getInt();
+			int bigramSize = header.getInt();
+			int nameBytes = (int) header.getLong();
+			int sketchWidth = header.getInt();
+			int heavyLimit = header.getInt();
+
+			long pos = HEADER_SIZE;
+			int[] nameOffsets = readInts(channel, pos, labelCount+1);
+			pos = align(pos + 4L*(labelCount+1));
+			MappedByteBuffer names = channel.map(FileChannel.MapMode.READ_ONLY, pos, nameBytes);
+			pos = align(pos + nameBytes);
+			int[] nameSlots = readInts(channel, pos, nameSlotCount);
+			pos = align(pos + 4L*nameSlotCount);
+			int[][] counts = new int[5][];
+			for (int i = 0; i < counts.length; i++) {
+				counts[i] = readInts(channel, pos, labelCount);
+				pos = align(pos + 4L*labelCount);
+			}
+			double[][] values = new double[3][];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = readDoubles(channel, pos, labelCount);
+				pos += 8L*labelCount;
+			}
+			long[] bigramKeys = readLongs(channel, pos, bigramCapacity);
+			pos += 8L*bigramCapacity;
+			int[] bigramCounts = readInts(channel, pos, bigramCapacity);
+			pos = align(pos + 4L*bigramCapacity);
+			double[] sigBigrams = readDoubles(channel, pos, bigramCapacity);
+			pos += 8L*bigramCapacity;
+
+			BigramTable bigrams = new BigramTable(bigramKeys, bigramCounts, bigramSize);
+			Vocabulary vocab = new Vocabulary(labelCount, names, nameOffsets, nameSlots,
+					counts[0], counts[1], counts[2], counts[3], counts[4], values[0], bigrams);
+			if (version == SKETCH_VERSION) {
+				long sketchTotal = readLongs(channel, pos, 1)[0];
+				int[] sketchCounters = readInts(channel, pos + 8, BigramSketch.DEPTH * sketchWidth);
+				vocab.setSketch(new BigramSketch(sketchWidth, heavyLimit, sketchTotal, sketchCounters));
+			}
+			this.stats = new Statistics(vocab, size, sentenceCount, values[1], values[2], sigBigrams);
+		} finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * Writes a model file.
+	 *
+	 * @param filename
+	 * @param stats statistics of the learned model
+	 * @param usePos
+	 * @param threshold the threshold used during safe learning
+	 * @throws IOException
+	 */
+	public static void write(String filename, Statistics stats, boolean usePos, double threshold) throws IOException {
+		Vocabulary vocab = stats.getVocabulary();
+		BigramTable bigrams = vocab.getBigrams();
+		BigramSketch sketch = vocab.getSketch();
+		int labelCount = vocab.size();
+		byte[][] names = new byte[labelCount][];
+		long nameBytes = 0;
+		for (int id = 0; id < labelCount; id++) {
+			names[id] = vocab.getName(id).getBytes(UTF8);
+			nameBytes += names[id].length;
+		}
+		if (nameBytes > Integer.MAX_VALUE) {
+			throw new IOException("label names are too long for a model file");
+		}
+
+		RandomAccessFile file = new RandomAccessFile(filename, "rw");
+		try {
+			file.setLength(0);
+			Output out = new Output(file.getChannel());
+			out.putLong(MAGIC);
+			out.putInt(sketch == null ? VERSION : SKETCH_VERSION);
+			out.putInt(usePos ? 1 : 0);
+			out.putDouble(threshold);
+			out.putInt(stats.getSize());
+			out.putInt(stats.getSentenceCount());
+			out.putInt(labelCount);
+			out.putInt(vocab.nameSlots().length);
+			out.putInt(bigrams.capacity());
+			out.putInt(bigrams.size());
+			out.putLong(nameBytes);
+			out.putInt(sketch == null ? 0 : sketch.width());
+			out.putInt(sketch == null ? 0 : sketch.heavyLimit());
+			out.align(HEADER_SIZE);
+
+			int offset = 0;
+			for (int id = 0; id < labelCount; id++) {
+				out.putInt(offset);
+				offset += names[id].length;
+			}
+			out.putInt(offset);
+			out.align(8);
+			for (int id = 0; id < labelCount; id++) {
+				out.put(names[id]);
+			}
+			out.align(8);
+			out.putInts(vocab.nameSlots(), vocab.nameSlots().length);
+			out.align(8);
+			int[][] counts = {vocab.freqCounts(), vocab.startFreqCounts(), vocab.endFreqCounts(), vocab.fCounts(), vocab.lCounts()};
+			for (int[] c : counts) {
+				out.putInts(c, labelCount);
+				out.align(8);
+			}
+			out.putDoubles(vocab.prefValues(), labelCount);
+			out.putDoubles(stats.sigBeginValues(), labelCount);
+			out.putDoubles(stats.sigEndValues(), labelCount);
+			out.putLongs(bigrams.keys(), bigrams.capacity());
+			out.putInts(bigrams.counts(), bigrams.capacity());
+			out.align(8);
+			out.putDoubles(stats.sigBigramValues(), bigrams.capacity());
+			if (sketch != null) {
+				out.putLong(sketch.total());
+				out.putInts(sketch.counters(), sketch.counters().length);
+			}
+			out.flush();
+		} finally {
+			file.close();
+		}
+	}
+
+	public Vocabulary getVocabulary() {
+		return this.stats.getVocabulary();
+	}
+
+	public Statistics getStatistics() {
+		return this.stats;
+	}
+
+	/**
+	 * @return true if the model was learned on POS tags
+	 */
+	public boolean usesPos() {
+		return this.usePos;
+	}
+
+	/**
+	 * @return the threshold used during safe learning
+	 */
+	public double getThreshold() {
+		return this.threshold;
+	}
+
+	private static long align(long pos) {
+		return (pos + 7) & ~7L;
+	}
+
+	private static ByteBuffer map(FileChannel channel, long pos, long length) throws IOException {
+		return channel.map(FileChannel.MapMode.READ_ONLY, pos, length).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private static int[] readInts(FileChannel channel, long pos, int n) throws IOException {
+		int[] res = new int[n];
+		int piece = MAX_MAP_SIZE / 4;
+		for (int i = 0; i < n; i += piece) {
+			int len = Math.min(piece, n - i);
+			map(channel, pos + 4L*i, 4L*len).asIntBuffer().get(res, i, len);
+		}
+		return res;
+	}
+
+	private static long[] readLongs(FileChannel channel, long pos, int n) throws IOException {
+		long[] res = new long[n];
+		int piece = MAX_MAP_SIZE / 8;
+		for (int i = 0; i < n; i += piece) {
+			int len = Math.min(piece, n - i);
+			map(channel, pos + 8L*i, 8L*len).asLongBuffer().get(res, i, len);
+		}
+		return res;
+	}
+
+	private static double[] readDoubles(FileChannel channel, long pos, int n) throws IOException {
+		double[] res = new double[n];
+		int piece = MAX_MAP_SIZE / 8;
+		for (int i = 0; i < n; i += piece) {
+			int len = Math.min(piece, n - i);
+			map(channel, pos + 8L*i, 8L*len).asDoubleBuffer().get(res, i, len);
+		}
+		return res;
+	}
+
+	/**
+	 * Buffered little-endian output to a file channel.
+	 */
+	private static class Output {
+		private FileChannel channel;
+		private ByteBuffer buffer;
+		private long pos; // number of bytes written so far
+
+		private Output(FileChannel channel) {
+			this.channel = channel;
+			this.buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+			this.pos = 0;
+		}
+
+		private void ensure(int bytes) throws IOException {
+			if (this.buffer.remaining() < bytes) {
+				this.flush();
+			}
+		}
+
+		private void flush() throws IOException {
+			this.buffer.flip();
+			while (this.buffer.hasRemaining()) {
+				this.channel.write(this.buffer);
+			}
+			this.buffer.clear();
+		}
+
+		private void putInt(int v) throws IOException {
+			this.ensure(4);
+			this.buffer.putInt(v);
+			this.pos += 4;
+		}
+
+		private void putLong(long v) throws IOException {
+			this.ensure(8);
+			this.buffer.putLong(v);
+			this.pos += 8;
+		}
+
+		private void putDouble(double v) throws IOException {
+			this.ensure(8);
+			this.buffer.putDouble(v);
+			this.pos += 8;
+		}
+
+		private void put(byte[] bytes) throws IOException {
+			for (byte b : bytes) {
+				this.ensure(1);
+				this.buffer.put(b);
+			}
+			this.pos += bytes.length;
+		}
+
+		private void putInts(int[] values, int n) throws IOException {
+			for (int i = 0; i < n; i++) {
+				this.putInt(values[i]);
+			}
+		}
+
+		private void putLongs(long[] values, int n) throws IOException {
+			for (int i = 0; i < n; i++) {
+				this.putLong(values[i]);
+			}
+		}
+
+		private void putDoubles(double[] values, int n) throws IOException {
+			for (int i = 0; i < n; i++) {
+				this.putDouble(values[i]);
+			}
+		}
+
+		/**
+		 * Pads the output with zeros to a multiple of the given number of bytes.
+		 */
+		private void align(int multiple) throws IOException {
+			while (this.pos % multiple != 0) {
+				this.ensure(1);
+				this.buffer.put((byte) 0);
+				this.pos += 1;
+			}
+		}
+	}
+
+}
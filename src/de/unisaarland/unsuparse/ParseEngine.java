@@ -0,0 +1,50 @@
+package de.unisaarland.unsuparse;
+
+import java.util.List;
+
+/**
+ * A long-lived engine that parses single sentences with a learned model.
+ * Parsing only reads the model, so the engine can be used by many threads at once.
+ */
+public class ParseEngine {
+	private Parser parser;
+	private SentenceReader reader; // only used to turn tokens into sentences
+	private double threshold;
+
+	/**
+	 * @param parser a parser that was created from a model or has finished safe learning
+	 * @param threshold the threshold for the safe merges
+	 */
+	public ParseEngine(Parser parser, double threshold) {
+		this.parser = parser;
+		this.reader = new SentenceReader(null, parser.usesPos(), parser.getVocabulary());
+		this.threshold = threshold;
+	}
+
+	/**
+	 * Parses a sentence. Every token is given as a line of the input format, i.e. the word
+	 * followed by its POS tag if the model was learned on POS tags.
+	 *
+	 * @param tokens
+	 * @return parse tree, or null if the sentence is empty after removing a final punctuation mark
+	 */
+	public ConstituentTree parse(List<String> tokens) {
+		Sentence s = this.reader.sentence(tokens);
+		if (s == null) {
+			return null;
+		}
+		return this.parser.parse(s, this.threshold);
+	}
+
+	public double getThreshold() {
+		return this.threshold;
+	}
+
+	/**
+	 * @return the workers of the parser
+	 */
+	public Workers getWorkers() {
+		return this.parser.getWorkers();
+	}
+
+}
@@ -0,0 +1,317 @@
+package de.unisaarland.unsuparse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A local HTTP front end for a ParseEngine.
+ *
+ * POST /parse takes sentences in the input format (one token per line, sentences separated
+ * by a blank line) and answers with one parse tree per line, an empty line for a sentence
+ * that is empty without its final punctuation mark. The query parameter deadline sets the
+ * time in milliseconds after which the request is answered with 504 instead.
+ * GET /stats reports the number of requests and their p50/p99/max latency in microseconds.
+ *
+ * The sentences of a request are handed to the parse threads right away, in slices of at most
+ * SLICE_TOKENS tokens. A slice that is done puts the next slice of its request at the end of the
+ * queue, so concurrent requests are parsed in turns and a long request does not hold up the short
+ * ones behind it. Requests whose deadline has passed are not parsed any further.
+ */
+public class ParseServer {
+	private static final int SLICE_TOKENS = 1000; // tokens of a request parsed before other requests get their turn
+	private static final String UTF8 = "UTF-8";
+
+	private ParseEngine engine;
+	private long defaultDeadline; // in milliseconds
+	private HttpServer server;
+	private ExecutorService handlers;
+	private ExecutorService parsers; // parse threads, taking the slices of the requests in order
+	private LatencyHistogram latencies;
+	private AtomicLong expired;
+
+	/**
+	 * A queued parse request.
+	 */
+	private static class Request {
+		private List<List<String>> sentences;
+		private long deadline; // System.nanoTime() after which the request is dropped
+		private String[] trees;
+		private String error; // set if a line could not be read
+		private volatile boolean failed; // set if parsing failed unexpectedly
+		private volatile boolean cancelled;
+		private AtomicInteger next = new AtomicInteger(); // next sentence to parse
+		private AtomicInteger pending; // sentences not parsed yet
+		private CountDownLatch done = new CountDownLatch(1);
+	}
+
+	/**
+	 * @param engine
+	 * @param port port to listen on (on the loopback interface)
+	 * @param defaultDeadline deadline in milliseconds for requests not specifying one
+	 * @throws IOException if the port cannot be bound
+	 */
+	public ParseServer(ParseEngine engine, int port, long defaultDeadline) throws IOException {
+		this.engine = engine;
+		this.defaultDeadline = defaultDeadline;
+		this.latencies = new LatencyHistogram();
+		this.expired = new AtomicLong();
+		this.server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+		this.server.createContext("/parse", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				handleParse(exchange);
+			}
+		});
+		this.server.createContext("/stats", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				handleStats(exchange);
+			}
+		});
+		this.handlers = Executors.newCachedThreadPool();
+		this.server.setExecutor(this.handlers);
+		this.parsers = Executors.newFixedThreadPool(engine.getWorkers().getThreads());
+	}
+
+	/**
+	 * Starts answering requests.
+	 */
+	public void start() {
+		this.server.start();
+	}
+
+	/**
+	 * Stops the server, requests still queued are not answered.
+	 */
+	public void stop() {
+		this.server.stop(0);
+		this.parsers.shutdownNow();
+		this.handlers.shutdown();
+		this.engine.getWorkers().shutdown();
+	}
+
+	/**
+	 * @return port the server is listening on
+	 */
+	public int getPort() {
+		return this.server.getAddress().getPort();
+	}
+
+	public LatencyHistogram getLatencies() {
+		return this.latencies;
+	}
+
+	/**
+	 * Hands the sentences of a request to the parse threads, one slice per thread at most.
+	 *
+	 * @param r
+	 */
+	private void submit(Request r) {
+		r.trees = new String[r.sentences.size()];
+		r.pending = new AtomicInteger(r.sentences.size());
+		if (r.sentences.isEmpty()) {
+			r.done.countDown();
+			return;
+		}
+		int slices = Math.min(r.sentences.size(), this.engine.getWorkers().getThreads());
+		for (int k = 0; k < slices; k++) {
+			this.submitSlice(r);
+		}
+	}
+
+	private void submitSlice(final Request r) {
+		try {
+			this.parsers.execute(new Runnable() {
+				public void run() {
+					parseSlice(r);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// the server is stopped
+			r.cancelled = true;
+			r.done.countDown();
+		}
+	}
+
+	/**
+	 * Parses the next sentences of a request up to SLICE_TOKENS tokens, then queues the rest.
+	 *
+	 * @param r
+	 */
+	private void parseSlice(Request r) {
+		int tokens = 0;
+		try {
+			while (tokens < SLICE_TOKENS) {
+				if (r.cancelled || System.nanoTime() - r.deadline > 0) {
+					return;
+				}
+				int i = r.next.getAndIncrement();
+				if (i >= r.trees.length) {
+					return;
+				}
+				ConstituentTree tree = this.engine.parse(r.sentences.get(i));
+				r.trees[i] = tree == null ? "" : tree.toString();
+				tokens += r.sentences.get(i).size();
+				if (r.pending.decrementAndGet() == 0) {
+					r.done.countDown();
+					return;
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			r.error = e.getMessage();
+			r.cancelled = true;
+			r.done.countDown();
+			return;
+		} catch (RuntimeException e) {
+			System.out.println("WARNING: parsing a request failed: " + e);
+			r.failed = true;
+			r.cancelled = true;
+			r.done.countDown();
+			return;
+		}
+		if (r.next.get() < r.trees.length) {
+			this.submitSlice(r);
+		}
+	}
+
+	private void handleParse(HttpExchange exchange) throws IOException {
+		long start = System.nanoTime();
+		try {
+			if (!exchange.getRequestMethod().equals("POST")) {
+				respond(exchange, 405, "only POST is supported\n");
+				return;
+			}
+			long deadline = this.defaultDeadline;
+			String param = queryParam(exchange, "deadline");
+			if (param != null) {
+				try {
+					deadline = Long.parseLong(param);
+				} catch (NumberFormatException e) {
+					respond(exchange, 400, "invalid deadline: " + param + "\n");
+					return;
+				}
+			}
+			Request r = new Request();
+			r.deadline = start + TimeUnit.MILLISECONDS.toNanos(deadline);
+			r.sentences = sentences(new String(readAll(exchange.getRequestBody()), UTF8));
+			this.submit(r);
+			boolean done;
+			try {
+				done = r.done.await(r.deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				done = false;
+			}
+			if (r.error != null) {
+				respond(exchange, 400, r.error + "\n");
+				return;
+			}
+			if (r.failed) {
+				respond(exchange, 500, "parsing failed\n");
+				return;
+			}
+			if (!done || r.pending.get() > 0) {
+				r.cancelled = true;
+				this.expired.incrementAndGet();
+				respond(exchange, 504, "deadline of " + deadline + " ms exceeded\n");
+				return;
+			}
+			StringBuilder sb = new StringBuilder();
+			for (String tree : r.trees) {
+				sb.append(tree).append('\n');
+			}
+			respond(exchange, 200, sb.toString());
+			this.latencies.record(System.nanoTime() - start);
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private void handleStats(HttpExchange exchange) throws IOException {
+		try {
+			StringBuilder sb = new StringBuilder();
+			sb.append("requests ").append(this.latencies.count()).append('\n');
+			sb.append("expired ").append(this.expired.get()).append('\n');
+			sb.append("p50_us ").append(this.latencies.percentile(0.5) / 1000).append('\n');
+			sb.append("p99_us ").append(this.latencies.percentile(0.99) / 1000).append('\n');
+			sb.append("max_us ").append(this.latencies.percentile(1.0) / 1000).append('\n');
+			respond(exchange, 200, sb.toString());
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Splits a request body into sentences, each a list of token lines.
+	 *
+	 * @param body
+	 * @return sentences
+	 */
+	private static List<List<String>> sentences(String body) {
+		List<List<String>> sentences = new ArrayList<List<String>>();
+		List<String> tokens = new ArrayList<String>();
+		for (String line : body.split("\r?\n", -1)) {
+			if (line.trim().equals("")) {
+				if (!tokens.isEmpty()) {
+					sentences.add(tokens);
+					tokens = new ArrayList<String>();
+				}
+			} else {
+				tokens.add(line);
+			}
+		}
+		if (!tokens.isEmpty()) {
+			sentences.add(tokens);
+		}
+		return sentences;
+	}
+
+	private static String queryParam(HttpExchange exchange, String name) throws IOException {
+		String query = exchange.getRequestURI().getRawQuery();
+		if (query == null) {
+			return null;
+		}
+		for (String pair : query.split("&")) {
+			int eq = pair.indexOf('=');
+			if (eq > 0 && pair.substring(0, eq).equals(name)) {
+				return URLDecoder.decode(pair.substring(eq+1), UTF8);
+			}
+		}
+		return null;
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int n;
+		while ((n = in.read(buffer)) > 0) {
+			out.write(buffer, 0, n);
+		}
+		return out.toByteArray();
+	}
+
+	private static void respond(HttpExchange exchange, int status, String text) throws IOException {
+		byte[] bytes = text.getBytes(UTF8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(bytes);
+		out.close();
+	}
+
+}
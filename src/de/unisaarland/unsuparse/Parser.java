@@ -2,7 +2,17 @@ package de.unisaarland.unsuparse;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Parser class that reads and parses a specified corpus file.
@@ -12,8 +22,21 @@ import java.util.HashMap;
  */
 public class Parser {
 	
-	private Corpus corpus;
+	static final int WINDOW = 4; // number of preceding constituents considered by sepDist
+	private static final int STREAM_BATCH_SIZE = 256; // sentences per batch when parsing a stream
+	private static final int STORED_CACHE_TOKENS = 1 << 16; // tokens of finished sentences kept for their copies in a store
+	
+	private Corpus corpus; // null if the parser was created from a model file
+	private Vocabulary vocab;
+	private Statistics stats;
 	private boolean usePos;
+	private Workers workers;
+	private Metrics metrics;
+	private boolean batchMerges; // safe learning merges all non-overlapping boundaries below the threshold at once
+	private String checkpointFile; // null if no checkpoints are written
+	private int checkpointIterations; // iterations between checkpoints, 0 for no limit
+	private long checkpointMillis; // time between checkpoints, 0 for no limit
+	private int resumedIteration; // iterations done before learning was resumed from a checkpoint
 	
 	/**
 	 * The Parser has to be initialised with a corpus file and a boolean  specifying
@@ -24,65 +47,276 @@ public class Parser {
 	 * @throws IOException
 	 */
 	public Parser(String filename, boolean usePos) throws IOException {
-		this.corpus = new Corpus(filename, usePos);
-		this.usePos = usePos;
+		this(filename, 1, new CorpusOptions(filename, usePos));
 	}
 	
 	/**
-	 * Returns the significance of seeing a word or POS at the beginning of a sentence.
+	 * Creates a Parser that reads and parses the corpus with the given number of threads and the
+	 * settings of the options (see {@link CorpusOptions}). The results do not depend on the number of threads.
+	 * With a sentence store the trees are the same as without one, but the corpus can only be parsed with
+	 * {@link #parseCorpus(double, boolean, TreeWriter)}.
 	 * 
-	 * @param label
-	 * @return significance value
+	 * @param filename
+	 * @param threads number of threads, 0 for one per available processor
+	 * @param options
+	 * @throws IOException
+	 * @throws IllegalArgumentException if both folding and a store are given
 	 */
-	private double sigBegin(Label label) {
-		double a = label.getStartFreq(); // frequency of word/pos at start of sentence
-		double b = this.corpus.getSentenceCount();
-		double c = label.getFreq();
-		double d = corpus.getSize();
-		return sig(a,b,c,d);
+	public Parser(String filename, int threads, CorpusOptions options) throws IOException {
+		SentenceStore store = options.getStore();
+		this.workers = new Workers(threads);
+		this.metrics = new Metrics();
+		Metrics.Phase phase = this.metrics.phase("read corpus");
+		this.corpus = new Corpus(filename, this.workers, options);
+		phase.end();
+		this.metrics.setCorpusSize(this.corpus.getSize(), this.corpus.getSentenceCount());
+		this.vocab = this.corpus.getVocabulary();
+		if (store != null) {
+			System.out.println("sentences stored in a file of " + (store.getFileSize() >> 20) + " MB");
+		}
+		this.reportFolding(options.getFolding());
+		this.reportUnique();
+		this.reportSketch();
+		phase = this.metrics.phase("statistics");
+		this.stats = new Statistics(this.corpus);
+		phase.end();
+		this.usePos = options.usesPos();
 	}
 	
 	/**
-	 * Returns the significance of seeing a word or POS at the end of a sentence: 
+	 * Creates a Parser from a learned model. Such a parser can only parse streams.
 	 * 
-	 * @param label
-	 * @return significance value
+	 * @param model
+	 * @param threads number of threads, 0 for one per available processor
+	 */
+	public Parser(ModelFile model, int threads) {
+		this.workers = new Workers(threads);
+		this.metrics = new Metrics();
+		this.corpus = null;
+		this.vocab = model.getVocabulary();
+		this.stats = model.getStatistics();
+		this.usePos = model.usesPos();
+	}
+	
+	/**
+	 * Creates a Parser on a copy of the corpus of another parser, see {@link #fork(int)}.
 	 */
-	private double sigEnd(Label label) {
-		double a = label.getEndFreq(); // frequency of word/pos at end of sentence
-		double b = this.corpus.getSentenceCount();
-		double c = label.getFreq();
-		double d = corpus.getSize();
-		return sig(a,b,c,d);
+	private Parser(Parser base, int threads) {
+		this.workers = new Workers(threads);
+		this.metrics = new Metrics();
+		this.usePos = base.usePos;
+		this.vocab = base.vocab.fork();
+		this.corpus = base.corpus.fork(this.vocab);
+		this.stats = base.stats.share(this.vocab);
+		this.metrics.setCorpusSize(this.corpus.getSize(), this.corpus.getSentenceCount());
+		this.metrics.setUniqueSentences(this.corpus.getUniqueSentences().size());
+		BigramSketch sketch = this.vocab.getSketch();
+		if (sketch != null) {
+			this.metrics.setBigramSketch(sketch);
+		}
 	}
 	
 	/**
-	 * Returns the significance of seeing a bigram.
+	 * Returns a Parser for parsing the corpus of this one again, e.g. with another threshold.
+	 * It shares the label counts and significance values, which are only read, but has its own
+	 * copy of the sentences and preference counters, so both can parse at the same time.
+	 * The sentences are copied as they were read, without merges done by this parser, and the preference
+	 * counters as they are, so a parser should be forked before it learns.
 	 * 
-	 * @param label1
-	 * @param label2
-	 * @return significance value
+	 * @param threads number of threads of the new parser, 0 for one per available processor
+	 * @return the new parser
+	 */
+	public Parser fork(int threads) {
+		if (this.corpus == null) {
+			throw new IllegalStateException("a parser created from a model file has no corpus to parse");
+		}
+		return new Parser(this, threads);
+	}
+	
+	public Vocabulary getVocabulary() {
+		return this.vocab;
+	}
+	
+	/**
+	 * Creates a Parser that continues a learned model on new sentences. The label and bigram counts of the
+	 * new sentences are added to those of the model and the significance values are recomputed, which
+	 * costs time in the number of labels and bigrams but not in the size of the corpus the model was learned on.
+	 * Safe learning (see {@link #learn(double)}) then only runs on the new sentences, starting from the
+	 * preference counters of the model, in which the merges of the earlier sentences are kept.
+	 * A model saved afterwards holds the counts of both.
+	 * The format of the options has to select the labels the model was learned on, and new labels that are
+	 * too rare for the folding of the options are folded into shared classes (see {@link LabelFolding}).
+	 * 
+	 * @param model
+	 * @param filename file with the new sentences
+	 * @param threads number of threads, 0 for one per available processor
+	 * @param options
+	 * @throws IOException
+	 * @throws IllegalArgumentException if the options give a sentence store or a memory budget for bigrams
+	 */
+	public Parser(ModelFile model, String filename, int threads, CorpusOptions options) throws IOException {
+		this.workers = new Workers(threads);
+		this.metrics = new Metrics();
+		this.usePos = model.usesPos();
+		this.vocab = model.getVocabulary();
+		Statistics base = model.getStatistics();
+		Metrics.Phase phase = this.metrics.phase("read corpus");
+		this.corpus = new Corpus(filename, this.workers, options, this.vocab, base.getSize(), base.getSentenceCount());
+		phase.end();
+		this.reportFolding(options.getFolding());
+		this.reportUnique();
+		this.reportSketch();
+		this.metrics.setCorpusSize(this.corpus.getSize(), this.corpus.getSentenceCount());
+		phase = this.metrics.phase("statistics");
+		this.stats = new Statistics(this.corpus);
+		phase.end();
+	}
+	
+	/**
+	 * Prints how many labels were folded into classes, if labels are folded.
+	 */
+	private void reportFolding(LabelFolding folding) {
+		if (folding != null) {
+			System.out.println("labels: " + this.vocab.size() + ", " + this.corpus.getFoldedLabels() + " rare labels folded into classes");
+		}
+	}
+	
+	/**
+	 * Prints how many of the sentences have distinct label sequences and adds it to the metrics.
+	 */
+	private void reportUnique() {
+		int unique = this.corpus.getUniqueSentences().size();
+		System.out.println("sentences: " + this.corpus.getSentences().size() + ", " + unique + " distinct label sequences");
+		this.metrics.setUniqueSentences(unique);
+	}
+	
+	/**
+	 * Prints the error bounds of the bigram sketch, if there is one, and adds them to the metrics.
+	 */
+	private void reportSketch() {
+		BigramSketch sketch = this.vocab.getSketch();
+		if (sketch != null) {
+			System.out.println("approximate bigram counts: " + sketch.toJson());
+			this.metrics.setBigramSketch(sketch);
+		}
+	}
+	
+	/**
+	 * @return true if parsing is performed on POS tags
 	 */
-	private double sigBigram(Label label1, Label label2) {
-		double a = label1.getBigramFreq(label2.getText());
-		double b = label1.getFreq();
-		double c = label2.getFreq();
-		double d = corpus.getSize();
-		return sig(a,b,c,d);
+	public boolean usesPos() {
+		return this.usePos;
 	}
 	
 	/**
-	 * Returns the log-likelihood significance value given the four parameters.
+	 * @return timers and counters of the phases run so far
+	 */
+	public Metrics getMetrics() {
+		return this.metrics;
+	}
+	
+	/**
+	 * @return the workers used for parsing
+	 */
+	public Workers getWorkers() {
+		return this.workers;
+	}
+	
+	/**
+	 * Switches batched safe learning on or off (default is off). In batched mode every sentence proposes
+	 * all of its non-overlapping merges below the threshold in each iteration instead of only the best one.
+	 * Candidate frequencies are still counted over the whole corpus and the preference counters are still
+	 * updated once per iteration, so far fewer iterations are needed. Fewer sentences are rescanned for
+	 * changed preference values, which saves about a third of the separation values, but the first iteration
+	 * scores every sentence like the default mode and handles several times as many proposals, so safe
+	 * learning is only somewhat faster. The trees can differ from those of the default mode, see
+	 * {@link MergeComparison}.
+	 * 
+	 * @param batchMerges
+	 */
+	public void setBatchMerges(boolean batchMerges) {
+		this.batchMerges = batchMerges;
+	}
+	
+	/**
+	 * Makes safe learning write checkpoints, so that a long run can be resumed (see {@link #resume(String, double)})
+	 * after the program was stopped. A checkpoint is taken after an iteration once the given number of iterations
+	 * or the given time has passed since the last one. It is written on another thread while learning goes on.
+	 * 
+	 * @param filename the checkpoint file, which is replaced by every new checkpoint
+	 * @param iterations iterations between checkpoints, 0 for no limit
+	 * @param millis time between checkpoints in milliseconds, 0 for no limit
+	 */
+	public void setCheckpoint(String filename, int iterations, long millis) {
+		this.checkpointFile = filename;
+		this.checkpointIterations = iterations;
+		this.checkpointMillis = millis;
+	}
+	
+	/**
+	 * Restores the state of safe learning from a checkpoint, so that {@link #learn(double)} continues after
+	 * the last iteration of the checkpoint. The results are the same as those of an uninterrupted run.
+	 * Must be called before learning, with the threshold and safe learning mode used for the checkpoint.
+	 * 
+	 * @param filename
+	 * @param threshold
+	 * @throws IOException if the file is no checkpoint
+	 * @throws IllegalArgumentException if the checkpoint was taken on another corpus or with other settings
+	 */
+	public void resume(String filename, double threshold) throws IOException {
+		if (this.corpus == null) {
+			throw new IllegalStateException("the parser was created from a model and has no corpus to learn on");
+		}
+		Checkpoint checkpoint = Checkpoint.read(filename);
+		List<Sentence> sents = this.corpus.getUniqueSentences();
+		checkpoint.restore(sents, this.vocab, Checkpoint.hash(sents), this.usePos, this.batchMerges, threshold);
+		this.resumedIteration = checkpoint.getIteration();
+		System.out.println("resumed after iteration " + this.resumedIteration);
+	}
+	
+	/**
+	 * Writes the label statistics and preference counters to a model file.
 	 * 
-	 * @param a	bigram frequency
-	 * @param b	frequency of w1 occurring without w2
-	 * @param c	frequency of w2 occurring without w1
-	 * @param d	corpus size without w1 and w2
-	 * @return significance value
+	 * @param filename
+	 * @param threshold the threshold used during safe learning
+	 * @throws IOException
 	 */
-	private double sig(double a, double b, double c, double d) {
-		double ll_score = 2*(a*Math.log(a) + b*Math.log(b) + c*Math.log(c) + d*Math.log(d) - (a+b)*Math.log(a+b) - (a+c)*Math.log(a+c) - (b+d)*Math.log(b+d) - (c+d)*Math.log(c+d) + (a+b+c+d)*Math.log(a+b+c+d));
-		return ll_score;
+	public void saveModel(String filename, double threshold) throws IOException {
+		ModelFile.write(filename, this.stats, this.usePos, threshold);
+	}
+	
+	/**
+	 * Sets the number of threads used for parsing. The results do not depend on the number of threads.
+	 * 
+	 * @param threads number of threads, 0 for one per available processor
+	 */
+	public void setThreads(int threads) {
+		this.workers.shutdown();
+		this.workers = new Workers(threads);
+	}
+	
+	/**
+	 * Label ids of the constituents merged in one range of sentences during a safe learning iteration,
+	 * with the number of sentences each merge stands for. Their preference counters are updated after
+	 * all ranges are done.
+	 */
+	private static class Commits {
+		private int[] first = new int[16];
+		private int[] last = new int[16];
+		private int[] weight = new int[16];
+		private int count = 0;
+		
+		private void add(int first, int last, int weight) {
+			if (this.count == this.first.length) {
+				this.first = Arrays.copyOf(this.first, this.count*2);
+				this.last = Arrays.copyOf(this.last, this.count*2);
+				this.weight = Arrays.copyOf(this.weight, this.count*2);
+			}
+			this.first[this.count] = first;
+			this.last[this.count] = last;
+			this.weight[this.count] = weight;
+			this.count += 1;
+		}
 	}
 	
 	/**
@@ -93,9 +327,9 @@ public class Parser {
 	 * @return separation value
 	 */
 	private double sepWords(Label label1, Label label2) {
-		double a = sigEnd(label1);
-		double b = sigBegin(label2);
-		double c = sigBigram(label1,label2);
+		double a = this.stats.sigEnd(label1);
+		double b = this.stats.sigBegin(label2);
+		double c = this.stats.sigBigram(label1,label2);
 		Double sep = (a*b)/Math.pow(c, 2);
 		return sep;
 	}
@@ -108,9 +342,9 @@ public class Parser {
 	 * @return separation value
 	 */
 	private double sepPref(Label label1, Label label2) {
-		double a = sigEnd(label1);
-		double b = sigBegin(label2);
-		double c = sigBigram(label1,label2);
+		double a = this.stats.sigEnd(label1);
+		double b = this.stats.sigBegin(label2);
+		double c = this.stats.sigBigram(label1,label2);
 		Double sep = (label2.pref()*a*b)/(label1.pref()*Math.pow(c, 2));
 		return sep;
 	}
@@ -138,14 +372,13 @@ public class Parser {
 	 * @param i 
 	 * @return separation value
 	 */
-	private double sepDist(Sentence s, int i) {
-		ArrayList<ConstituentTree> cons = s.getConstituents();
-		double min = sep(cons.get(i).getLastLabel(),cons.get(i+1).getFirstLabel());
+	double sepDist(Sentence s, int i) {
+		double min = sep(s.lastLabel(i),s.firstLabel(i+1));
 		double sepVal;
 		
-		for (int j = Math.max(0, i-4); j <= i; j++) {
-			Label k = cons.get(i+1).getFirstLabel();
-			sepVal = sep(cons.get(j).getLastLabel(),k);
+		for (int j = Math.max(0, i-WINDOW); j <= i; j++) {
+			Label k = s.firstLabel(i+1);
+			sepVal = sep(s.lastLabel(j),k);
 			if (sepVal < min) {
 				min = sepVal;
 			} 
@@ -153,131 +386,923 @@ public class Parser {
 		return min;
 	}
 	
+	/**
+	 * Brings the boundary scores of a sentence up to date. Only boundaries marked stale by a merge
+	 * and, on POS tags, boundaries whose long-distance window contains a label with a changed
+	 * preference value are rescored.
+	 * 
+	 * @param s
+	 * @return up to date scores
+	 */
+	private BoundaryScores score(Sentence s) {
+		BoundaryScores scores = s.getScores();
+		Vocabulary vocab = this.vocab;
+		if (scores == null) {
+			scores = new BoundaryScores(s.length()-1);
+			s.setScores(scores);
+		} else if (this.usePos && vocab.getPrefVersion() > s.getScoredAt()) {
+			long since = s.getScoredAt();
+			int lastChanged = -WINDOW-1; // last constituent whose last label changed its preference
+			int i = 0;
+			for (int p = 0; p < scores.capacity(); p++) {
+				if (!scores.isPresent(p)) {
+					continue;
+				}
+				if (vocab.prefChangedSince(s.lastLabel(i).getId(), since)) {
+					lastChanged = i;
+				}
+				if (i - lastChanged <= WINDOW || vocab.prefChangedSince(s.firstLabel(i+1).getId(), since)) {
+					scores.markStale(p);
+				}
+				i += 1;
+			}
+		}
+		long sepCalls = 0;
+		for (int p : scores.takeStale()) {
+			if (scores.isPresent(p)) {
+				int i = scores.rank(p);
+				scores.set(p, sepDist(s, i));
+				sepCalls += 2 + Math.min(i, WINDOW);
+			}
+		}
+		if (sepCalls > 0) {
+			this.metrics.addSepCalls(sepCalls);
+		}
+		s.setScoredAt(vocab.getPrefVersion());
+		return scores;
+	}
+	
+	/**
+	 * Finds the start index of the merge with the lowest separation value for a sentence.
+	 * 
+	 * @param s
+	 * @return index of the first merged constituent, -1 if there is no merge
+	 */
+	private int bestIndex(Sentence s, double threshold, boolean safe) {
+		if (s.length() <= 1) {
+			return -1;
+		}
+		
+		BoundaryScores scores = this.score(s);
+		int best = scores.best();
+		double minSep = scores.get(best);
+		if (safe && minSep > threshold) {
+			return -1;
+		} else {
+			return scores.rank(best);
+		}
+	}
+	
+	/**
+	 * Finds the merges a sentence proposes in one iteration of batched safe learning: the boundaries
+	 * with a separation value below the threshold, taken from the lowest value on and skipping every
+	 * boundary next to one already taken, so that no two merges share a constituent.
+	 * 
+	 * @param s
+	 * @param threshold
+	 * @param indices receives the indices of the first merged constituents in ascending order
+	 * @param values scratch array for the separation values by constituent index, at least as long as the sentence
+	 * @param taken scratch array for the merged constituents, longer than the sentence and all false
+	 * @return number of merges
+	 */
+	private int batchIndices(Sentence s, double threshold, int[] indices, double[] values, boolean[] taken) {
+		if (s.length() <= 1) {
+			return 0;
+		}
+		BoundaryScores scores = this.score(s);
+		// the boundaries below the threshold by their constituent index, counted during the scan
+		// instead of asking the tree for the rank of every one
+		int m = 0;
+		int r = 0;
+		for (int p = 0; p < scores.capacity(); p++) {
+			if (!scores.isPresent(p)) {
+				continue;
+			}
+			double a = scores.get(p);
+			if (!(a > threshold)) {
+				// insertion sort: the lowest value first, NaN first like in bestIndex, ties from left to right
+				values[r] = a;
+				int k = m;
+				while (k > 0 && precedes(a, values[indices[k-1]])) {
+					indices[k] = indices[k-1];
+					k -= 1;
+				}
+				indices[k] = r;
+				m += 1;
+			}
+			r += 1;
+		}
+		for (int k = 0; k < m; k++) {
+			int i = indices[k];
+			if (!taken[i] && !taken[i+1]) {
+				taken[i] = true;
+				taken[i+1] = true;
+			}
+		}
+		// the taken constituents form disjoint pairs
+		int count = 0;
+		for (int i = 0; i < s.length(); i++) {
+			if (taken[i]) {
+				indices[count] = i;
+				count += 1;
+				taken[i] = false;
+				taken[i+1] = false;
+				i += 1;
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * Tells whether a separation value comes strictly before another one of a boundary further left
+	 * in the order of batchIndices.
+	 * 
+	 * @param a
+	 * @param b
+	 * @return true if a is NaN and b is not, or both are numbers and a is lower
+	 */
+	private static boolean precedes(double a, double b) {
+		if (Double.isNaN(a) != Double.isNaN(b)) {
+			return Double.isNaN(a);
+		}
+		return a < b;
+	}
+	
 	/**
 	 * Finds the best Merge with the lowest separation value for a sentence.
 	 * 
 	 * @param s
 	 * @return Merge object
 	 */
-	private Merge bestMerge(Sentence s, double threshold, boolean safe) {
-		if (s.length() <= 1) {
+	Merge bestMerge(Sentence s, double threshold, boolean safe) {
+		int index = this.bestIndex(s, threshold, safe);
+		if (index < 0) {
 			return null;
 		}
+		return new Merge(s, index);
+	}
+	
+	/**
+	 * Builds the reverse index from label ids to the sentences in which the label is
+	 * the first or last label of a constituent.
+	 * 
+	 * @param sents
+	 * @return sentence indices by label id
+	 */
+	private int[][] labelSentences(List<Sentence> sents) {
+		int n = this.vocab.size();
+		int[][] index = new int[n][];
+		int[] counts = new int[n];
+		int[] lastSeen = new int[n];
+		Arrays.fill(lastSeen, -1);
+		for (int i = 0; i < sents.size(); i++) {
+			Sentence s = sents.get(i);
+			for (int k = 0; k < s.length(); k++) {
+				for (Label label : new Label[] {s.firstLabel(k), s.lastLabel(k)}) {
+					if (lastSeen[label.getId()] != i) {
+						lastSeen[label.getId()] = i;
+						counts[label.getId()] += 1;
+					}
+				}
+			}
+		}
+		for (int id = 0; id < n; id++) {
+			index[id] = new int[counts[id]];
+		}
+		Arrays.fill(counts, 0);
+		for (int i = 0; i < sents.size(); i++) {
+			Sentence s = sents.get(i);
+			for (int k = 0; k < s.length(); k++) {
+				for (Label label : new Label[] {s.firstLabel(k), s.lastLabel(k)}) {
+					int id = label.getId();
+					if (counts[id] == 0 || index[id][counts[id]-1] != i) {
+						index[id][counts[id]] = i;
+						counts[id] += 1;
+					}
+				}
+			}
+		}
+		return index;
+	}
+	
+	/**
+	 * Performs the unsafe merges on a sentence until a single constituent is left.
+	 * 
+	 * @param s
+	 * @param threshold
+	 * @return ConstituentTree of the sentence
+	 */
+	private ConstituentTree finish(Sentence s, double threshold) {
+		Merge m = bestMerge(s, threshold, false);
+		while (m != null) {
+			s.merge(m, false);
+			m = bestMerge(s, threshold, false);
+		}
+		return s.tree();
+	}
+	
+	/**
+	 * Parses a sentence that is not part of the corpus with the learned model: the safe merges
+	 * are performed without changing the label counters, then the sentence is finished.
+	 * There is no minimum frequency for the safe merges, since a single sentence has no candidates
+	 * to count them against. On words the tree of a corpus sentence is the same as that of
+	 * {@link #parseCorpus(double, boolean)}. On POS tags it can differ by design: in safe learning
+	 * a corpus sentence merges with the preference values of its iteration, here the final values
+	 * are used. With preference values held constant the trees are the same, so the frequency
+	 * filter does not cause the difference.
+	 * 
+	 * @param s
+	 * @param threshold
+	 * @return ConstituentTree of the sentence
+	 */
+	ConstituentTree parse(Sentence s, double threshold) {
+		Merge m = bestMerge(s, threshold, true);
+		while (m != null) {
+			s.merge(m, true);
+			m = bestMerge(s, threshold, true);
+		}
+		return finish(s, threshold);
+	}
+	
+	/**
+	 * Finishes all sentences of the corpus. Unsafe merges do not change any label counters, so the
+	 * sentences are independent of each other and are finished in parallel. Sentences with the same
+	 * labels are finished the same way, so only the first sentence of every label sequence is finished
+	 * and its tree is projected onto the others (see {@link Sentence#projectTree(Sentence)}).
+	 * The longest sentences are scheduled first so that they do not end up as the tail.
+	 * If a writer is given, a writer thread writes every tree as soon as all sentences before
+	 * it are finished.
+	 * 
+	 * @param threshold
+	 * @param out writer for the trees, or null
+	 * @return ConstituentTrees in the order of the sentences, null if they were written
+	 * @throws IOException if writing fails
+	 */
+	private ArrayList<ConstituentTree> finishAll(final double threshold, final TreeWriter out) throws IOException {
+		final List<Sentence> sents = this.corpus.getUniqueSentences();
+		final int[] uniqueIndex = this.corpus.getUniqueIndex();
+		final ConstituentTree[] parsed = new ConstituentTree[sents.size()];
+		final int[] waitingFor = {-1}; // unique sentence the writer thread waits for
+		final boolean[] failed = {false}; // a batch failed, so the writer thread stops waiting
+		final IOException[] error = new IOException[1];
+		Thread writerThread = null;
+		if (out != null) {
+			writerThread = new Thread(new Runnable() {
+				public void run() {
+					try {
+						for (int i = 0; i < uniqueIndex.length; i++) {
+							int u = uniqueIndex[i];
+							ConstituentTree tree;
+							synchronized (parsed) {
+								while (parsed[u] == null) {
+									if (failed[0]) {
+										return;
+									}
+									waitingFor[0] = u;
+									parsed.wait();
+								}
+								tree = parsed[u];
+							}
+							out.write(corpusTree(i, tree));
+						}
+					} catch (IOException e) {
+						error[0] = e;
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}, "tree writer");
+			writerThread.start();
+		}
+		Integer[] order = new Integer[sents.size()];
+		long tokens = 0;
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+			tokens += sents.get(i).length();
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer i, Integer j) {
+				return sents.get(j).length() - sents.get(i).length();
+			}
+		});
 		
-		ArrayList<ConstituentTree> cons = s.getConstituents();
-		Double minSep = sepDist(s,0);
-		int startIndex = 0;
-		for (int i = 1; i < cons.size()-1; i++) {
-			double sepVal = sepDist(s,i);
-			if (sepVal < minSep) {
-				minSep = sepVal;
-				startIndex = i;
+		// batches of roughly equal numbers of tokens, longest sentences first
+		long batchTokens = Math.max(1, tokens / (this.workers.getThreads() * 16));
+		ArrayList<Callable<Void>> batches = new ArrayList<Callable<Void>>();
+		int start = 0;
+		while (start < order.length) {
+			int end = start;
+			long batchLength = 0;
+			while (end < order.length && (end == start || batchLength + sents.get(order[end]).length() <= batchTokens)) {
+				batchLength += sents.get(order[end]).length();
+				end += 1;
 			}
+			final Integer[] batch = Arrays.copyOfRange(order, start, end);
+			batches.add(new Callable<Void>() {
+				public Void call() {
+					for (int i : batch) {
+						ConstituentTree tree = finish(sents.get(i), threshold);
+						synchronized (parsed) {
+							parsed[i] = tree;
+							if (i == waitingFor[0]) {
+								parsed.notify();
+							}
+						}
+					}
+					return null;
+				}
+			});
+			start = end;
 		}
-		if (safe && minSep > threshold) {
-			return null;
-		} else {
-			ConstituentTree mergedCons = new ConstituentTree(new ArrayList<ConstituentTree>(cons.subList(startIndex, startIndex + 2)));
-			Merge m = new Merge(mergedCons, startIndex);
-			return m;
+		boolean done = false;
+		try {
+			this.workers.invokeAll(batches);
+			done = true;
+		} finally {
+			if (writerThread != null) {
+				if (!done) {
+					// the exception of the batch is rethrown once the writer thread has stopped
+					synchronized (parsed) {
+						failed[0] = true;
+						parsed.notifyAll();
+					}
+				}
+				try {
+					writerThread.join();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException(e);
+				}
+			}
+		}
+		if (out == null) {
+			ArrayList<ConstituentTree> trees = new ArrayList<ConstituentTree>(uniqueIndex.length);
+			for (int i = 0; i < uniqueIndex.length; i++) {
+				trees.add(this.corpusTree(i, parsed[uniqueIndex[i]]));
+			}
+			return trees;
+		}
+		if (error[0] != null) {
+			throw error[0];
 		}
+		return null;
 	}
 	
 	/**
-	 * Parses the corpus and returns the ConstituentTree for each sentence.
+	 * Returns the tree of sentence i of the corpus, given the tree of the first sentence with its labels.
+	 * 
+	 * @param i
+	 * @param tree
+	 * @return ConstituentTree of sentence i
+	 */
+	private ConstituentTree corpusTree(int i, ConstituentTree tree) {
+		Sentence s = this.corpus.getSentences().get(i);
+		return s == tree.getSentence() ? tree : s.projectTree(tree.getSentence());
+	}
+	
+	/**
+	 * Performs the safe learning phase on the corpus. Afterwards the label statistics and
+	 * preference values form the model that is used to finish sentences.
 	 * 
 	 * @param threshold to be used during safe learning phase
-	 * @param onlySafe
-	 * @return
 	 */
-	public ArrayList<ConstituentTree> parseCorpus(double threshold, boolean onlySafe) {
-		ArrayList<Sentence> sents = this.corpus.getSentences();
+	public void learn(final double threshold) {
+		if (this.corpus == null) {
+			throw new IllegalStateException("the parser was created from a model and has no corpus to learn on");
+		}
+		// sentences with the same labels merge the same way, so every label sequence is learned on
+		// once and its proposals and merges count as often as it occurs
+		final List<Sentence> sents = this.corpus.getUniqueSentences();
+		final int[] multiplicity = this.corpus.getMultiplicity();
+		// a sentence of a store is read for every use, and merges are written back to the store
+		final SentenceStore store = this.corpus.getStore() != null ? (SentenceStore) sents : null;
+		Vocabulary vocab = this.vocab;
 		
 		// safe learning
 		System.out.println("start safe learning phase...");
-		int counter = 0;
-		int minFreq;
+		Metrics.Phase phase = this.metrics.phase("safe learning");
+		int counter = this.resumedIteration;
+		final int minFreq;
 		if (usePos) {
-			minFreq = this.corpus.getSentenceCount()/1000;
+			minFreq = this.corpus.getSentences().size()/1000; // candidates are only counted on the sentences learned on
 		} else {
 			minFreq = 0;
 		}
-		HashMap<Integer,Merge> candidateMerges = new HashMap<Integer,Merge>();
-		HashMap<String,Integer> candidateFreqs = new HashMap<String,Integer>();
+		final int n = sents.size();
+		final boolean batched = this.batchMerges;
+		// proposal ids of sentence i are slot[i] to slot[i+1]-1: one per sentence, or one per
+		// pair of tokens if a sentence proposes all of its non-overlapping merges at once
+		final int[] slot = new int[n+1];
+		for (int i = 0; i < n; i++) {
+			slot[i+1] = slot[i] + (batched ? Math.max(1, sents.get(i).tokens()/2) : 1);
+		}
+		final int slots = slot[n];
+		// current proposals of every sentence, reused in every iteration
+		final int[] proposalCount = new int[n];
+		final int[] proposalStart = new int[slots]; // first token of the proposed merge
+		final int[] newCount = new int[n];
+		final int[] newStart = new int[slots];
+		final int[] newEnd = new int[slots];
+		final long[] newHash = new long[slots];
+		CandidateTable candidates = new CandidateTable(sents, slots); // proposals by label sequence
+		final int[] commit = new int[slots];
+		final int[] commitSentence = new int[n]; // sentences with committed proposals
+		final int[] commitFrom = new int[n+1]; // their first entry in commit
+		int[][] labelSentences = null;
+		int[] labelExpanded = null; // iteration in which the sentences of a label were last added
+		if (usePos && store == null) {
+			labelSentences = this.labelSentences(sents);
+			labelExpanded = new int[vocab.size()];
+		}
+		long corpusHash = 0;
+		Checkpoint.Writer checkpoints = null;
+		if (this.checkpointFile != null) {
+			corpusHash = Checkpoint.hash(sents);
+			checkpoints = new Checkpoint.Writer(this.checkpointFile, this.checkpointIterations, this.checkpointMillis, counter);
+		}
+		boolean[] isActive = new boolean[n];
+		final int[] active = new int[n];
+		int activeCount = 0;
+		for (int i = 0; i < n; i++) {
+			if (sents.get(i).length() > 1) {
+				active[activeCount] = i;
+				activeCount += 1;
+			}
+		}
 		while (true) {
-			boolean updated = false;
-			for (int i = 0; i < sents.size(); i++) {
-				Merge m = bestMerge(sents.get(i), threshold, true);
-				if (m != null) {
-					candidateMerges.put(i, m);
-					String cons = m.text();
-					if (candidateFreqs.containsKey(cons)) {
-						candidateFreqs.put(cons, candidateFreqs.get(cons)+1);
-					} else {
-						candidateFreqs.put(cons, 1);
+			long iterationStart = System.nanoTime();
+			long sepCalls = this.metrics.getSepCalls();
+			// only sentences that merged or contain a label whose preference changed propose new merges,
+			// the proposals of all other sentences are still valid
+			this.workers.run(activeCount, new Workers.RangeTask<Void>() {
+				public Void run(int from, int to) {
+					int[] indices = new int[1];
+					double[] values = new double[1];
+					boolean[] taken = new boolean[2];
+					for (int k = from; k < to; k++) {
+						int i = active[k];
+						Sentence s = sents.get(i);
+						int count;
+						if (batched) {
+							if (indices.length < s.length()) {
+								indices = new int[s.length()];
+								values = new double[s.length()];
+								taken = new boolean[s.length()+1];
+							}
+							count = batchIndices(s, threshold, indices, values, taken);
+						} else {
+							indices[0] = bestIndex(s, threshold, true);
+							count = indices[0] >= 0 ? 1 : 0;
+						}
+						for (int j = 0; j < count; j++) {
+							int index = indices[j];
+							newStart[slot[i]+j] = s.constituentStart(index);
+							newEnd[slot[i]+j] = s.constituentEnd(index+1);
+							newHash[slot[i]+j] = CandidateTable.hash(s, newStart[slot[i]+j], newEnd[slot[i]+j]);
+						}
+						newCount[i] = count;
 					}
+					return null;
+				}
+			});
+			int proposed = 0;
+			for (int k = 0; k < activeCount; k++) {
+				int i = active[k];
+				for (int j = 0; j < proposalCount[i]; j++) {
+					candidates.remove(slot[i]+j);
+				}
+				proposalCount[i] = newCount[i];
+				for (int j = 0; j < newCount[i]; j++) {
+					int id = slot[i]+j;
+					proposalStart[id] = newStart[id];
+					candidates.add(id, i, newStart[id], newEnd[id], newHash[id], multiplicity[i]);
+				}
+				proposed += newCount[i];
+			}
+			
+			// Only candidates proposed in this iteration can have become frequent enough,
+			// all others were either committed or stayed below minFreq.
+			int commitCount = 0;
+			int rejected = 0;
+			int proposedCandidates = candidates.touchedCount();
+			for (int k = 0; k < candidates.touchedCount(); k++) {
+				int g = candidates.touched(k);
+				if (candidates.size(g) < minFreq) {
+					rejected += 1;
+				} else {
+					for (int id = candidates.first(g); id >= 0; id = candidates.next(id)) {
+						commit[commitCount] = id;
+						commitCount += 1;
+					}
+					candidates.removeGroup(g);
 				}
 			}
-			for (int i : candidateMerges.keySet()) {
-				Merge m = candidateMerges.get(i);
-				if (candidateFreqs.get(m.text()) >= minFreq) {
-					sents.get(i).merge(m, true);
-					updated = true;
+			candidates.clearTouched();
+			Arrays.sort(commit, 0, commitCount);
+			int commitSentences = 0;
+			for (int k = 0, i = 0; k < commitCount; k++) {
+				while (slot[i+1] <= commit[k]) {
+					i += 1;
+				}
+				if (commitSentences == 0 || commitSentence[commitSentences-1] != i) {
+					commitSentence[commitSentences] = i;
+					commitFrom[commitSentences] = k;
+					commitSentences += 1;
+				}
+			}
+			commitFrom[commitSentences] = commitCount;
+			
+			// apply the frequent merges, the preference counters are updated afterwards
+			ArrayList<Commits> rangeCommits = this.workers.run(commitSentences, new Workers.RangeTask<Commits>() {
+				public Commits run(int from, int to) {
+					Commits commits = new Commits();
+					for (int k = from; k < to; k++) {
+						Sentence s = sents.get(commitSentence[k]);
+						// from right to left, so the constituents left of a merge keep their index
+						for (int c = commitFrom[k+1]-1; c >= commitFrom[k]; c--) {
+							int index = s.constituentAt(proposalStart[commit[c]]);
+							commits.add(s.firstLabel(index).getId(), s.lastLabel(index+1).getId(), multiplicity[commitSentence[k]]);
+							s.merge(index, true);
+						}
+						sents.set(commitSentence[k], s);
+					}
+					return commits;
+				}
+			});
+			long version = vocab.getPrefVersion();
+			for (Commits commits : rangeCommits) {
+				for (int c = 0; c < commits.count; c++) {
+					vocab.addF(commits.first[c], commits.weight[c]);
+					vocab.addL(commits.last[c], commits.weight[c]);
 				}
 			}
 			
 			counter += 1;
 			System.out.println("\t iteration "+counter);
-			if (!updated) {
+			int rescanned = activeCount;
+			if (commitCount == 0) {
+				this.metrics.iteration(counter, System.nanoTime() - iterationStart, rescanned, proposed,
+						proposedCandidates, commitCount, rejected, this.metrics.getSepCalls() - sepCalls);
 				break;
-			} else {
-				candidateMerges.clear();
-				candidateFreqs.clear();
 			}
+			
+			// sentences to rescan in the next iteration
+			activeCount = 0;
+			for (int k = 0; k < commitSentences; k++) {
+				int i = commitSentence[k];
+				if (!isActive[i] && sents.get(i).length() > 1) {
+					isActive[i] = true;
+					active[activeCount] = i;
+					activeCount += 1;
+				}
+			}
+			if (usePos && store != null) {
+				// a store has no index of the sentences of a label, so all sentences are checked in order
+				for (int i = 0; i < n; i++) {
+					if (!isActive[i] && store.length(i) > 1 && store.prefChangedSince(i, version)) {
+						isActive[i] = true;
+						active[activeCount] = i;
+						activeCount += 1;
+					}
+				}
+			} else if (usePos) {
+				for (Commits commits : rangeCommits) {
+					for (int c = 0; c < commits.count; c++) {
+						for (int id : new int[] {commits.first[c], commits.last[c]}) {
+							if (labelExpanded[id] != counter && vocab.prefChangedSince(id, version)) {
+								labelExpanded[id] = counter;
+								for (int i : labelSentences[id]) {
+									if (!isActive[i] && sents.get(i).length() > 1) {
+										isActive[i] = true;
+										active[activeCount] = i;
+										activeCount += 1;
+									}
+								}
+							}
+						}
+					}
+				}
+			}
+			Arrays.sort(active, 0, activeCount);
+			for (int k = 0; k < activeCount; k++) {
+				isActive[active[k]] = false;
+			}
+			if (checkpoints != null && checkpoints.isDue(counter)) {
+				checkpoints.write(Checkpoint.snapshot(sents, vocab, corpusHash, usePos, batched, threshold, counter));
+			}
+			this.metrics.iteration(counter, System.nanoTime() - iterationStart, rescanned, proposed,
+					proposedCandidates, commitCount, rejected, this.metrics.getSepCalls() - sepCalls);
+		}
+		if (checkpoints != null) {
+			checkpoints.close();
+		}
+		phase.end();
+	}
+	
+	/**
+	 * Parses the sentences of a file one batch at a time with the model learned on the corpus
+	 * (see {@link #parse(Sentence, double)}),
+	 * so that the input does not have to fit into memory. The calling thread reads the batches,
+	 * the workers finish them and a writer thread writes the trees in input order. Only a bounded
+	 * number of batches is in flight, which blocks the reader if the writer falls behind.
+	 * 
+	 * @param inputFile
+	 * @param outputFile
+	 * @param threshold
+	 * @throws IOException
+	 */
+	public void parseStream(String inputFile, String outputFile, final double threshold) throws IOException {
+		this.parseStream(inputFile, new TreeWriter(outputFile, false), threshold);
+	}
+	
+	/**
+	 * Parses the sentences of a file as a stream, see {@link #parseStream(String, String, double)}.
+	 * 
+	 * @param inputFile
+	 * @param writer writer for the trees, closed when parsing is done
+	 * @param threshold
+	 * @throws IOException
+	 */
+	public void parseStream(String inputFile, final TreeWriter writer, final double threshold) throws IOException {
+		this.parseStream(inputFile, InputFormat.forFile(inputFile, this.usePos), writer, threshold);
+	}
+	
+	/**
+	 * Parses the sentences of a file in the given format as a stream, see {@link #parseStream(String, String, double)}.
+	 * A gzip-compressed file is decompressed while it is read.
+	 * 
+	 * @param inputFile
+	 * @param format format of the file, which has to select the labels the model was learned on
+	 * @param writer writer for the trees, closed when parsing is done
+	 * @param threshold
+	 * @throws IOException
+	 */
+	public void parseStream(String inputFile, InputFormat format, TreeWriter writer, final double threshold) throws IOException {
+		final SentenceReader reader = new SentenceReader(InputFormat.open(inputFile, this.workers), format, this.vocab);
+		System.out.println("parsing " + inputFile + "...");
+		Metrics.Phase phase = this.metrics.phase("parse stream");
+		try {
+			this.writeBatches(new BatchSource() {
+				private boolean done = false;
+				
+				public Callable<ArrayList<ConstituentTree>> next() throws IOException {
+					if (this.done) {
+						return null;
+					}
+					final ArrayList<Sentence> batch = new ArrayList<Sentence>();
+					Sentence s;
+					while (batch.size() < STREAM_BATCH_SIZE && (s = reader.next()) != null) {
+						batch.add(s);
+					}
+					this.done = batch.size() < STREAM_BATCH_SIZE;
+					return new Callable<ArrayList<ConstituentTree>>() {
+						public ArrayList<ConstituentTree> call() {
+							ArrayList<ConstituentTree> trees = new ArrayList<ConstituentTree>();
+							for (Sentence s : batch) {
+								trees.add(parse(s, threshold));
+							}
+							return trees;
+						}
+					};
+				}
+			}, writer, "parsing " + inputFile);
+		} finally {
+			reader.close();
+			writer.close();
+			phase.end();
+		}
+		System.out.println("-----DONE PARSING-----");
+	}
+	
+	/**
+	 * The batches of sentences parsed by {@link Parser#writeBatches(BatchSource, TreeWriter, String)}.
+	 */
+	private interface BatchSource {
+		/**
+		 * @return a task that parses the next batch and returns its trees, null after the last batch
+		 * @throws IOException
+		 */
+		Callable<ArrayList<ConstituentTree>> next() throws IOException;
+	}
+	
+	/**
+	 * Parses batches of sentences on the workers while the calling thread prepares the next ones,
+	 * and writes their trees in order on a writer thread. Only a bounded number of batches is in
+	 * flight, which blocks the caller if the writer falls behind. The writer thread has stopped
+	 * when this method returns or throws, so the caller may close the writer afterwards.
+	 * 
+	 * @param source
+	 * @param writer writer for the trees
+	 * @param task what is done, for the error message
+	 * @throws IOException if a batch cannot be read, parsed or written
+	 */
+	private void writeBatches(BatchSource source, final TreeWriter writer, String task) throws IOException {
+		final BlockingQueue<Future<ArrayList<ConstituentTree>>> pending = new ArrayBlockingQueue<Future<ArrayList<ConstituentTree>>>(4 * this.workers.getThreads());
+		final AtomicReference<Exception> error = new AtomicReference<Exception>();
+		Thread writerThread = new Thread(new Runnable() {
+			public void run() {
+				while (true) {
+					try {
+						ArrayList<ConstituentTree> trees = pending.take().get();
+						if (trees == null) {
+							break;
+						}
+						if (error.get() == null) {
+							for (ConstituentTree c : trees) {
+								writer.write(c);
+							}
+						}
+					} catch (InterruptedException e) {
+						break;
+					} catch (Exception e) {
+						error.compareAndSet(null, e);
+					}
+				}
+			}
+		}, "tree writer");
+		writerThread.start();
+		
+		FutureTask<ArrayList<ConstituentTree>> end = new FutureTask<ArrayList<ConstituentTree>>(new Callable<ArrayList<ConstituentTree>>() {
+			public ArrayList<ConstituentTree> call() {
+				return null;
+			}
+		});
+		end.run();
+		try {
+			Callable<ArrayList<ConstituentTree>> batch;
+			while (error.get() == null && (batch = source.next()) != null) {
+				pending.put(this.workers.submit(batch));
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} finally {
+			// also if reading a batch failed, the writer thread writes the batches in flight and stops
+			stopWriter(writerThread, pending, end);
+		}
+		if (error.get() != null) {
+			throw new IOException(task + " failed", error.get());
+		}
+	}
+	
+	/**
+	 * Queues the end marker for the writer thread of {@link #writeBatches(BatchSource, TreeWriter, String)}
+	 * and waits until the thread has stopped. If the calling thread is interrupted, the writer thread
+	 * is interrupted instead of waiting for the batches in flight.
+	 * 
+	 * @param writerThread
+	 * @param pending the queue of the writer thread
+	 * @param end the end marker, a task that returns null
+	 */
+	private static void stopWriter(Thread writerThread, BlockingQueue<Future<ArrayList<ConstituentTree>>> pending,
+			Future<ArrayList<ConstituentTree>> end) {
+		boolean interrupted = false;
+		try {
+			pending.put(end);
+		} catch (InterruptedException e) {
+			interrupted = true;
+			writerThread.interrupt();
+		}
+		while (writerThread.isAlive()) {
+			try {
+				writerThread.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+				writerThread.interrupt();
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * Finishes the sentences of a corpus in a store and writes their trees, in batches in the
+	 * order of the corpus so that only a few batches are on the heap. Every sentence gets the
+	 * constituents of the first sentence with its labels, which is the one safe learning merged.
+	 * Finished sentences whose labels occur more than once are kept (up to STORED_CACHE_TOKENS tokens)
+	 * and their trees are projected onto the later sentences with the same labels. Which of them is
+	 * finished does not matter, since sentences with the same labels are finished the same way.
+	 * 
+	 * @param threshold
+	 * @param onlySafe true to write the trees of safe learning without finishing them
+	 * @param out writer for the trees
+	 * @throws IOException
+	 */
+	private void finishStored(final double threshold, final boolean onlySafe, TreeWriter out) throws IOException {
+		final SentenceStore store = this.corpus.getStore();
+		final int[] uniqueIndex = this.corpus.getUniqueIndex();
+		final int[] representatives = this.corpus.getRepresentatives();
+		final int[] multiplicity = this.corpus.getMultiplicity();
+		final ConcurrentHashMap<Integer,Sentence> finished = new ConcurrentHashMap<Integer,Sentence>(); // by label sequence
+		final AtomicInteger cachedTokens = new AtomicInteger();
+		this.writeBatches(new BatchSource() {
+			private int next = 0;
+			
+			public Callable<ArrayList<ConstituentTree>> next() {
+				if (this.next == store.size()) {
+					return null;
+				}
+				final int from = this.next;
+				final int to = Math.min(store.size(), from + STREAM_BATCH_SIZE);
+				this.next = to;
+				return new Callable<ArrayList<ConstituentTree>>() {
+					public ArrayList<ConstituentTree> call() {
+						ArrayList<ConstituentTree> trees = new ArrayList<ConstituentTree>(to - from);
+						for (int i = from; i < to; i++) {
+							int u = uniqueIndex[i];
+							Sentence parsed = finished.get(u);
+							if (parsed != null) {
+								trees.add(store.get(i).projectTree(parsed));
+								continue;
+							}
+							Sentence s = store.get(i, representatives[u]);
+							trees.add(onlySafe ? s.tree() : finish(s, threshold));
+							if (multiplicity[u] > 1 && cachedTokens.addAndGet(s.tokens()) <= STORED_CACHE_TOKENS) {
+								finished.put(u, s);
+							}
+						}
+						return trees;
+					}
+				};
+			}
+		}, out, "finishing");
+	}
+	
+	/**
+	 * Parses the corpus and returns the ConstituentTree for each sentence.
+	 * 
+	 * @param threshold to be used during safe learning phase
+	 * @param onlySafe
+	 * @return
+	 * @throws IllegalStateException if the sentences are kept in a {@link SentenceStore}
+	 */
+	public ArrayList<ConstituentTree> parseCorpus(final double threshold, boolean onlySafe) {
+		if (this.corpus.getStore() != null) {
+			throw new IllegalStateException("the trees of a corpus in a sentence store can only be written");
 		}
+		this.learn(threshold);
+		List<Sentence> unique = this.corpus.getUniqueSentences();
+		int[] uniqueIndex = this.corpus.getUniqueIndex();
 		
 		ArrayList<ConstituentTree> parsed = new ArrayList<ConstituentTree>();
 		
 		// unsafe learning
 		System.out.println();
 		System.out.println("finishing...");
+		Metrics.Phase phase = this.metrics.phase("finishing");
 		if (!onlySafe) {
-			for (Sentence s : sents) {
-				Merge m = bestMerge(s, threshold, false);
-				while (m != null) {
-					s.merge(m, false);
-					m = bestMerge(s, threshold, false);
-				}
-				ConstituentTree c = s.getLast();
-				if (c.getSubConstituents() == null) {
-					ArrayList<ConstituentTree> newCons = new ArrayList<ConstituentTree>();
-					newCons.add(c);
-					parsed.add(new ConstituentTree(newCons));
-				} else {
-					parsed.add(s.getLast());
-				}
+			try {
+				parsed.addAll(this.finishAll(threshold, null));
+			} catch (IOException e) {
+				throw new IllegalStateException(e); // nothing is written without a writer
 			}
 		} else {
-			for (Sentence s : sents) {
-				ArrayList<ConstituentTree> cons = s.getConstituents();
-				if (cons.size() == 1) {
-					ConstituentTree c = cons.get(0);
-					if (c.getSubConstituents() == null) {
-						ArrayList<ConstituentTree> newCons = new ArrayList<ConstituentTree>();
-						newCons.add(new ConstituentTree(cons));
-						s.setConstituents(newCons);
-					}
-				} else {
-					ArrayList<ConstituentTree> newCons = new ArrayList<ConstituentTree>();
-					newCons.add(new ConstituentTree(cons));
-					s.setConstituents(newCons);
-				}
-				parsed.add(s.getLast());
+			for (int i = 0; i < uniqueIndex.length; i++) {
+				parsed.add(this.corpusTree(i, unique.get(uniqueIndex[i]).tree()));
 			}
 		}
+		phase.end();
 		System.out.println("-----DONE PARSING-----");
 		return parsed;
 	}
 	
+	/**
+	 * Parses the corpus and writes the ConstituentTree of each sentence as soon as it and all
+	 * sentences before it are finished, so that the trees do not have to be kept.
+	 * 
+	 * @param threshold to be used during safe learning phase
+	 * @param onlySafe
+	 * @param out writer for the trees, closed when parsing is done
+	 * @throws IOException
+	 */
+	public void parseCorpus(final double threshold, boolean onlySafe, TreeWriter out) throws IOException {
+		Metrics.Phase phase = null;
+		try {
+			this.learn(threshold);
+			List<Sentence> unique = this.corpus.getUniqueSentences();
+			int[] uniqueIndex = this.corpus.getUniqueIndex();
+			
+			// unsafe learning
+			System.out.println();
+			System.out.println("finishing...");
+			phase = this.metrics.phase("finishing and writing");
+			if (this.corpus.getStore() != null) {
+				this.finishStored(threshold, onlySafe, out);
+			} else if (!onlySafe) {
+				this.finishAll(threshold, out);
+			} else {
+				for (int i = 0; i < uniqueIndex.length; i++) {
+					out.write(this.corpusTree(i, unique.get(uniqueIndex[i]).tree()));
+				}
+			}
+		} finally {
+			out.close();
+			if (phase != null) {
+				phase.end();
+			}
+		}
+		System.out.println("-----DONE PARSING-----");
+	}
 
 }
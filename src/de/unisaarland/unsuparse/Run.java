@@ -1,8 +1,7 @@
 package de.unisaarland.unsuparse;
 
+import java.io.File;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.util.ArrayList;
 /**
  * Contains the main method to run the parser.
  * 
@@ -18,6 +17,40 @@ public class Run {
 	 * "-p" for parsing on POS tags instead of words (default is on words)
 	 * "-s" for using only the safe learning phase (results in shallow parse trees)
 	 * "-t <threshold>" for specifying a threshold value (default value is 0.05)
+	 * "-j <threads>" for the number of threads to use, 0 for all processors (default is 1)
+	 * "--train <file>" for learning the model on another corpus file (or a sample) and then parsing
+	 * the input file as a stream, which does not have to fit into memory
+	 * "--save-model <file>" for writing the learned model to a file
+	 * "--model <file>" for parsing the input file as a stream with a model written before
+	 * "--metrics <file>" for writing timers and counters of the run as JSON
+	 * "--spans" for writing the trees in the binary span format of {@link TreeWriter} instead of bracketed text
+	 * (an output file name ending with .gz is written gzip-compressed)
+	 * "--conllu" for reading the input (and training) file as CoNLL-U, with FORM as word and UPOS as POS tag,
+	 * which is the default for files ending with .conllu or .conllu.gz, and "--xpos" for CoNLL-U with XPOS as
+	 * POS tag (see {@link InputFormat}); gzip-compressed files are recognized by their content
+	 * "--batch-merges" for committing all non-overlapping merges of a sentence below the threshold in one safe
+	 * learning iteration, see {@link Parser#setBatchMerges(boolean)}
+	 * "--compare-batch <file>" for parsing the corpus in both safe learning modes and writing a comparison of the
+	 * trees to a file, see {@link MergeComparison} (the output file gets the trees of the selected mode)
+	 * "--sweep <file>" for parsing the input file with every configuration in the file (one per line, with the
+	 * options -t, -p, -s and --batch-merges) in one run that reads the corpus once per mode, see {@link Sweep}
+	 * "--checkpoint <file>" for writing checkpoints of safe learning to a file, every 300 seconds unless
+	 * "--checkpoint-every <iterations>" or "--checkpoint-seconds <seconds>" is given
+	 * "--resume" for continuing safe learning from the checkpoint file instead of starting over
+	 * "--bigram-memory <MB>" for counting bigrams approximately in about this much memory (see {@link BigramSketch})
+	 * "--min-freq <n>" for folding labels seen fewer than n times into classes by shape and suffix, and
+	 * "--max-labels <k>" for folding all but the k most frequent labels (see {@link LabelFolding})
+	 * "--update <file>" for adding the input file as new sentences to a model written before: the counts are
+	 * updated and safe learning continues on the new sentences only (save the result with "--save-model")
+	 * "--store <file>" for keeping the sentences of the corpus that is learned on in a memory-mapped file
+	 * instead of on the heap, for corpora larger than the heap (see {@link SentenceStore})
+	 * 
+	 * With "--serve <port>" as the first two arguments, no file is parsed. Instead the model given with
+	 * "--model" (or learned with "--train") is loaded once and sentences are parsed on request by a local
+	 * HTTP server, see {@link ParseServer}. "--deadline <ms>" sets the default deadline of a request (default is 1000).
+	 * 
+	 * With "--generate <file>" a corpus is generated instead, see {@link CorpusGenerator#generate(String[])}, and with
+	 * "--scale <csvFile>" generated corpora are parsed over a grid of sizes and settings, see {@link ScalingHarness#scale(String[])}.
 	 * 
 	 * @param args
 	 * @throws IOException
@@ -25,12 +58,39 @@ public class Run {
 	public static void main(String[] args) throws IOException {
 		if (args.length < 2) {
 			System.out.println("Please specify the file you want to parse and the output file");
+		} else if (args[0].equals("--generate")) {
+			CorpusGenerator.generate(args);
+		} else if (args[0].equals("--scale")) {
+			ScalingHarness.scale(args);
 		} else {
+			boolean serve = args[0].equals("--serve");
 			String corpusFileName = args[0];
 			String outputFileName = args[1];
+			long deadline = 1000;
+			boolean spans = false;
+			String metricsFileName = null;
+			boolean batchMerges = false;
+			String compareFileName = null;
+			String sweepFileName = null;
+			String checkpointFileName = null;
+			int checkpointIterations = 0;
+			long checkpointSeconds = 0;
+			boolean resume = false;
+			String updateFileName = null;
+			String storeFileName = null;
+			long bigramMemory = 0;
+			int minFreq = 0;
+			int maxLabels = 0;
+			boolean conllu = false;
+			boolean xpos = false;
 			boolean usePos = false;
 			boolean onlySafe = false;
 			Double threshold = 0.05;
+			int threads = 1;
+			String trainFileName = null;
+			String saveModelFileName = null;
+			String modelFileName = null;
+			boolean thresholdSet = false;
 			
 			for (int i = 2; i < args.length; i++) {
 				switch (args[i]) {
@@ -50,28 +110,412 @@ public class Run {
 					i += 1;
 					try {
 						threshold = Double.parseDouble(args[i]);
+						thresholdSet = true;
 						System.out.println("- threshold value " + threshold + " used during safe learning");
 					} catch (NumberFormatException e) {
 						System.out.println("WARNING: invalid threshold value specified, default will be used");
 					}
 					break;
+				case "-j":
+					if (i+1 == args.length) {
+						System.out.println("WARNING: no number of threads specified, default will be used");
+						break;
+					}
+					i += 1;
+					try {
+						threads = Integer.parseInt(args[i]);
+						System.out.println("- " + threads + " threads used");
+					} catch (NumberFormatException e) {
+						System.out.println("WARNING: invalid number of threads specified, default will be used");
+					}
+					break;
+				case "--train":
+					if (i+1 == args.length) {
+						System.out.println("WARNING: no training file specified, the input file will be used");
+						break;
+					}
+					i += 1;
+					trainFileName = args[i];
+					System.out.println("- learn on " + trainFileName + " and parse input as a stream");
+					break;
+				case "--save-model":
+					if (i+1 == args.length) {
+						System.out.println("WARNING: no model file specified, the model will not be saved");
+						break;
+					}
+					i += 1;
+					saveModelFileName = args[i];
+					System.out.println("- save model to " + saveModelFileName);
+					break;
+				case "--model":
+					if (i+1 == args.length) {
+						System.out.println("WARNING: no model file specified, the model will be learned on the input");
+						break;
+					}
+					i += 1;
+					modelFileName = args[i];
+					System.out.println("- use model " + modelFileName + " and parse input as a stream");
+					break;
+				case "--metrics":
+					if (i+1 == args.length) {
+						System.out.println("WARNING: no metrics file specified, no metrics will be written");
+						break;
+					}
+					i += 1;
+					metricsFileName = args[i];
+					System.out.println("- write metrics to " + metricsFileName);
+					break;
+				case "--conllu":
+					conllu = true;
+					System.out.println("- read CoNLL-U");
+					break;
+				case "--xpos":
+					xpos = true;
+					System.out.println("- read CoNLL-U with XPOS as POS tag");
+					break;
+				case "--spans":
+					spans = true;
+					System.out.println("- write trees in the binary span format");
+					break;
+				case "--batch-merges":
+					batchMerges = true;
+					System.out.println("- commit all non-overlapping merges of a sentence per safe learning iteration");
+					break;
+				case "--compare-batch":
+					if (i+1 == args.length) {
+						System.out.println("WARNING: no comparison file specified, the modes will not be compared");
+						break;
+					}
+					i += 1;
+					compareFileName = args[i];
+					System.out.println("- compare safe learning modes and write the report to " + compareFileName);
+					break;
+				case "--sweep":
+					if (i+1 == args.length) {
+						System.out.println("WARNING: no configuration file specified, no sweep will be run");
+						break;
+					}
+					i += 1;
+					sweepFileName = args[i];
+					System.out.println("- parse with the configurations in " + sweepFileName);
+					break;
+				case "--checkpoint":
+					if (i+1 == args.length) {
+						System.out.println("WARNING: no checkpoint file specified, no checkpoints will be written");
+						break;
+					}
+					i += 1;
+					checkpointFileName = args[i];
+					System.out.println("- write checkpoints to " + checkpointFileName);
+					break;
+				case "--checkpoint-every":
+					if (i+1 == args.length) {
+						System.out.println("WARNING: no number of iterations specified, default will be used");
+						break;
+					}
+					i += 1;
+					try {
+						checkpointIterations = Integer.parseInt(args[i]);
+						System.out.println("- checkpoint every " + checkpointIterations + " iterations");
+					} catch (NumberFormatException e) {
+						System.out.println("WARNING: invalid number of iterations specified, default will be used");
+					}
+					break;
+				case "--checkpoint-seconds":
+					if (i+1 == args.length) {
+						System.out.println("WARNING: no checkpoint interval specified, default will be used");
+						break;
+					}
+					i += 1;
+					try {
+						checkpointSeconds = Long.parseLong(args[i]);
+						System.out.println("- checkpoint every " + checkpointSeconds + " seconds");
+					} catch (NumberFormatException e) {
+						System.out.println("WARNING: invalid checkpoint interval specified, default will be used");
+					}
+					break;
+				case "--bigram-memory":
+					if (i+1 == args.length) {
+						System.out.println("WARNING: no memory size specified, bigrams will be counted exactly");
+						break;
+					}
+					i += 1;
+					try {
+						bigramMemory = Long.parseLong(args[i]) << 20;
+						System.out.println("- count bigrams approximately in " + args[i] + " MB");
+					} catch (NumberFormatException e) {
+						System.out.println("WARNING: invalid memory size specified, bigrams will be counted exactly");
+					}
+					break;
+				case "--min-freq":
+					if (i+1 == args.length) {
+						System.out.println("WARNING: no frequency specified, no labels will be folded");
+						break;
+					}
+					i += 1;
+					try {
+						minFreq = Integer.parseInt(args[i]);
+						System.out.println("- fold labels seen fewer than " + minFreq + " times");
+					} catch (NumberFormatException e) {
+						System.out.println("WARNING: invalid frequency specified, no labels will be folded");
+					}
+					break;
+				case "--max-labels":
+					if (i+1 == args.length) {
+						System.out.println("WARNING: no number of labels specified, all labels will be kept");
+						break;
+					}
+					i += 1;
+					try {
+						maxLabels = Integer.parseInt(args[i]);
+						System.out.println("- keep at most " + maxLabels + " labels");
+					} catch (NumberFormatException e) {
+						System.out.println("WARNING: invalid number of labels specified, all labels will be kept");
+					}
+					break;
+				case "--update":
+					if (i+1 == args.length) {
+						System.out.println("WARNING: no model file specified, the model will be learned on the input");
+						break;
+					}
+					i += 1;
+					updateFileName = args[i];
+					System.out.println("- add the input to model " + updateFileName);
+					break;
+				case "--store":
+					if (i+1 == args.length) {
+						System.out.println("WARNING: no store file specified, the sentences will be kept on the heap");
+						break;
+					}
+					i += 1;
+					storeFileName = args[i];
+					System.out.println("- keep the sentences in " + storeFileName);
+					break;
+				case "--resume":
+					resume = true;
+					System.out.println("- resume safe learning from the checkpoint");
+					break;
+				case "--deadline":
+					if (i+1 == args.length) {
+						System.out.println("WARNING: no deadline specified, default will be used");
+						break;
+					}
+					i += 1;
+					try {
+						deadline = Long.parseLong(args[i]);
+						System.out.println("- default deadline of " + deadline + " ms per request");
+					} catch (NumberFormatException e) {
+						System.out.println("WARNING: invalid deadline specified, default will be used");
+					}
+					break;
 				}
 			}
 			System.out.println();
 			System.out.println("-----START PARSER-----");
 			
-			Parser parser = new Parser(corpusFileName, usePos);
-			ArrayList<ConstituentTree> parsed = parser.parseCorpus(threshold, onlySafe);		
-			
-			try{
-			    PrintWriter writer = new PrintWriter(outputFileName, "UTF-8");
-			    for (int i = 0; i<parsed.size(); i++) {
-					writer.println(parsed.get(i));
+			if (serve) {
+				serve(outputFileName, modelFileName, trainFileName, usePos, thresholdSet ? threshold : null, threads, deadline);
+				return;
+			}
+			if (sweepFileName != null) {
+				if (trainFileName != null || modelFileName != null || updateFileName != null || compareFileName != null
+						|| checkpointFileName != null || saveModelFileName != null || metricsFileName != null
+						|| storeFileName != null) {
+					System.out.println("WARNING: a sweep only parses the input file and writes its own metrics, other modes and files are ignored");
 				}
-			    writer.close();
-			} catch (IOException e) {
-				e.printStackTrace();
-			}	
+				Sweep sweep = new Sweep(corpusFileName, inputFormat(corpusFileName, false, conllu, xpos),
+						inputFormat(corpusFileName, true, conllu, xpos), sweepFileName);
+				sweep.run(outputFileName, spans, threads);
+				return;
+			}
+			if ((trainFileName != null || modelFileName != null) && onlySafe) {
+				System.out.println("WARNING: only safe learning is not supported when parsing a stream, ignored");
+			}
+			if ((trainFileName != null || modelFileName != null) && compareFileName != null) {
+				System.out.println("WARNING: comparing safe learning modes is not supported when parsing a stream, ignored");
+			}
+			if ((trainFileName != null || modelFileName != null) && updateFileName != null) {
+				System.out.println("WARNING: updating a model is not supported when parsing a stream, ignored");
+			}
+			if (resume && checkpointFileName == null) {
+				System.out.println("WARNING: no checkpoint file specified to resume from, ignored");
+			}
+			if (checkpointFileName != null && checkpointIterations <= 0 && checkpointSeconds <= 0) {
+				checkpointSeconds = 300;
+			}
+			LabelFolding folding = null;
+			if (minFreq > 0 || maxLabels > 0) {
+				folding = new LabelFolding(minFreq, maxLabels);
+			}
+			if (modelFileName != null && folding != null) {
+				System.out.println("WARNING: labels can only be folded when a model is learned, ignored");
+			}
+			if (compareFileName != null && folding != null) {
+				System.out.println("WARNING: folding labels is not supported when comparing safe learning modes, ignored");
+			}
+			SentenceStore store = null;
+			if (storeFileName != null) {
+				if (modelFileName != null || updateFileName != null || compareFileName != null) {
+					System.out.println("WARNING: a sentence store is only used when a model is learned on a corpus, ignored");
+				} else if (folding != null) {
+					System.out.println("WARNING: labels cannot be folded with a sentence store, the sentences will be kept on the heap");
+				} else {
+					store = new SentenceStore(storeFileName);
+				}
+			}
+			Parser parser;
+			CorpusOptions options;
+			if (modelFileName != null) {
+				ModelFile model = new ModelFile(modelFileName);
+				if (!thresholdSet) {
+					threshold = model.getThreshold();
+				}
+				if (model.usesPos() != usePos) {
+					System.out.println("WARNING: the model was learned on " + (model.usesPos() ? "POS tags" : "words") + ", which will be used");
+				}
+				parser = new Parser(model, threads);
+				parser.parseStream(corpusFileName, inputFormat(corpusFileName, model.usesPos(), conllu, xpos),
+						new TreeWriter(outputFileName, spans), threshold);
+			} else if (trainFileName != null) {
+				options = new CorpusOptions(inputFormat(trainFileName, usePos, conllu, xpos));
+				options.setBigramMemory(bigramMemory);
+				options.setFolding(folding);
+				options.setStore(store);
+				parser = new Parser(trainFileName, threads, options);
+				parser.setBatchMerges(batchMerges);
+				checkpoint(parser, checkpointFileName, checkpointIterations, checkpointSeconds, resume, threshold);
+				parser.learn(threshold);
+				if (saveModelFileName != null) {
+					parser.saveModel(saveModelFileName, threshold);
+				}
+				parser.parseStream(corpusFileName, inputFormat(corpusFileName, usePos, conllu, xpos),
+						new TreeWriter(outputFileName, spans), threshold);
+			} else if (updateFileName != null) {
+				ModelFile model = new ModelFile(updateFileName);
+				if (!thresholdSet) {
+					threshold = model.getThreshold();
+				}
+				if (model.usesPos() != usePos) {
+					System.out.println("WARNING: the model was learned on " + (model.usesPos() ? "POS tags" : "words") + ", which will be used");
+				}
+				options = new CorpusOptions(inputFormat(corpusFileName, model.usesPos(), conllu, xpos));
+				options.setFolding(folding);
+				parser = new Parser(model, corpusFileName, threads, options);
+				parser.setBatchMerges(batchMerges);
+				checkpoint(parser, checkpointFileName, checkpointIterations, checkpointSeconds, resume, threshold);
+				parser.parseCorpus(threshold, onlySafe, new TreeWriter(outputFileName, spans));
+				if (saveModelFileName != null) {
+					parser.saveModel(saveModelFileName, threshold);
+				}
+			} else if (compareFileName != null) {
+				MergeComparison comparison = new MergeComparison(corpusFileName, inputFormat(corpusFileName, usePos, conllu, xpos), threads);
+				comparison.parse(!batchMerges, threshold, onlySafe, null).getWorkers().shutdown();
+				parser = comparison.parse(batchMerges, threshold, onlySafe, new TreeWriter(outputFileName, spans));
+				comparison.write(compareFileName);
+				if (saveModelFileName != null) {
+					parser.saveModel(saveModelFileName, threshold);
+				}
+			} else {
+				options = new CorpusOptions(inputFormat(corpusFileName, usePos, conllu, xpos));
+				options.setBigramMemory(bigramMemory);
+				options.setFolding(folding);
+				options.setStore(store);
+				parser = new Parser(corpusFileName, threads, options);
+				parser.setBatchMerges(batchMerges);
+				checkpoint(parser, checkpointFileName, checkpointIterations, checkpointSeconds, resume, threshold);
+				parser.parseCorpus(threshold, onlySafe, new TreeWriter(outputFileName, spans));
+				if (saveModelFileName != null) {
+					parser.saveModel(saveModelFileName, threshold);
+				}
+			}
+			if (metricsFileName != null) {
+				parser.getMetrics().write(metricsFileName);
+			}
+		}
+	}
+	
+	/**
+	 * Returns the format of an input file, CoNLL-U if it is selected by an option, else by the file name.
+	 * 
+	 * @param filename
+	 * @param usePos
+	 * @param conllu
+	 * @param xpos
+	 * @return the format
+	 */
+	private static InputFormat inputFormat(String filename, boolean usePos, boolean conllu, boolean xpos) {
+		if (conllu || xpos) {
+			return InputFormat.conllu(usePos, xpos);
+		}
+		return InputFormat.forFile(filename, usePos);
+	}
+	
+	/**
+	 * Sets up the checkpoints of a parser and resumes from the checkpoint file if it exists.
+	 * 
+	 * @param parser
+	 * @param filename checkpoint file, or null for none
+	 * @param iterations iterations between checkpoints
+	 * @param seconds time between checkpoints
+	 * @param resume
+	 * @param threshold
+	 * @throws IOException
+	 */
+	private static void checkpoint(Parser parser, String filename, int iterations, long seconds, boolean resume,
+			double threshold) throws IOException {
+		if (filename == null) {
+			return;
+		}
+		if (resume) {
+			if (new File(filename).exists()) {
+				parser.resume(filename, threshold);
+			} else {
+				System.out.println("WARNING: no checkpoint " + filename + " found, safe learning starts over");
+			}
+		}
+		parser.setCheckpoint(filename, Math.max(0, iterations), 1000 * Math.max(0, seconds));
+	}
+	
+	/**
+	 * Loads or learns a model and starts a parse server on it.
+	 * 
+	 * @param port
+	 * @param modelFileName model to load, or null
+	 * @param trainFileName corpus to learn the model on if no model file is given
+	 * @param usePos
+	 * @param threshold threshold to use, null for the one of the model (or the default)
+	 * @param threads
+	 * @param deadline default deadline of a request in milliseconds
+	 * @throws IOException
+	 */
+	private static void serve(String port, String modelFileName, String trainFileName, boolean usePos, Double threshold,
+			int threads, long deadline) throws IOException {
+		int portNumber;
+		try {
+			portNumber = Integer.parseInt(port);
+		} catch (NumberFormatException e) {
+			System.out.println("Please specify the port to listen on");
+			return;
+		}
+		Parser parser;
+		if (modelFileName != null) {
+			ModelFile model = new ModelFile(modelFileName);
+			if (threshold == null) {
+				threshold = model.getThreshold();
+			}
+			parser = new Parser(model, threads);
+		} else if (trainFileName != null) {
+			if (threshold == null) {
+				threshold = 0.05;
+			}
+			parser = new Parser(trainFileName, threads, new CorpusOptions(trainFileName, usePos));
+			parser.learn(threshold);
+		} else {
+			System.out.println("Please specify a model (--model) or a training file (--train) to serve");
+			return;
 		}
+		ParseServer server = new ParseServer(new ParseEngine(parser, threshold), portNumber, deadline);
+		server.start();
+		System.out.println("serving on http://localhost:" + server.getPort() + "/parse");
 	}
 }
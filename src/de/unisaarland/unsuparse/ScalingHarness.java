@@ -0,0 +1,322 @@
+package de.unisaarland.unsuparse;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Measures how the whole pipeline scales: it parses generated corpora (see {@link CorpusGenerator})
+ * over a grid of corpus sizes, length distributions, vocabulary sizes, label modes and thread counts,
+ * and writes one CSV row per run with the throughput, the iterations, the time of every phase and
+ * the peak heap use and resident set size.
+ *
+ * Every run is a separate JVM that runs {@link Run} with "--metrics", so that the peak memory belongs
+ * to that run alone; the JVM options of the runs can be given (e.g. -Xmx). The corpus sizes vary
+ * fastest, so consecutive rows with the same other settings form a series. For every row of a series
+ * the exponent of the time per size of the corpus is given, log(time ratio) / log(token ratio) to the
+ * row before, and an exponent above 1.3 is reported as superlinear.
+ */
+public class ScalingHarness {
+	private static final double SUPERLINEAR = 1.3;
+	private static final int COLUMNS = 20;
+	private static final Pattern PHASE = Pattern.compile("\\{\"name\": \"([^\"]*)\", \"ms\": ([0-9.]+)");
+
+	private long[] sentences;
+	private String[] lengths;
+	private int[] vocabularies;
+	private String[] labels; // "words" or "pos"
+	private int[] threads;
+	private String tags;
+	private double zipf;
+	private long seed;
+	private List<String> jvmOptions;
+	private List<String> runOptions;
+	private File dir;
+	private HashMap<String,long[]> corpora; // generated corpus files and their tokens, by settings
+
+	/**
+	 * A harness for corpora of 1,000 to 100,000 sentences of 4 to 40 tokens with 10,000 words,
+	 * parsed on words with one thread.
+	 *
+	 * @param dir directory for the corpora, trees and metrics of the runs
+	 */
+	public ScalingHarness(File dir) {
+		this.sentences = new long[] {1000, 10000, 100000};
+		this.lengths = new String[] {"uniform:4:40"};
+		this.vocabularies = new int[] {10000};
+		this.labels = new String[] {"words"};
+		this.threads = new int[] {1};
+		this.tags = null;
+		this.zipf = 1.0;
+		this.seed = 42;
+		this.jvmOptions = new ArrayList<String>();
+		this.runOptions = new ArrayList<String>();
+		this.dir = dir;
+		this.corpora = new HashMap<String,long[]>();
+	}
+
+	/**
+	 * Reads the grid and the settings from the command line: "--scale &lt;csvFile&gt;" followed by the
+	 * comma-separated lists "--sentences", "--lengths" (see {@link CorpusGenerator#setLengths(String)}),
+	 * "--vocab", "--labels" (words, pos) and "-j", and "--tags", "--zipf", "--seed", "--dir &lt;directory&gt;",
+	 * "--jvm &lt;options&gt;" for the JVMs of the runs and "--options &lt;options&gt;" for every run (e.g. "-s").
+	 *
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void scale(String[] args) throws IOException {
+		String dirName = null;
+		String[] values = new String[args.length];
+		for (int i = 3; i < args.length; i += 2) {
+			values[i-1] = args[i];
+		}
+		for (int i = 2; i < args.length; i += 2) {
+			if (args[i].equals("--dir") && values[i] != null) {
+				dirName = values[i];
+			}
+		}
+		File dir = dirName != null ? new File(dirName) : Files.createTempDirectory("unsuparse-scale").toFile();
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("cannot create directory " + dir);
+		}
+		ScalingHarness harness = new ScalingHarness(dir);
+		for (int i = 2; i < args.length; i += 2) {
+			if (values[i] == null) {
+				System.out.println("WARNING: no value for " + args[i] + " specified, ignored");
+				continue;
+			}
+			String[] list = values[i].split(",");
+			switch (args[i]) {
+			case "--sentences":
+				harness.sentences = new long[list.length];
+				for (int k = 0; k < list.length; k++) {
+					harness.sentences[k] = Long.parseLong(list[k]);
+				}
+				break;
+			case "--lengths":
+				harness.lengths = list;
+				break;
+			case "--vocab":
+				harness.vocabularies = new int[list.length];
+				for (int k = 0; k < list.length; k++) {
+					harness.vocabularies[k] = Integer.parseInt(list[k]);
+				}
+				break;
+			case "--labels":
+				for (String l : list) {
+					if (!l.equals("words") && !l.equals("pos")) {
+						throw new IllegalArgumentException("labels must be words or pos: " + l);
+					}
+				}
+				harness.labels = list;
+				break;
+			case "-j":
+				harness.threads = new int[list.length];
+				for (int k = 0; k < list.length; k++) {
+					harness.threads[k] = Integer.parseInt(list[k]);
+				}
+				break;
+			case "--tags":
+				harness.tags = values[i];
+				break;
+			case "--zipf":
+				harness.zipf = Double.parseDouble(values[i]);
+				break;
+			case "--seed":
+				harness.seed = Long.parseLong(values[i]);
+				break;
+			case "--dir":
+				break;
+			case "--jvm":
+				harness.jvmOptions = Arrays.asList(values[i].trim().split("\\s+"));
+				break;
+			case "--options":
+				harness.runOptions = Arrays.asList(values[i].trim().split("\\s+"));
+				break;
+			default:
+				System.out.println("WARNING: unknown option " + args[i] + ", ignored");
+			}
+		}
+		harness.run(args[1]);
+	}
+
+	/**
+	 * Runs the grid and writes the results.
+	 *
+	 * @param csvFile
+	 * @throws IOException
+	 */
+	public void run(String csvFile) throws IOException {
+		PrintWriter csv = new PrintWriter(csvFile, "UTF-8");
+		try {
+			csv.println("sentences,tokens,uniqueSentences,lengths,vocab,tags,labels,threads,iterations,readMs,statisticsMs,"
+					+ "safeLearningMs,finishingMs,totalMs,wallMs,tokensPerSecond,peakHeapMB,peakRssMB,exponent,status");
+			for (String length : this.lengths) {
+				for (int vocabulary : this.vocabularies) {
+					for (String label : this.labels) {
+						for (int t : this.threads) {
+							long previousTokens = 0;
+							double previousMs = 0;
+							for (long n : this.sentences) {
+								String[] fields = this.run(n, length, vocabulary, label, t);
+								if (fields[COLUMNS-1].equals("ok")) {
+									long tokens = Long.parseLong(fields[1]);
+									double ms = Double.parseDouble(fields[13]);
+									if (previousTokens > 0 && tokens > previousTokens && previousMs > 0) {
+										double e = Math.log(ms / previousMs) / Math.log(tokens / (double) previousTokens);
+										fields[COLUMNS-2] = String.format(Locale.ROOT, "%.2f", e);
+										if (e > SUPERLINEAR) {
+											System.out.println("WARNING: time grows superlinearly (exponent " + fields[COLUMNS-2] + ") from "
+													+ previousTokens + " to " + tokens + " tokens with lengths " + length + ", " + vocabulary
+													+ " words, " + label + ", " + t + " threads");
+										}
+									}
+									previousTokens = tokens;
+									previousMs = ms;
+								}
+								StringBuilder sb = new StringBuilder();
+								for (int k = 0; k < fields.length; k++) {
+									sb.append(k > 0 ? "," : "").append(fields[k]);
+								}
+								csv.println(sb);
+								csv.flush();
+							}
+						}
+					}
+				}
+			}
+		} finally {
+			csv.close();
+			for (String name : this.corpora.keySet()) {
+				new File(name).delete();
+			}
+		}
+	}
+
+	/**
+	 * Parses a generated corpus in a new JVM.
+	 *
+	 * @return the fields of the CSV row, without the exponent
+	 * @throws IOException
+	 */
+	private String[] run(long n, String length, int vocabulary, String label, int t) throws IOException {
+		File corpus = new File(this.dir, "corpus-" + n + "-" + length.replace(':', '_') + "-" + vocabulary + ".txt");
+		long[] tokens = this.corpora.get(corpus.getPath());
+		if (tokens == null) {
+			CorpusGenerator generator = new CorpusGenerator(this.seed);
+			if (this.tags != null) {
+				generator.setTags(this.tags);
+			}
+			generator.setVocabulary(vocabulary, this.zipf);
+			generator.setLengths(length);
+			tokens = new long[] {generator.write(corpus.getPath(), n)};
+			this.corpora.put(corpus.getPath(), tokens);
+		}
+		File trees = new File(this.dir, "trees.txt");
+		File metrics = new File(this.dir, "metrics.json");
+		File log = new File(this.dir, "run-" + n + "-" + length.replace(':', '_') + "-" + vocabulary + "-" + label + "-" + t + ".log");
+		metrics.delete();
+
+		ArrayList<String> command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		command.addAll(this.jvmOptions);
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(Run.class.getName());
+		command.add(corpus.getPath());
+		command.add(trees.getPath());
+		if (label.equals("pos")) {
+			command.add("-p");
+		}
+		command.add("-j");
+		command.add(Integer.toString(t));
+		command.add("--metrics");
+		command.add(metrics.getPath());
+		command.addAll(this.runOptions);
+		System.out.println("- " + n + " sentences, " + tokens[0] + " tokens, lengths " + length + ", " + vocabulary + " words, "
+				+ label + ", " + t + " threads");
+
+		long start = System.nanoTime();
+		int exit;
+		Process process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log).start();
+		try {
+			exit = process.waitFor();
+		} catch (InterruptedException e) {
+			process.destroy();
+			throw new IOException("interrupted while parsing " + corpus);
+		}
+		long wallNanos = System.nanoTime() - start;
+		trees.delete();
+
+		String[] fields = new String[COLUMNS];
+		Arrays.fill(fields, "");
+		fields[0] = Long.toString(n);
+		fields[1] = Long.toString(tokens[0]);
+		fields[3] = length;
+		fields[4] = Integer.toString(vocabulary);
+		fields[5] = this.tags != null ? this.tags.replace(',', ' ') : "";
+		fields[6] = label;
+		fields[7] = Integer.toString(t);
+		fields[14] = millis(wallNanos);
+		if (exit != 0 || !metrics.exists()) {
+			System.out.println("WARNING: the run failed with exit code " + exit + ", see " + log);
+			fields[COLUMNS-1] = "failed";
+			return fields;
+		}
+		log.delete();
+		String json = new String(Files.readAllBytes(metrics.toPath()), Charset.forName("UTF-8"));
+		metrics.delete();
+		HashMap<String,Double> phases = new HashMap<String,Double>();
+		double total = 0;
+		Matcher m = PHASE.matcher(json);
+		while (m.find()) {
+			// "finishing" or "finishing and writing"
+			String name = m.group(1).startsWith("finishing") ? "finishing" : m.group(1);
+			double ms = Double.parseDouble(m.group(2));
+			phases.put(name, (phases.containsKey(name) ? phases.get(name) : 0) + ms);
+			total += ms;
+		}
+		fields[2] = Long.toString(number(json, "uniqueSentences"));
+		fields[8] = Long.toString(number(json, "iterations"));
+		fields[9] = phase(phases, "read corpus");
+		fields[10] = phase(phases, "statistics");
+		fields[11] = phase(phases, "safe learning");
+		fields[12] = phase(phases, "finishing");
+		fields[13] = String.format(Locale.ROOT, "%.3f", total);
+		fields[15] = total > 0 ? String.format(Locale.ROOT, "%.0f", tokens[0] / (total / 1000)) : "";
+		fields[16] = megabytes(number(json, "peakHeapBytes"));
+		fields[17] = megabytes(number(json, "peakRssBytes"));
+		fields[COLUMNS-1] = "ok";
+		return fields;
+	}
+
+	/**
+	 * @return the first number of the key in a JSON text, -1 if there is none
+	 */
+	private static long number(String json, String key) {
+		Matcher m = Pattern.compile("\"" + key + "\": (-?[0-9]+)").matcher(json);
+		return m.find() ? Long.parseLong(m.group(1)) : -1;
+	}
+
+	private static String phase(HashMap<String,Double> phases, String name) {
+		return phases.containsKey(name) ? String.format(Locale.ROOT, "%.3f", phases.get(name)) : "";
+	}
+
+	private static String millis(long nanos) {
+		return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+	}
+
+	private static String megabytes(long bytes) {
+		return bytes >= 0 ? String.format(Locale.ROOT, "%.1f", bytes / (double) (1 << 20)) : "";
+	}
+
+}
@@ -1,69 +1,353 @@
 package de.unisaarland.unsuparse;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * Defines a sentence in a corpus.
  * 
+ * The parse state is kept in arrays instead of a graph of ConstituentTree objects.
+ * Nodes 0 to tokens-1 are the words, every merge adds a node whose children are linked
+ * by firstChild/lastChild/nextSibling and which spans the tokens nodeStart to nodeEnd-1.
+ * The current constituents of the sentence are the nodes in top. Texts are only built
+ * when a ConstituentTree of the sentence is printed.
+ * 
  * @author Julia Dembowski
  *
  */
 public class Sentence {
-	private ArrayList<ConstituentTree> constituents;
+	private Label[] labels; // label of every token
+	private String[] words; // text of every token
+	private int tokens; // number of tokens
+	private int[] top; // nodes of the current constituents in order
+	private int length; // number of current constituents
+	private int[] nodeStart; // first token of every node
+	private int[] nodeEnd; // last token+1 of every node
+	private int[] firstChild; // -1 for words
+	private int[] lastChild;
+	private int[] nextSibling; // -1 for the last child
+	private int nodes; // number of nodes, 0 until the first merge
+	private BoundaryScores scores; // separation values of the boundaries, null if not scored yet
+	private long scoredAt; // preference version of the vocabulary when the scores were last updated
 
 	public Sentence() {
-		this.constituents = new ArrayList<ConstituentTree>();
+		this(16);
+	}
+	
+	/**
+	 * @param capacity expected number of words
+	 */
+	public Sentence(int capacity) {
+		capacity = Math.max(1, capacity);
+		this.labels = new Label[capacity];
+		this.words = new String[capacity];
+		this.tokens = 0;
+		this.top = new int[capacity];
+		this.length = 0;
+		this.nodes = 0;
+		this.scores = null;
+		this.scoredAt = -1;
+	}
+	
+	/**
+	 * Creates a sentence of the given words without any merges.
+	 */
+	private Sentence(Label[] labels, String[] words, int tokens) {
+		this.labels = labels;
+		this.words = words;
+		this.tokens = tokens;
+		this.top = new int[Math.max(1, tokens)];
+		for (int t = 0; t < tokens; t++) {
+			this.top[t] = t;
+		}
+		this.length = tokens;
+		this.nodes = 0;
+		this.scores = null;
+		this.scoredAt = -1;
+	}
+	
+	/**
+	 * Returns a copy of the words of the sentence, without its merges, with the labels of another
+	 * vocabulary that uses the same ids (see {@link Vocabulary#fork()}). The texts of the words are
+	 * shared, the parse state of the copy is created when it is first merged.
+	 * 
+	 * @param vocab
+	 * @return the copy
+	 */
+	public Sentence copy(Vocabulary vocab) {
+		Label[] copied = new Label[this.tokens];
+		for (int t = 0; t < this.tokens; t++) {
+			copied[t] = vocab.label(this.labels[t].getId());
+		}
+		return new Sentence(copied, this.words, this.tokens);
 	}
 	
 	public void addWord(Label label, String word) {
-		this.constituents.add(new ConstituentTree(label, word));
+		if (this.tokens == this.labels.length) {
+			this.labels = Arrays.copyOf(this.labels, this.tokens*2);
+			this.words = Arrays.copyOf(this.words, this.tokens*2);
+			this.top = Arrays.copyOf(this.top, this.tokens*2);
+		}
+		this.labels[this.tokens] = label;
+		this.words[this.tokens] = word;
+		this.top[this.length] = this.tokens;
+		this.tokens += 1;
+		this.length += 1;
 	}
 	
+	/**
+	 * @return number of current constituents
+	 */
 	public int length() {
-		return this.constituents.size();
+		return this.length;
 	}
 	
-	public ArrayList<ConstituentTree> getConstituents() {
-		return this.constituents;
+	/**
+	 * @return number of words
+	 */
+	public int tokens() {
+		return this.tokens;
 	}
 	
-	public void setConstituents(ArrayList<ConstituentTree> constituents) {
-		this.constituents = constituents;
+	/**
+	 * @param i
+	 * @return first label of the i-th constituent
+	 */
+	public Label firstLabel(int i) {
+		return this.labels[this.start(this.top[i])];
+	}
+	
+	/**
+	 * @param i
+	 * @return last label of the i-th constituent
+	 */
+	public Label lastLabel(int i) {
+		return this.labels[this.end(this.top[i])-1];
+	}
+	
+	/**
+	 * @param i
+	 * @return first token of the i-th constituent
+	 */
+	public int constituentStart(int i) {
+		return this.start(this.top[i]);
+	}
+	
+	/**
+	 * @param i
+	 * @return last token+1 of the i-th constituent
+	 */
+	public int constituentEnd(int i) {
+		return this.end(this.top[i]);
+	}
+	
+	/**
+	 * @param token
+	 * @return index of the constituent starting at the token, -1 if none does
+	 */
+	public int constituentAt(int token) {
+		int lo = 0;
+		int hi = this.length - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			int start = this.start(this.top[mid]);
+			if (start < token) {
+				lo = mid + 1;
+			} else if (start > token) {
+				hi = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+	
+	public Label getLabel(int token) {
+		return this.labels[token];
+	}
+	
+	public String getWord(int token) {
+		return this.words[token];
+	}
+	
+	public BoundaryScores getScores() {
+		return this.scores;
+	}
+	
+	public void setScores(BoundaryScores scores) {
+		this.scores = scores;
+	}
+	
+	public long getScoredAt() {
+		return this.scoredAt;
+	}
+	
+	public void setScoredAt(long scoredAt) {
+		this.scoredAt = scoredAt;
 	}
 	
 	/**
 	 * Performs a merge with the specified Merge object on the sentence.
-	 * If safe learning is active, the merged constituent is flattened before it is added.
+	 * If safe learning is active, the merged constituent is flattened, i.e. the children
+	 * of the merged constituents become the children of the new one.
+	 * Updating the preference counters of the labels is left to the caller.
+	 * The boundaries inside the merged constituent are removed from the scores and the
+	 * boundaries whose long-distance window contains the new constituent are marked stale.
 	 * 
 	 * @param m
 	 * @param safe
 	 */
 	public void merge(Merge m, boolean safe) {
-		int index = m.getIndex();
-		for (int i = 0; i < m.length(); i++) {
-			this.constituents.remove(index);
+		this.merge(m.getIndex(), safe);
+	}
+	
+	/**
+	 * Merges the constituents index and index+1, see {@link #merge(Merge, boolean)}.
+	 * 
+	 * @param index
+	 * @param safe
+	 */
+	public void merge(int index, boolean safe) {
+		int length = 2;
+		int n = this.newNode(this.start(this.top[index]), this.end(this.top[index + length - 1]));
+		for (int i = index; i < index + length; i++) {
+			int c = this.top[i];
+			if (safe && this.firstChild[c] >= 0) {
+				this.append(n, this.firstChild[c], this.lastChild[c]);
+			} else {
+				this.append(n, c, c);
+			}
 		}
-		ConstituentTree newCons = m.getCons();
-		if (safe) {
-			newCons.flatten();
-			newCons.getFirstLabel().incrementF();
-			newCons.getLastLabel().incrementL();
+		this.top[index] = n;
+		System.arraycopy(this.top, index + length, this.top, index + 1, this.length - index - length);
+		this.length -= length - 1;
+		
+		if (this.scores != null) {
+			for (int i = 1; i < length; i++) {
+				this.scores.remove(this.scores.select(index));
+			}
+			for (int i = index; i <= index + Parser.WINDOW && i < this.scores.size(); i++) {
+				this.scores.markStale(this.scores.select(i));
+			}
 		}
-		this.constituents.add(index, newCons);
 	}
 	
 	/**
-	 * @return last constituent of the sentence
+	 * Returns the parse tree of the sentence. If the sentence does not consist of a single
+	 * merged constituent, its constituents are first put under a new root.
+	 * 
+	 * @return parse tree
 	 */
-	public ConstituentTree getLast() {
-		if (this.constituents.size() == 0) {
+	public ConstituentTree tree() {
+		if (this.length != 1 || this.isWord(this.top[0])) {
+			int root = this.newNode(0, this.tokens);
+			for (int i = 0; i < this.length; i++) {
+				this.append(root, this.top[i], this.top[i]);
+			}
+			this.top[0] = root;
+			this.length = 1;
+			this.scores = null;
+		}
+		return new ConstituentTree(this, this.top[0]);
+	}
+	
+	/**
+	 * Returns the parse tree of another sentence with the same labels over the words of this sentence,
+	 * so that sentences with the same label sequence are parsed only once. The parse state is shared
+	 * with the other sentence, so neither sentence may be merged afterwards.
+	 * 
+	 * @param parsed a sentence with the same labels that is parsed
+	 * @return ConstituentTree of this sentence
+	 */
+	public ConstituentTree projectTree(Sentence parsed) {
+		int root = parsed.tree().getNode();
+		this.nodeStart = parsed.nodeStart;
+		this.nodeEnd = parsed.nodeEnd;
+		this.firstChild = parsed.firstChild;
+		this.lastChild = parsed.lastChild;
+		this.nextSibling = parsed.nextSibling;
+		this.nodes = parsed.nodes;
+		this.top[0] = root;
+		this.length = 1;
+		this.scores = null;
+		return new ConstituentTree(this, root);
+	}
+	
+	/**
+	 * @return text of the last word, null if the sentence is empty
+	 */
+	public String getLastWord() {
+		if (this.tokens == 0) {
 			return null;
 		} else {
-			return this.constituents.get(this.constituents.size()-1);
+			return this.words[this.tokens-1];
 		}
 	}
 	
+	/**
+	 * Removes the last word. Only possible before the first merge.
+	 */
 	public void removeLast() {
-		this.constituents.remove(this.constituents.size()-1);
+		this.tokens -= 1;
+		this.length -= 1;
+		this.labels[this.tokens] = null;
+		this.words[this.tokens] = null;
+	}
+	
+	// nodes
+	
+	boolean isWord(int node) {
+		return node < this.tokens;
+	}
+	
+	int start(int node) {
+		return this.isWord(node) ? node : this.nodeStart[node];
+	}
+	
+	int end(int node) {
+		return this.isWord(node) ? node+1 : this.nodeEnd[node];
+	}
+	
+	int firstChild(int node) {
+		return this.isWord(node) ? -1 : this.firstChild[node];
+	}
+	
+	int nextSibling(int node) {
+		return this.nodes == 0 ? -1 : this.nextSibling[node];
+	}
+	
+	/**
+	 * Adds a node without children. A sentence of n words has at most n-1 merges
+	 * and one root, so the node arrays are allocated once.
+	 */
+	private int newNode(int start, int end) {
+		if (this.nodes == 0) {
+			int capacity = 2 * this.tokens;
+			this.nodeStart = new int[capacity];
+			this.nodeEnd = new int[capacity];
+			this.firstChild = new int[capacity];
+			this.lastChild = new int[capacity];
+			this.nextSibling = new int[capacity];
+			Arrays.fill(this.firstChild, -1);
+			Arrays.fill(this.nextSibling, -1);
+			this.nodes = this.tokens;
+		}
+		int n = this.nodes;
+		this.nodeStart[n] = start;
+		this.nodeEnd[n] = end;
+		this.nodes += 1;
+		return n;
+	}
+	
+	/**
+	 * Appends the sibling chain first..last to the children of the node.
+	 */
+	private void append(int node, int first, int last) {
+		if (this.firstChild[node] < 0) {
+			this.firstChild[node] = first;
+		} else {
+			this.nextSibling[this.lastChild[node]] = first;
+		}
+		this.lastChild[node] = last;
+		this.nextSibling[last] = -1;
 	}
 }
@@ -0,0 +1,167 @@
+package de.unisaarland.unsuparse;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Reads the sentences of a file one at a time, for parsing input that does not fit into memory.
+ * Lines are tokenized the same way as when a Corpus is built, in the default format or CoNLL-U
+ * (see {@link InputFormat}). The labels are looked up in the vocabulary of the model; labels not
+ * seen in training get the class they would have been folded into (see {@link LabelFolding}) if
+ * the model has it and share the unknown label otherwise.
+ */
+public class SentenceReader {
+	private BufferedReader br;
+	private InputFormat format;
+	private Vocabulary vocab;
+	private Label unknown;
+
+	/**
+	 * @param br the reader to read from, or null if only {@link #sentence(List)} is used
+	 * @param usePos
+	 * @param vocab the vocabulary of the model
+	 */
+	public SentenceReader(BufferedReader br, boolean usePos, Vocabulary vocab) {
+		this(br, InputFormat.plain(usePos), vocab);
+	}
+
+	/**
+	 * @param br the reader to read from, or null if only {@link #sentence(List)} is used
+	 * @param format format of the lines
+	 * @param vocab the vocabulary of the model
+	 */
+	public SentenceReader(BufferedReader br, InputFormat format, Vocabulary vocab) {
+		this.br = br;
+		this.format = format;
+		this.vocab = vocab;
+		this.unknown = vocab.label(vocab.find(Vocabulary.UNKNOWN));
+	}
+
+	/**
+	 * Returns the next sentence, without a final punctuation mark.
+	 *
+	 * @return sentence, or null at the end of the file
+	 * @throws IOException
+	 */
+	public Sentence next() throws IOException {
+		Sentence s = new Sentence();
+		String line;
+		while ((line = this.br.readLine()) != null) {
+			if (line.equals("")) { // end of sentence
+				if (this.endSentence(s)) {
+					return s;
+				}
+			} else {
+				this.addToken(s, line);
+			}
+		}
+		if (this.endSentence(s)) {
+			return s;
+		}
+		return null;
+	}
+
+	/**
+	 * Creates a sentence from a list of tokens, every token given as a line of the input format.
+	 * 
+	 * @param lines
+	 * @return sentence without a final punctuation mark, or null if it is empty
+	 */
+	public Sentence sentence(List<String> lines) {
+		Sentence s = new Sentence();
+		for (String line : lines) {
+			this.addToken(s, line);
+		}
+		if (this.endSentence(s)) {
+			return s;
+		}
+		return null;
+	}
+	
+	/**
+	 * Adds the token in a line of the input format to the sentence.
+	 * 
+	 * @param s
+	 * @param line
+	 */
+	private void addToken(Sentence s, String line) {
+		String trimmed = line.trim();
+		String word = null;
+		String labelName = null;
+		int last = Math.max(this.format.getWordColumn(), this.format.getLabelColumn());
+		int pos = 0;
+		for (int col = 0; col <= last; col++) {
+			if (col > 0) {
+				pos = this.fieldStart(trimmed, pos);
+				if (pos == trimmed.length()) {
+					throw new IllegalArgumentException("missing column " + (last+1) + " in line: " + line);
+				}
+			}
+			int end = this.fieldEnd(trimmed, pos);
+			String field = trimmed.substring(pos, end);
+			if (col == 0 && this.format.skip(field)) {
+				return;
+			}
+			if (col == this.format.getWordColumn()) {
+				word = field;
+			}
+			if (col == this.format.getLabelColumn()) {
+				labelName = field;
+			}
+			pos = end;
+		}
+		int id = this.vocab.find(labelName);
+		if (id < 0) {
+			// the model may have folded rare labels into classes, see LabelFolding
+			id = this.vocab.find(LabelFolding.classOf(labelName));
+		}
+		s.addWord(id < 0 ? this.unknown : this.vocab.label(id), word);
+	}
+
+	/**
+	 * Removes a final punctuation mark from the sentence.
+	 *
+	 * @param s
+	 * @return true if the sentence is not empty
+	 */
+	private boolean endSentence(Sentence s) {
+		String prev = s.getLastWord();
+		if (prev != null && CorpusChunk.isPunct(prev)) {
+			s.removeLast();
+		}
+		return s.length() > 0;
+	}
+
+	private static boolean isSpace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+	}
+
+	/**
+	 * Returns the end of the column starting at pos. CoNLL-U columns end at tabs only.
+	 */
+	private int fieldEnd(String line, int pos) {
+		while (pos < line.length() && !(this.format.isConllu() ? line.charAt(pos) == '\t' : isSpace(line.charAt(pos)))) {
+			pos += 1;
+		}
+		return pos;
+	}
+
+	/**
+	 * Returns the start of the column after the one ending at pos.
+	 */
+	private int fieldStart(String line, int pos) {
+		if (this.format.isConllu()) {
+			return Math.min(pos + 1, line.length());
+		}
+		while (pos < line.length() && isSpace(line.charAt(pos))) {
+			pos += 1;
+		}
+		return pos;
+	}
+
+	public void close() throws IOException {
+		this.br.close();
+	}
+
+}
@@ -0,0 +1,340 @@
+package de.unisaarland.unsuparse;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.Arrays;
+
+/**
+ * Keeps the sentences of a corpus in a memory-mapped file instead of on the heap, so that the
+ * corpus can be larger than the heap (and the main memory). For every sentence the file holds the
+ * label ids and the words of its tokens and, one byte per token, whether a constituent starts at
+ * the token. Safe merges are flattened, so these bytes are the whole parse state of a sentence
+ * during safe learning (as in a {@link Checkpoint}).
+ *
+ * The sentences are appended while the corpus is read, then the file is mapped and the store is
+ * a list of the sentences. get returns a new Sentence with the constituents of the stored one,
+ * merging it does not change the store until it is written back with set. Sentences are read by
+ * the page cache of the operating system when they are needed, so learning is fastest if the
+ * sentences are visited in order. Views of the store contain some of its sentences, or leave out
+ * the words of the sentences if only their labels are needed.
+ *
+ * Layout of a sentence (little-endian): tokens, wordBytes, int labels[tokens], byte starts[tokens]
+ * and the UTF-8 words, each followed by '\n'. The file is deleted when the program ends.
+ */
+public class SentenceStore extends AbstractList<Sentence> {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final long SEGMENT_SIZE = 1L << 30; // mapped buffers are limited to 2GB
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	private String filename;
+	private FileChannel channel;
+	private ByteBuffer buffer; // sentences that are not written yet, null once the file is mapped
+	private long fileSize;
+	private long[] offsets; // file offset of every sentence
+	private int count; // number of sentences in the file
+	private int maxSize; // size of the largest sentence in bytes
+	private MappedByteBuffer[] segments; // segment k maps the file from k*SEGMENT_SIZE on, with maxSize bytes more
+	private Vocabulary vocab;
+	private int[] indices; // sentences of this view, null for all
+	private boolean words; // false if the sentences of this view are read without their words
+
+	/**
+	 * Creates an empty store in a new file, which replaces an existing one.
+	 *
+	 * @param filename
+	 * @throws IOException
+	 */
+	public SentenceStore(String filename) throws IOException {
+		File file = new File(filename);
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.setLength(0);
+		file.deleteOnExit();
+		this.filename = filename;
+		this.channel = raf.getChannel();
+		this.buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		this.fileSize = 0;
+		this.offsets = new long[1024];
+		this.count = 0;
+		this.maxSize = 0;
+		this.indices = null;
+		this.words = true;
+	}
+
+	/**
+	 * Creates a view of a store, see {@link #view(int[], boolean)}.
+	 */
+	private SentenceStore(SentenceStore base, int[] indices, boolean words) {
+		this.filename = base.filename;
+		this.channel = base.channel;
+		this.fileSize = base.fileSize;
+		this.offsets = base.offsets;
+		this.count = base.count;
+		this.maxSize = base.maxSize;
+		this.segments = base.segments;
+		this.vocab = base.vocab;
+		this.indices = indices;
+		this.words = words;
+	}
+
+	/**
+	 * Appends a sentence without merges.
+	 *
+	 * @param labels label id of every token
+	 * @param words text of every token
+	 * @param tokens number of tokens
+	 * @throws IOException
+	 */
+	public void append(int[] labels, String[] words, int tokens) throws IOException {
+		if (this.buffer == null) {
+			throw new IllegalStateException("sentences cannot be added once the store is opened");
+		}
+		byte[][] bytes = new byte[tokens][];
+		long size = 8 + 5L * tokens;
+		for (int t = 0; t < tokens; t++) {
+			bytes[t] = words[t].getBytes(UTF8);
+			size += bytes[t].length + 1;
+		}
+		if (size > SEGMENT_SIZE) {
+			throw new IOException("sentence of " + tokens + " tokens too long for the sentence store");
+		}
+		if (this.buffer.remaining() < size) {
+			this.flush();
+			if (this.buffer.capacity() < size) {
+				this.buffer = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+			}
+		}
+		if (this.count == this.offsets.length) {
+			this.offsets = Arrays.copyOf(this.offsets, 2*this.count);
+		}
+		this.offsets[this.count] = this.fileSize + this.buffer.position();
+		this.count += 1;
+		this.maxSize = Math.max(this.maxSize, (int) size);
+		this.buffer.putInt(tokens);
+		this.buffer.putInt((int) (size - 8 - 5L * tokens));
+		for (int t = 0; t < tokens; t++) {
+			this.buffer.putInt(labels[t]);
+		}
+		for (int t = 0; t < tokens; t++) {
+			this.buffer.put((byte) 1);
+		}
+		for (int t = 0; t < tokens; t++) {
+			this.buffer.put(bytes[t]);
+			this.buffer.put((byte) '\n');
+		}
+	}
+
+	/**
+	 * Writes the buffered sentences to the file.
+	 */
+	private void flush() throws IOException {
+		this.buffer.flip();
+		while (this.buffer.hasRemaining()) {
+			this.fileSize += this.channel.write(this.buffer, this.fileSize);
+		}
+		this.buffer.clear();
+	}
+
+	/**
+	 * Writes the remaining sentences and maps the file. Afterwards no sentences can be added,
+	 * and the sentences can be read and their constituents written.
+	 *
+	 * @param vocab the vocabulary of the label ids
+	 * @throws IOException
+	 */
+	public void open(Vocabulary vocab) throws IOException {
+		this.flush();
+		this.buffer = null;
+		this.vocab = vocab;
+		this.offsets = Arrays.copyOf(this.offsets, this.count);
+		this.segments = new MappedByteBuffer[(int) ((this.fileSize + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+		for (int k = 0; k < this.segments.length; k++) {
+			long start = k * SEGMENT_SIZE;
+			long end = Math.min(this.fileSize, start + SEGMENT_SIZE + this.maxSize);
+			this.segments[k] = this.channel.map(FileChannel.MapMode.READ_WRITE, start, end - start);
+			this.segments[k].order(ByteOrder.LITTLE_ENDIAN);
+		}
+	}
+
+	/**
+	 * Returns a view of some of the sentences, which shares the file with this store.
+	 *
+	 * @param indices sentences of the view in the store, in order, or null for all
+	 * @param words false to read the sentences of the view without their words
+	 * @return the view
+	 */
+	public SentenceStore view(int[] indices, boolean words) {
+		return new SentenceStore(this, indices, words);
+	}
+
+	/**
+	 * @return size of the file in bytes
+	 */
+	public long getFileSize() {
+		return this.fileSize;
+	}
+
+	@Override
+	public int size() {
+		return this.indices != null ? this.indices.length : this.count;
+	}
+
+	private long offset(int i) {
+		return this.offsets[this.indices != null ? this.indices[i] : i];
+	}
+
+	private MappedByteBuffer segment(long offset) {
+		return this.segments[(int) (offset / SEGMENT_SIZE)];
+	}
+
+	/**
+	 * @param i
+	 * @return number of tokens of sentence i
+	 */
+	public int tokens(int i) {
+		long offset = this.offset(i);
+		return this.segment(offset).getInt((int) (offset % SEGMENT_SIZE));
+	}
+
+	/**
+	 * @param i
+	 * @return number of current constituents of sentence i
+	 */
+	public int length(int i) {
+		long offset = this.offset(i);
+		MappedByteBuffer b = this.segment(offset);
+		int p = (int) (offset % SEGMENT_SIZE);
+		int tokens = b.getInt(p);
+		int starts = p + 8 + 4*tokens;
+		int length = 0;
+		for (int t = 0; t < tokens; t++) {
+			length += b.get(starts + t);
+		}
+		return length;
+	}
+
+	/**
+	 * Returns a new Sentence with the labels, words and constituents of sentence i.
+	 *
+	 * @param i
+	 * @return the sentence
+	 */
+	@Override
+	public Sentence get(int i) {
+		return this.get(i, i);
+	}
+
+	/**
+	 * Returns a new Sentence with the labels and words of sentence i and the constituents of another
+	 * sentence with the same labels.
+	 *
+	 * @param i
+	 * @param like sentence with the same labels
+	 * @return the sentence
+	 */
+	public Sentence get(int i, int like) {
+		long offset = this.offset(i);
+		MappedByteBuffer b = this.segment(offset);
+		int p = (int) (offset % SEGMENT_SIZE);
+		int tokens = b.getInt(p);
+		Sentence s = new Sentence(tokens);
+		int labels = p + 8;
+		int wordStart = p + 8 + 5*tokens;
+		byte[] bytes = null;
+		if (this.words) {
+			bytes = new byte[b.getInt(p + 4)];
+			ByteBuffer words = b.duplicate(); // the position of the shared buffer is never changed
+			words.position(wordStart);
+			words.get(bytes);
+		}
+		int from = 0;
+		for (int t = 0; t < tokens; t++) {
+			String word = null;
+			if (bytes != null) {
+				int to = from;
+				while (bytes[to] != '\n') {
+					to += 1;
+				}
+				word = new String(bytes, from, to - from, UTF8);
+				from = to + 1;
+			}
+			s.addWord(this.vocab.label(b.getInt(labels + 4*t)), word);
+		}
+
+		if (like != i) {
+			offset = this.offset(like);
+			b = this.segment(offset);
+			p = (int) (offset % SEGMENT_SIZE);
+		}
+		// merge every constituent from its first token on, constituents left of it are done already
+		int starts = p + 8 + 4*tokens;
+		int index = 0;
+		for (int t = 1; t <= tokens; t++) {
+			if (t == tokens || b.get(starts + t) != 0) {
+				while (s.constituentEnd(index) < t) {
+					s.merge(index, true);
+				}
+				index += 1;
+			}
+		}
+		return s;
+	}
+
+	/**
+	 * Writes the constituents of a sentence that was read with get and merged to the store.
+	 * Sentences merged with unsafe merges cannot be written.
+	 *
+	 * @param i
+	 * @param s sentence i
+	 * @return null, the sentence before is not read
+	 */
+	@Override
+	public Sentence set(int i, Sentence s) {
+		long offset = this.offset(i);
+		MappedByteBuffer b = this.segment(offset);
+		int p = (int) (offset % SEGMENT_SIZE);
+		int tokens = b.getInt(p);
+		int starts = p + 8 + 4*tokens;
+		int index = 0;
+		for (int t = 0; t < tokens; t++) {
+			boolean start = index < s.length() && s.constituentStart(index) == t;
+			if (start) {
+				index += 1;
+			}
+			b.put(starts + t, (byte) (start ? 1 : 0));
+		}
+		return null;
+	}
+
+	/**
+	 * Returns whether the preference value of the first or last label of a constituent of sentence i
+	 * changed after the given version of the vocabulary.
+	 *
+	 * @param i
+	 * @param version see {@link Vocabulary#getPrefVersion()}
+	 * @return true if the preference value of such a label changed
+	 */
+	public boolean prefChangedSince(int i, long version) {
+		long offset = this.offset(i);
+		MappedByteBuffer b = this.segment(offset);
+		int p = (int) (offset % SEGMENT_SIZE);
+		int tokens = b.getInt(p);
+		int labels = p + 8;
+		int starts = p + 8 + 4*tokens;
+		for (int t = 0; t < tokens; t++) {
+			boolean first = b.get(starts + t) != 0;
+			boolean last = t+1 == tokens || b.get(starts + t + 1) != 0;
+			if ((first || last) && this.vocab.prefChangedSince(b.getInt(labels + 4*t), version)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,209 @@
+package de.unisaarland.unsuparse;
+
+/**
+ * Holds the significance values of a corpus. The label frequencies do not change
+ * once the corpus is built, so the log-likelihood values are computed once here
+ * and afterwards only looked up during parsing.
+ *
+ * Unseen bigrams are not stored. Their significance is computed from the smoothed
+ * frequency UNSEEN, but all terms of it that depend on one label only are computed
+ * once per label, so only the term of the whole sum needs a logarithm. If bigrams
+ * are counted in a sketch, the bigrams that are not heavy hitters need three more,
+ * for the terms with their estimated frequency. (Caching these values by label pair
+ * was slower: the pairs looked up during learning are too many for a small cache.)
+ */
+public class Statistics {
+	private static final double UNSEEN = 0.1; // smoothed frequency of an unseen bigram
+
+	private double size; // number of tokens in the corpus
+	private double sentenceCount; // number of sentences in the corpus
+	private Vocabulary vocab;
+	private double[] sigBegin; // begin significance by label id
+	private double[] sigEnd; // end significance by label id
+	private double[] sigBigrams; // bigram significance by slot of the bigram table
+	// terms of sig(UNSEEN, f1, f2, size): UNSEEN*ln(UNSEEN), size*ln(size) and by label id
+	// f*ln(f), (UNSEEN+f)*ln(UNSEEN+f) and (f+size)*ln(f+size)
+	private double unseenLogUnseen;
+	private double sizeLogSize;
+	private double[] fLogF;
+	private double[] unseenLog;
+	private double[] sizeLog;
+
+	/**
+	 * Computes the begin, end and bigram significance values of all labels in the corpus.
+	 *
+	 * @param corpus
+	 */
+	public Statistics(Corpus corpus) {
+		this(corpus.getVocabulary(), corpus.getSize(), corpus.getSentenceCount());
+	}
+	
+	/**
+	 * Computes the begin, end and bigram significance values of all labels in the vocabulary.
+	 *
+	 * @param vocab
+	 * @param size number of tokens
+	 * @param sentenceCount number of sentences
+	 */
+	public Statistics(Vocabulary vocab, int size, int sentenceCount) {
+		this.size = size;
+		this.sentenceCount = sentenceCount;
+		this.vocab = vocab;
+		int n = this.vocab.size();
+		this.sigBegin = new double[n];
+		this.sigEnd = new double[n];
+		for (int id = 0; id < n; id++) {
+			this.sigBegin[id] = sig(this.vocab.getStartFreq(id), this.sentenceCount, this.vocab.getFreq(id), this.size);
+			this.sigEnd[id] = sig(this.vocab.getEndFreq(id), this.sentenceCount, this.vocab.getFreq(id), this.size);
+		}
+		BigramTable bigrams = this.vocab.getBigrams();
+		this.sigBigrams = new double[bigrams.capacity()];
+		for (int slot = 0; slot < bigrams.capacity(); slot++) {
+			if (bigrams.isUsed(slot)) {
+				int id1 = bigrams.firstId(slot);
+				int id2 = bigrams.secondId(slot);
+				this.sigBigrams[slot] = sig(this.vocab.getBigramFreq(id1, id2), this.vocab.getFreq(id1), this.vocab.getFreq(id2), this.size);
+			}
+		}
+		this.initUnseen();
+	}
+
+	/**
+	 * Creates the statistics from the arrays of a model file.
+	 */
+	Statistics(Vocabulary vocab, int size, int sentenceCount, double[] sigBegin, double[] sigEnd, double[] sigBigrams) {
+		this.size = size;
+		this.sentenceCount = sentenceCount;
+		this.vocab = vocab;
+		this.sigBegin = sigBegin;
+		this.sigEnd = sigEnd;
+		this.sigBigrams = sigBigrams;
+		this.initUnseen();
+	}
+
+	/**
+	 * Computes the terms of the significance of unseen bigrams that depend on one label only.
+	 */
+	private void initUnseen() {
+		int n = this.vocab.size();
+		this.fLogF = new double[n];
+		this.unseenLog = new double[n];
+		this.sizeLog = new double[n];
+		this.unseenLogUnseen = UNSEEN*Math.log(UNSEEN);
+		this.sizeLogSize = this.size*Math.log(this.size);
+		for (int id = 0; id < n; id++) {
+			double f = this.vocab.getFreq(id);
+			this.fLogF[id] = f*Math.log(f);
+			this.unseenLog[id] = (UNSEEN+f)*Math.log(UNSEEN+f);
+			this.sizeLog[id] = (f+this.size)*Math.log(f+this.size);
+		}
+	}
+	
+	/**
+	 * Returns statistics with the same significance values for a vocabulary made by {@link Vocabulary#fork()}.
+	 * 
+	 * @param vocab
+	 * @return statistics sharing the values of these
+	 */
+	Statistics share(Vocabulary vocab) {
+		return new Statistics(vocab, (int) this.size, (int) this.sentenceCount, this.sigBegin, this.sigEnd, this.sigBigrams);
+	}
+	
+	public int getSize() {
+		return (int) this.size;
+	}
+	
+	public int getSentenceCount() {
+		return (int) this.sentenceCount;
+	}
+	
+	public Vocabulary getVocabulary() {
+		return this.vocab;
+	}
+
+	/**
+	 * Returns the significance of seeing a word or POS at the beginning of a sentence.
+	 *
+	 * @param label
+	 * @return significance value
+	 */
+	public double sigBegin(Label label) {
+		return this.sigBegin[label.getId()];
+	}
+
+	/**
+	 * Returns the significance of seeing a word or POS at the end of a sentence.
+	 *
+	 * @param label
+	 * @return significance value
+	 */
+	public double sigEnd(Label label) {
+		return this.sigEnd[label.getId()];
+	}
+
+	/**
+	 * Returns the significance of seeing a bigram. Bigrams that never occurred in the
+	 * corpus are not stored and their significance is computed from the smoothed frequency.
+	 * If the bigrams are counted in a sketch, the significance of bigrams that are not heavy
+	 * hitters is computed from the estimated frequency.
+	 *
+	 * @param label1
+	 * @param label2
+	 * @return significance value
+	 */
+	public double sigBigram(Label label1, Label label2) {
+		int id1 = label1.getId();
+		int id2 = label2.getId();
+		int slot = this.vocab.getBigrams().find(id1, id2);
+		if (slot >= 0) {
+			return this.sigBigrams[slot];
+		}
+		if (id1 >= this.fLogF.length || id2 >= this.fLogF.length) {
+			// labels added after the statistics were computed
+			BigramSketch sketch = this.vocab.getSketch();
+			return sig(UNSEEN + (sketch != null ? sketch.estimate(id1, id2) : 0), label1.getFreq(), label2.getFreq(), this.size);
+		}
+		// the terms of sig(a, f1, f2, size) in the same order, so the value is the same
+		BigramSketch sketch = this.vocab.getSketch();
+		if (sketch != null) {
+			double a = UNSEEN + sketch.estimate(id1, id2);
+			double all = a + label1.getFreq() + label2.getFreq() + this.size;
+			double a1 = a + label1.getFreq();
+			double a2 = a + label2.getFreq();
+			return 2*(a*Math.log(a) + this.fLogF[id1] + this.fLogF[id2] + this.sizeLogSize - a1*Math.log(a1) - a2*Math.log(a2)
+					- this.sizeLog[id1] - this.sizeLog[id2] + all*Math.log(all));
+		}
+		double all = UNSEEN + label1.getFreq() + label2.getFreq() + this.size;
+		return 2*(this.unseenLogUnseen + this.fLogF[id1] + this.fLogF[id2] + this.sizeLogSize - this.unseenLog[id1] - this.unseenLog[id2]
+				- this.sizeLog[id1] - this.sizeLog[id2] + all*Math.log(all));
+	}
+
+	/**
+	 * Returns the log-likelihood significance value given the four parameters.
+	 *
+	 * @param a	bigram frequency
+	 * @param b	frequency of w1 occurring without w2
+	 * @param c	frequency of w2 occurring without w1
+	 * @param d	corpus size without w1 and w2
+	 * @return significance value
+	 */
+	public static double sig(double a, double b, double c, double d) {
+		double ll_score = 2*(a*Math.log(a) + b*Math.log(b) + c*Math.log(c) + d*Math.log(d) - (a+b)*Math.log(a+b) - (a+c)*Math.log(a+c) - (b+d)*Math.log(b+d) - (c+d)*Math.log(c+d) + (a+b+c+d)*Math.log(a+b+c+d));
+		return ll_score;
+	}
+
+	// The raw arrays are used to write model files.
+
+	double[] sigBeginValues() {
+		return this.sigBegin;
+	}
+
+	double[] sigEndValues() {
+		return this.sigEnd;
+	}
+
+	double[] sigBigramValues() {
+		return this.sigBigrams;
+	}
+
+}
@@ -0,0 +1,231 @@
+package de.unisaarland.unsuparse;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+
+/**
+ * Parses a corpus with a list of configurations in one run. The corpus is read and its statistics
+ * are computed once per label mode (words or POS tags), every configuration then parses its own copy
+ * of the sentences (see {@link Parser#fork(int)}). Configurations of the same mode run in parallel,
+ * each with a share of the threads.
+ *
+ * Every line of the configuration file is one configuration, with the options -t &lt;threshold&gt;
+ * (default 0.05), -p, -s and --batch-merges as on the command line; blank lines and lines starting
+ * with # are skipped. The trees of configuration i (counted from 1) are written to &lt;output&gt;.i,
+ * its timers and counters to &lt;output&gt;.i.json (see {@link Metrics}), and a summary of all
+ * configurations to &lt;output&gt;.sweep.json.
+ */
+public class Sweep {
+	private String corpusFile;
+	private InputFormat words; // format for parsing on words
+	private InputFormat pos; // format for parsing on POS tags
+	private ArrayList<Config> configs;
+	private long[] readNanos; // by mode: words, POS tags; reading the corpus and computing the statistics
+
+	/**
+	 * A configuration and the results of parsing with it.
+	 */
+	private static class Config {
+		private String options;
+		private double threshold;
+		private boolean usePos;
+		private boolean onlySafe;
+		private boolean batched;
+		private int iterations;
+		private long safeNanos;
+		private long totalNanos;
+	}
+
+	/**
+	 * @param corpusFile
+	 * @param words format of the corpus file for parsing on words
+	 * @param pos format of the corpus file for parsing on POS tags
+	 * @param configFile file with one configuration per line
+	 * @throws IOException
+	 * @throws IllegalArgumentException if a line is no valid configuration
+	 */
+	public Sweep(String corpusFile, InputFormat words, InputFormat pos, String configFile) throws IOException {
+		this.corpusFile = corpusFile;
+		this.words = words;
+		this.pos = pos;
+		this.configs = new ArrayList<Config>();
+		this.readNanos = new long[2];
+		BufferedReader br = new BufferedReader(new FileReader(configFile));
+		try {
+			String line;
+			while ((line = br.readLine()) != null) {
+				line = line.trim();
+				if (!line.isEmpty() && !line.startsWith("#")) {
+					this.configs.add(config(line));
+				}
+			}
+		} finally {
+			br.close();
+		}
+		if (this.configs.isEmpty()) {
+			throw new IllegalArgumentException("no configurations in " + configFile);
+		}
+	}
+
+	/**
+	 * Reads a configuration from a line of options.
+	 *
+	 * @param line
+	 * @return the configuration
+	 */
+	private static Config config(String line) {
+		Config c = new Config();
+		c.options = line;
+		c.threshold = 0.05;
+		String[] args = line.split("\\s+");
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "-t":
+				if (i+1 == args.length) {
+					throw new IllegalArgumentException("no threshold in configuration: " + line);
+				}
+				i += 1;
+				try {
+					c.threshold = Double.parseDouble(args[i]);
+				} catch (NumberFormatException e) {
+					throw new IllegalArgumentException("invalid threshold in configuration: " + line);
+				}
+				break;
+			case "-p":
+				c.usePos = true;
+				break;
+			case "-s":
+				c.onlySafe = true;
+				break;
+			case "--batch-merges":
+				c.batched = true;
+				break;
+			default:
+				throw new IllegalArgumentException("unknown option " + args[i] + " in configuration: " + line);
+			}
+		}
+		return c;
+	}
+
+	/**
+	 * Parses the corpus with all configurations and writes their trees, metrics and the summary.
+	 *
+	 * @param output prefix of the output files
+	 * @param spans true for the binary span format, false for bracketed text
+	 * @param threads number of threads, 0 for one per available processor
+	 * @throws IOException
+	 */
+	public void run(final String output, final boolean spans, int threads) throws IOException {
+		if (threads <= 0) {
+			threads = Runtime.getRuntime().availableProcessors();
+		}
+		long start = System.nanoTime();
+		for (int mode = 0; mode < 2; mode++) {
+			final boolean usePos = mode == 1;
+			ArrayList<Integer> indices = new ArrayList<Integer>();
+			for (int i = 0; i < this.configs.size(); i++) {
+				if (this.configs.get(i).usePos == usePos) {
+					indices.add(i);
+				}
+			}
+			if (indices.isEmpty()) {
+				continue;
+			}
+
+			long readStart = System.nanoTime();
+			final Parser base = new Parser(this.corpusFile, threads, new CorpusOptions(usePos ? this.pos : this.words));
+			this.readNanos[mode] = System.nanoTime() - readStart;
+			int parallel = Math.min(threads, indices.size());
+			final int threadsPerConfig = Math.max(1, threads / parallel);
+			ArrayList<Callable<Void>> runs = new ArrayList<Callable<Void>>();
+			for (final int i : indices) {
+				runs.add(new Callable<Void>() {
+					public Void call() throws IOException {
+						parse(base, configs.get(i), threadsPerConfig, output + "." + (i+1), spans);
+						return null;
+					}
+				});
+			}
+			Workers workers = new Workers(parallel);
+			try {
+				workers.invokeAll(runs);
+			} catch (RuntimeException e) {
+				if (e.getCause() instanceof IOException) {
+					throw (IOException) e.getCause();
+				}
+				throw e;
+			} finally {
+				workers.shutdown();
+				base.getWorkers().shutdown();
+			}
+		}
+		this.write(output + ".sweep.json", System.nanoTime() - start);
+	}
+
+	/**
+	 * Parses a copy of the corpus of the base parser with a configuration.
+	 */
+	private static void parse(Parser base, Config c, int threads, String output, boolean spans) throws IOException {
+		long start = System.nanoTime();
+		Parser parser = base.fork(threads);
+		try {
+			parser.setBatchMerges(c.batched);
+			parser.parseCorpus(c.threshold, c.onlySafe, new TreeWriter(output, spans));
+		} finally {
+			parser.getWorkers().shutdown();
+		}
+		c.totalNanos = System.nanoTime() - start;
+		c.iterations = parser.getMetrics().getIterationCount();
+		c.safeNanos = parser.getMetrics().getPhaseNanos("safe learning");
+		parser.getMetrics().write(output + ".json");
+	}
+
+	/**
+	 * Writes the summary of all configurations as JSON.
+	 */
+	private void write(String filename, long nanos) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\n");
+		sb.append("  \"corpus\": \"").append(escape(this.corpusFile)).append("\",\n");
+		sb.append("  \"readWordsMs\": ").append(millis(this.readNanos[0])).append(",\n");
+		sb.append("  \"readPosMs\": ").append(millis(this.readNanos[1])).append(",\n");
+		sb.append("  \"totalMs\": ").append(millis(nanos)).append(",\n");
+		sb.append("  \"configurations\": [\n");
+		for (int i = 0; i < this.configs.size(); i++) {
+			Config c = this.configs.get(i);
+			sb.append("    {\"index\": ").append(i+1);
+			sb.append(", \"options\": \"").append(escape(c.options)).append("\"");
+			sb.append(", \"threshold\": ").append(c.threshold);
+			sb.append(", \"pos\": ").append(c.usePos);
+			sb.append(", \"onlySafe\": ").append(c.onlySafe);
+			sb.append(", \"batchMerges\": ").append(c.batched);
+			sb.append(", \"iterations\": ").append(c.iterations);
+			sb.append(", \"safeLearningMs\": ").append(millis(c.safeNanos));
+			sb.append(", \"totalMs\": ").append(millis(c.totalNanos));
+			sb.append(i+1 < this.configs.size() ? "},\n" : "}\n");
+		}
+		sb.append("  ]\n");
+		sb.append("}\n");
+
+		PrintWriter writer = new PrintWriter(filename, "UTF-8");
+		try {
+			writer.print(sb);
+		} finally {
+			writer.close();
+		}
+	}
+
+	private static String escape(String text) {
+		return text.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+
+	private static String millis(long nanos) {
+		return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+	}
+
+}
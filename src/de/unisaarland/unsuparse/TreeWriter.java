@@ -0,0 +1,281 @@
+package de.unisaarland.unsuparse;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes parse trees to a file, either as bracketed text (one sentence per line) or in a
+ * binary span format. Trees are serialized straight from the parse state of their sentence
+ * into a reusable buffer, which is written to the file when it is full. A TreeWriter is not
+ * thread-safe, it is meant to be used by a single writer thread. If the file name ends with .gz,
+ * the file is written gzip-compressed.
+ *
+ * Span format (little-endian ints): the magic "UNSUPSPN" and the version, then for every
+ * sentence the number of tokens n, the number of spans m, the token offsets [n+1],
+ * the spans as pairs of first token and last token+1 [2m] and the UTF-8 text of the tokens
+ * without separators. Token i is the text from offset i to offset i+1, the spans are the
+ * constituents in preorder, starting with the whole sentence.
+ */
+public class TreeWriter {
+	private static final long MAGIC = 0x4e50535055534e55L; // "UNSUPSPN"
+	private static final int VERSION = 1;
+	private static final int BUFFER_SIZE = 1 << 20;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final byte[] NEWLINE = System.getProperty("line.separator").getBytes(UTF8);
+
+	private FileOutputStream file;
+	private FileChannel channel;
+	private GZIPOutputStream gzip; // compresses the output, null if it is written as is
+	private ByteBuffer buffer;
+	private boolean spans; // binary span format instead of text
+	private int[] stack; // next child to visit on every level of the tree
+	private int[] spanBuffer; // spans of the current sentence
+	private int[] offsets; // token offsets of the current sentence
+	private byte[] text; // token text of the current sentence
+
+	/**
+	 * @param filename
+	 * @param spans true for the binary span format, false for bracketed text
+	 * @throws IOException
+	 */
+	public TreeWriter(String filename, boolean spans) throws IOException {
+		this.file = new FileOutputStream(filename);
+		this.channel = this.file.getChannel();
+		this.gzip = filename.endsWith(".gz") ? new GZIPOutputStream(this.file, BUFFER_SIZE) : null;
+		this.buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		this.spans = spans;
+		this.stack = new int[64];
+		this.spanBuffer = new int[128];
+		this.offsets = new int[65];
+		this.text = new byte[1024];
+		if (spans) {
+			this.buffer.putLong(MAGIC);
+			this.buffer.putInt(VERSION);
+		}
+	}
+
+	/**
+	 * Writes a parse tree.
+	 *
+	 * @param tree
+	 * @throws IOException
+	 */
+	public void write(ConstituentTree tree) throws IOException {
+		if (this.spans) {
+			this.writeSpans(tree.getSentence(), tree.getNode());
+		} else {
+			this.writeText(tree.getSentence(), tree.getNode());
+		}
+	}
+
+	/**
+	 * Writes the bracketed text of a tree, the same as its toString followed by a line break.
+	 */
+	private void writeText(Sentence s, int root) throws IOException {
+		if (s.firstChild(root) < 0) {
+			this.putWord(s.getWord(root));
+			this.put(NEWLINE);
+			return;
+		}
+		this.putByte('[');
+		int depth = 0;
+		this.stack[0] = s.firstChild(root);
+		while (depth >= 0) {
+			int c = this.stack[depth];
+			if (c < 0) {
+				this.putByte(' ');
+				this.putByte(']');
+				depth -= 1;
+				continue;
+			}
+			this.stack[depth] = s.nextSibling(c);
+			this.putByte(' ');
+			if (s.firstChild(c) < 0) {
+				this.putWord(s.getWord(c));
+			} else {
+				this.putByte('[');
+				depth += 1;
+				if (depth == this.stack.length) {
+					this.stack = Arrays.copyOf(this.stack, depth*2);
+				}
+				this.stack[depth] = s.firstChild(c);
+			}
+		}
+		this.put(NEWLINE);
+	}
+
+	/**
+	 * Writes the token offsets and the spans of a tree.
+	 */
+	private void writeSpans(Sentence s, int root) throws IOException {
+		int start = s.start(root);
+		int end = s.end(root);
+		int n = end - start;
+		if (this.offsets.length < n+1) {
+			this.offsets = new int[Math.max(n+1, this.offsets.length*2)];
+		}
+		int textLength = 0;
+		for (int t = start; t < end; t++) {
+			this.offsets[t-start] = textLength;
+			textLength = this.encode(s.getWord(t), textLength);
+		}
+		this.offsets[n] = textLength;
+
+		// spans in preorder
+		int m = this.addSpan(0, root, start, s);
+		int depth = 0;
+		this.stack[0] = s.firstChild(root);
+		while (depth >= 0) {
+			int c = this.stack[depth];
+			if (c < 0) {
+				depth -= 1;
+				continue;
+			}
+			this.stack[depth] = s.nextSibling(c);
+			if (s.firstChild(c) >= 0) {
+				m = this.addSpan(m, c, start, s);
+				depth += 1;
+				if (depth == this.stack.length) {
+					this.stack = Arrays.copyOf(this.stack, depth*2);
+				}
+				this.stack[depth] = s.firstChild(c);
+			}
+		}
+
+		this.putInt(n);
+		this.putInt(m);
+		for (int i = 0; i <= n; i++) {
+			this.putInt(this.offsets[i]);
+		}
+		for (int i = 0; i < 2*m; i++) {
+			this.putInt(this.spanBuffer[i]);
+		}
+		this.put(this.text, textLength);
+	}
+
+	/**
+	 * Adds the span of a node as the m-th span of the sentence.
+	 *
+	 * @return number of spans
+	 */
+	private int addSpan(int m, int node, int start, Sentence s) {
+		if (2*m+2 > this.spanBuffer.length) {
+			this.spanBuffer = Arrays.copyOf(this.spanBuffer, this.spanBuffer.length*2);
+		}
+		this.spanBuffer[2*m] = s.start(node) - start;
+		this.spanBuffer[2*m+1] = s.end(node) - start;
+		return m+1;
+	}
+
+	/**
+	 * Appends the UTF-8 bytes of a word to the text of the current sentence.
+	 *
+	 * @return length of the text
+	 */
+	private int encode(String word, int textLength) {
+		int length = word.length();
+		if (textLength + length > this.text.length) {
+			this.text = Arrays.copyOf(this.text, Math.max(textLength + length, this.text.length*2));
+		}
+		for (int i = 0; i < length; i++) {
+			char c = word.charAt(i);
+			if (c >= 0x80) {
+				byte[] bytes = word.getBytes(UTF8);
+				if (textLength + bytes.length > this.text.length) {
+					this.text = Arrays.copyOf(this.text, Math.max(textLength + bytes.length, this.text.length*2));
+				}
+				System.arraycopy(bytes, 0, this.text, textLength, bytes.length);
+				return textLength + bytes.length;
+			}
+			this.text[textLength + i] = (byte) c;
+		}
+		return textLength + length;
+	}
+
+	private void putWord(String word) throws IOException {
+		int length = word.length();
+		for (int i = 0; i < length; i++) {
+			if (word.charAt(i) >= 0x80) {
+				this.put(word.getBytes(UTF8));
+				return;
+			}
+		}
+		if (this.buffer.remaining() < length) {
+			this.flush();
+		}
+		if (length > this.buffer.remaining()) {
+			this.put(word.getBytes(UTF8));
+			return;
+		}
+		for (int i = 0; i < length; i++) {
+			this.buffer.put((byte) word.charAt(i));
+		}
+	}
+
+	private void putByte(char c) throws IOException {
+		if (!this.buffer.hasRemaining()) {
+			this.flush();
+		}
+		this.buffer.put((byte) c);
+	}
+
+	private void putInt(int v) throws IOException {
+		if (this.buffer.remaining() < 4) {
+			this.flush();
+		}
+		this.buffer.putInt(v);
+	}
+
+	private void put(byte[] bytes) throws IOException {
+		this.put(bytes, bytes.length);
+	}
+
+	private void put(byte[] bytes, int length) throws IOException {
+		int pos = 0;
+		while (pos < length) {
+			if (!this.buffer.hasRemaining()) {
+				this.flush();
+			}
+			int n = Math.min(length - pos, this.buffer.remaining());
+			this.buffer.put(bytes, pos, n);
+			pos += n;
+		}
+	}
+
+	private void flush() throws IOException {
+		if (this.gzip != null) {
+			this.gzip.write(this.buffer.array(), 0, this.buffer.position());
+			this.buffer.clear();
+			return;
+		}
+		this.buffer.flip();
+		while (this.buffer.hasRemaining()) {
+			this.channel.write(this.buffer);
+		}
+		this.buffer.clear();
+	}
+
+	/**
+	 * Writes the buffered trees and closes the file.
+	 *
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		try {
+			this.flush();
+		} finally {
+			if (this.gzip != null) {
+				this.gzip.close(); // writes the trailer and closes the file
+			} else {
+				this.file.close();
+			}
+		}
+	}
+
+}
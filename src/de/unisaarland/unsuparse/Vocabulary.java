@@ -0,0 +1,379 @@
+package de.unisaarland.unsuparse;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Stores the counters of all labels of a corpus in parallel primitive arrays,
+ * indexed by the dense label id. Label objects are thin views on these arrays.
+ * The names are indexed by an open-addressing table, so that a vocabulary read from a
+ * model file can look up labels without building a map of all names first.
+ */
+public class Vocabulary {
+	public static final String UNKNOWN = "<unknown label>"; // contains a space, so it is never a token
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	private String[] names; // names by id, decoded from nameData on first use for vocabularies read from a file
+	private ByteBuffer nameData; // UTF-8 encoded names of a vocabulary read from a model file, or null
+	private int[] nameOffsets; // start of every name in nameData
+	private int[] nameSlots; // ids by hash of their names, -1 for free slots
+	private Label[] labels; // Label views, created on first use
+	private int[] freq; // frequency in the corpus
+	private int[] startFreq; // frequency of label at the beginning of sentences
+	private int[] endFreq; // frequency of label at the end of sentences
+	private int[] f; // number of constituents with label at the first position
+	private int[] l; // number of constituents with label at the last position
+	private double[] pref; // cached preference values, only change when f or l change
+	private long[] prefChanged; // value of prefVersion when the preference of a label last changed
+	private long prefVersion; // number of preference changes so far
+	private BigramTable bigrams; // frequencies of labels preceding other labels, only the heavy hitters if there is a sketch
+	private BigramSketch sketch; // approximate frequencies of the other bigrams, or null
+	private int size;
+
+	public Vocabulary() {
+		int capacity = 64;
+		this.names = new String[capacity];
+		this.nameData = null;
+		this.nameOffsets = null;
+		this.nameSlots = new int[2*capacity];
+		Arrays.fill(this.nameSlots, -1);
+		this.labels = new Label[capacity];
+		this.freq = new int[capacity];
+		this.startFreq = new int[capacity];
+		this.endFreq = new int[capacity];
+		this.f = new int[capacity];
+		this.l = new int[capacity];
+		this.pref = new double[capacity];
+		this.prefChanged = new long[capacity];
+		this.prefVersion = 0;
+		this.bigrams = new BigramTable();
+		this.size = 0;
+	}
+
+	/**
+	 * Creates a vocabulary from the arrays of a model file. The names are decoded when they are used.
+	 */
+	Vocabulary(int size, ByteBuffer nameData, int[] nameOffsets, int[] nameSlots, int[] freq, int[] startFreq,
+			int[] endFreq, int[] f, int[] l, double[] pref, BigramTable bigrams) {
+		this.names = new String[size];
+		this.nameData = nameData;
+		this.nameOffsets = nameOffsets;
+		this.nameSlots = nameSlots;
+		this.labels = new Label[size];
+		this.freq = freq;
+		this.startFreq = startFreq;
+		this.endFreq = endFreq;
+		this.f = f;
+		this.l = l;
+		this.pref = pref;
+		this.prefChanged = new long[size];
+		this.prefVersion = 0;
+		this.bigrams = bigrams;
+		this.size = size;
+	}
+
+	/**
+	 * Adds a new label and returns its id.
+	 *
+	 * @param name
+	 * @return label id
+	 */
+	public int add(String name) {
+		if (this.size == this.names.length) {
+			int capacity = this.names.length * 2;
+			this.names = Arrays.copyOf(this.names, capacity);
+			this.labels = Arrays.copyOf(this.labels, capacity);
+			this.freq = Arrays.copyOf(this.freq, capacity);
+			this.startFreq = Arrays.copyOf(this.startFreq, capacity);
+			this.endFreq = Arrays.copyOf(this.endFreq, capacity);
+			this.f = Arrays.copyOf(this.f, capacity);
+			this.l = Arrays.copyOf(this.l, capacity);
+			this.pref = Arrays.copyOf(this.pref, capacity);
+			this.prefChanged = Arrays.copyOf(this.prefChanged, capacity);
+		}
+		int id = this.size;
+		this.names[id] = name;
+		this.pref[id] = 1.0;
+		this.size += 1;
+		if (2*this.size > this.nameSlots.length) {
+			this.nameSlots = new int[2*this.nameSlots.length];
+			Arrays.fill(this.nameSlots, -1);
+			for (int i = 0; i < this.size; i++) {
+				this.nameSlots[this.freeSlot(this.getName(i))] = i;
+			}
+		} else {
+			this.nameSlots[this.freeSlot(name)] = id;
+		}
+		return id;
+	}
+
+	private int firstSlot(String name) {
+		int h = name.hashCode() * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & (this.nameSlots.length - 1);
+	}
+
+	private int freeSlot(String name) {
+		int i = this.firstSlot(name);
+		while (this.nameSlots[i] != -1) {
+			i = (i + 1) & (this.nameSlots.length - 1);
+		}
+		return i;
+	}
+
+	/**
+	 * Returns the id of the label with the given name.
+	 *
+	 * @param name
+	 * @return label id, or -1 if there is no such label
+	 */
+	public int find(String name) {
+		int i = this.firstSlot(name);
+		while (this.nameSlots[i] != -1) {
+			if (this.getName(this.nameSlots[i]).equals(name)) {
+				return this.nameSlots[i];
+			}
+			i = (i + 1) & (this.nameSlots.length - 1);
+		}
+		return -1;
+	}
+
+	/**
+	 * @param id
+	 * @return the Label with the given id
+	 */
+	public Label label(int id) {
+		Label label = this.labels[id];
+		if (label == null) {
+			label = new Label(id, this);
+			this.labels[id] = label;
+		}
+		return label;
+	}
+
+	/**
+	 * Returns a vocabulary that shares the names and counts of this one but has its own labels and
+	 * preference counters, so the same corpus can be parsed with other settings at the same time.
+	 * No labels may be added to either vocabulary afterwards.
+	 *
+	 * @return the new vocabulary
+	 */
+	Vocabulary fork() {
+		Vocabulary v = new Vocabulary();
+		v.names = this.names;
+		v.nameData = this.nameData;
+		v.nameOffsets = this.nameOffsets;
+		v.nameSlots = this.nameSlots;
+		v.labels = new Label[this.size];
+		v.freq = this.freq;
+		v.startFreq = this.startFreq;
+		v.endFreq = this.endFreq;
+		v.f = Arrays.copyOf(this.f, this.size);
+		v.l = Arrays.copyOf(this.l, this.size);
+		v.pref = Arrays.copyOf(this.pref, this.size);
+		v.prefChanged = new long[this.size];
+		v.prefVersion = 0;
+		v.bigrams = this.bigrams;
+		v.sketch = this.sketch;
+		v.size = this.size;
+		return v;
+	}
+
+	/**
+	 * @return number of labels
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	public String getName(int id) {
+		String name = this.names[id];
+		if (name == null && this.nameData != null) {
+			byte[] bytes = new byte[this.nameOffsets[id+1] - this.nameOffsets[id]];
+			for (int i = 0; i < bytes.length; i++) {
+				bytes[i] = this.nameData.get(this.nameOffsets[id] + i);
+			}
+			name = new String(bytes, UTF8);
+			this.names[id] = name;
+		}
+		return name;
+	}
+
+	public BigramTable getBigrams() {
+		return this.bigrams;
+	}
+
+	/**
+	 * @return approximate bigram counts, null if all bigrams are counted exactly
+	 */
+	public BigramSketch getSketch() {
+		return this.sketch;
+	}
+
+	/**
+	 * Keeps the counts of bigrams that are not in the bigram table in a sketch.
+	 *
+	 * @param sketch
+	 */
+	public void setSketch(BigramSketch sketch) {
+		this.sketch = sketch;
+	}
+
+	// All frequencies are smoothed by 0.1 so that unseen events do not have zero frequency.
+
+	public double getFreq(int id) {
+		return 0.1 + this.freq[id];
+	}
+
+	public void incrementFreq(int id) {
+		this.freq[id] += 1;
+	}
+
+	public void addFreq(int id, int n) {
+		this.freq[id] += n;
+	}
+
+	public double getStartFreq(int id) {
+		return 0.1 + this.startFreq[id];
+	}
+
+	public void incrementStartFreq(int id) {
+		this.startFreq[id] += 1;
+	}
+
+	public void addStartFreq(int id, int n) {
+		this.startFreq[id] += n;
+	}
+
+	public double getEndFreq(int id) {
+		return 0.1 + this.endFreq[id];
+	}
+
+	public void incrementEndFreq(int id) {
+		this.endFreq[id] += 1;
+	}
+
+	public void addEndFreq(int id, int n) {
+		this.endFreq[id] += n;
+	}
+
+	public double getBigramFreq(int id1, int id2) {
+		if (this.sketch != null && this.bigrams.find(id1, id2) < 0) {
+			return 0.1 + this.sketch.estimate(id1, id2);
+		}
+		return 0.1 + this.bigrams.get(id1, id2);
+	}
+
+	public void incrementBigramFreq(int id1, int id2) {
+		this.bigrams.increment(id1, id2);
+	}
+
+	public void incrementF(int id) {
+		this.f[id] += 1;
+		this.updatePref(id);
+	}
+
+	public void incrementL(int id) {
+		this.l[id] += 1;
+		this.updatePref(id);
+	}
+
+	public void addF(int id, int n) {
+		this.f[id] += n;
+		this.updatePref(id);
+	}
+
+	public void addL(int id, int n) {
+		this.l[id] += n;
+		this.updatePref(id);
+	}
+
+	public double pref(int id) {
+		return this.pref[id];
+	}
+	
+	/**
+	 * @return a version number that increases whenever a preference value changes
+	 */
+	public long getPrefVersion() {
+		return this.prefVersion;
+	}
+	
+	/**
+	 * Returns whether the preference value of a label changed after the given version.
+	 * 
+	 * @param id
+	 * @param version
+	 * @return true if the preference changed
+	 */
+	public boolean prefChangedSince(int id, long version) {
+		return this.prefChanged[id] > version;
+	}
+
+	/**
+	 * Sets the f and l counters of all labels, e.g. to those of a checkpoint,
+	 * and recomputes the preference values.
+	 *
+	 * @param f
+	 * @param l
+	 */
+	void setPrefCounters(int[] f, int[] l) {
+		for (int id = 0; id < this.size; id++) {
+			this.f[id] = f[id];
+			this.l[id] = l[id];
+			this.updatePref(id);
+		}
+	}
+
+	/**
+	 * Recomputes the cached preference value after f or l changed.
+	 *
+	 * @param id
+	 */
+	private void updatePref(int id) {
+		Double exp = (double) (this.f[id] - this.l[id]);
+		if (exp > 50) { // this in necessary to avoid numbers going to infinity
+			exp = 50.0;
+		}
+		if (exp < -50) { // this in necessary to avoid the preference value being zero
+			exp = -50.0;
+		}
+		double pref = Math.pow(2, exp);
+		if (pref != this.pref[id]) {
+			this.pref[id] = pref;
+			this.prefVersion += 1;
+			this.prefChanged[id] = this.prefVersion;
+		}
+	}
+
+	// The raw arrays are used to write model files, they may be longer than the vocabulary.
+
+	int[] nameSlots() {
+		return this.nameSlots;
+	}
+
+	int[] freqCounts() {
+		return this.freq;
+	}
+
+	int[] startFreqCounts() {
+		return this.startFreq;
+	}
+
+	int[] endFreqCounts() {
+		return this.endFreq;
+	}
+
+	int[] fCounts() {
+		return this.f;
+	}
+
+	int[] lCounts() {
+		return this.l;
+	}
+
+	double[] prefValues() {
+		return this.pref;
+	}
+
+}
@@ -0,0 +1,138 @@
+package de.unisaarland.unsuparse;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Runs work over ranges of sentence indices, either on the calling thread or,
+ * if more than one thread is configured, on a fork-join pool.
+ * Results are always returned in the order of the ranges, so that combining
+ * them does not depend on the thread scheduling.
+ */
+public class Workers {
+	private static final int RANGES_PER_THREAD = 8; // more ranges than threads for load balancing
+
+	private int threads;
+	private ExecutorService pool;
+
+	/**
+	 * A piece of work on the sentence indices from (inclusive) to to (exclusive).
+	 */
+	public interface RangeTask<T> {
+		T run(int from, int to);
+	}
+
+	/**
+	 * @param threads number of threads, 0 for one per available processor
+	 */
+	public Workers(int threads) {
+		if (threads <= 0) {
+			threads = Runtime.getRuntime().availableProcessors();
+		}
+		this.threads = threads;
+		this.pool = null;
+	}
+
+	public int getThreads() {
+		return this.threads;
+	}
+
+	/**
+	 * Splits the indices 0 to n-1 into ranges and runs the task on each of them.
+	 *
+	 * @param n number of indices
+	 * @param task
+	 * @return the results of the ranges in order
+	 */
+	public <T> ArrayList<T> run(int n, final RangeTask<T> task) {
+		ArrayList<T> results = new ArrayList<T>();
+		if (this.threads == 1 || n < 2) {
+			results.add(task.run(0, n));
+			return results;
+		}
+		int ranges = Math.min(n, this.threads * RANGES_PER_THREAD);
+		ArrayList<Callable<T>> calls = new ArrayList<Callable<T>>();
+		for (int r = 0; r < ranges; r++) {
+			final int from = (int) ((long) n * r / ranges);
+			final int to = (int) ((long) n * (r+1) / ranges);
+			calls.add(new Callable<T>() {
+				public T call() {
+					return task.run(from, to);
+				}
+			});
+		}
+		return this.invokeAll(calls);
+	}
+
+	/**
+	 * Runs the given tasks and returns their results in order.
+	 *
+	 * @param calls
+	 * @return results
+	 */
+	public <T> ArrayList<T> invokeAll(ArrayList<Callable<T>> calls) {
+		ArrayList<T> results = new ArrayList<T>();
+		try {
+			if (this.threads == 1) {
+				for (Callable<T> call : calls) {
+					results.add(call.call());
+				}
+				return results;
+			}
+			for (Future<T> future : this.getPool().invokeAll(calls)) {
+				results.add(future.get());
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+		return results;
+	}
+
+	/**
+	 * Starts a single task. With one thread the task is run right away on the calling thread.
+	 *
+	 * @param call
+	 * @return the future result
+	 */
+	public <T> Future<T> submit(Callable<T> call) {
+		if (this.threads == 1) {
+			FutureTask<T> task = new FutureTask<T>(call);
+			task.run();
+			return task;
+		}
+		return this.getPool().submit(call);
+	}
+
+	private synchronized ExecutorService getPool() {
+		if (this.pool == null) {
+			this.pool = new ForkJoinPool(this.threads);
+		}
+		return this.pool;
+	}
+
+	/**
+	 * Stops the worker threads.
+	 */
+	public synchronized void shutdown() {
+		if (this.pool != null) {
+			this.pool.shutdown();
+			this.pool = null;
+		}
+	}
+
+}
@@ -0,0 +1,173 @@
+package de.unisaarland.unsuparse;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Parses a fixture corpus and compares the trees with those of the original sequential parser.
+ * The corpus has 2,000 generated sentences with POS tags (--generate with --vocab 300 --tags 12
+ * --lengths uniform:2:8 --seed 3), 1,432 of them with distinct tag sequences, so the minimum
+ * frequency of POS candidates is 2. The expected trees were written by the parser of the first
+ * commit of the repository, e.g. with "Run corpus.txt pos.txt -p".
+ */
+public class BaselineTreesTest {
+	private static final double THRESHOLD = 0.05;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static String fixture(String name) {
+		try {
+			return new File(BaselineTreesTest.class.getResource("/" + name).toURI()).getPath();
+		} catch (URISyntaxException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static List<String> lines(String filename) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		BufferedReader reader;
+		if (filename.endsWith(".gz")) {
+			reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(filename)), "UTF-8"));
+		} else {
+			reader = new BufferedReader(new InputStreamReader(new FileInputStream(filename), "UTF-8"));
+		}
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lines.add(line);
+			}
+		} finally {
+			reader.close();
+		}
+		return lines;
+	}
+
+	private static Parser parser(int threads, CorpusOptions options) throws IOException {
+		return new Parser(fixture("corpus.txt.gz"), threads, options);
+	}
+
+	private static CorpusOptions options(boolean usePos) {
+		return new CorpusOptions(fixture("corpus.txt.gz"), usePos);
+	}
+
+	/**
+	 * Returns options that keep the sentences in a store in the temporary folder.
+	 */
+	private CorpusOptions storeOptions(boolean usePos) throws IOException {
+		CorpusOptions options = options(usePos);
+		options.setStore(new SentenceStore(this.folder.newFile().getPath()));
+		return options;
+	}
+
+	/**
+	 * Parses the corpus and compares the trees with the expected ones, sentence by sentence.
+	 */
+	private void assertBaseline(String expected, Parser parser, double threshold, boolean onlySafe) throws IOException {
+		String out = new File(this.folder.getRoot(), "trees.txt").getPath();
+		try {
+			parser.parseCorpus(threshold, onlySafe, new TreeWriter(out, false));
+		} finally {
+			parser.getWorkers().shutdown();
+		}
+		List<String> want = lines(fixture(expected));
+		List<String> got = lines(out);
+		assertEquals(want.size(), got.size());
+		for (int i = 0; i < want.size(); i++) {
+			assertEquals("tree of sentence " + i, want.get(i), got.get(i));
+		}
+	}
+
+	@Test
+	public void posOnOneThread() throws IOException {
+		assertBaseline("pos.txt.gz", parser(1, options(true)), THRESHOLD, false);
+	}
+
+	@Test
+	public void posOnFourThreads() throws IOException {
+		assertBaseline("pos.txt.gz", parser(4, options(true)), THRESHOLD, false);
+	}
+
+	/**
+	 * Safe learning merges most boundaries at this threshold, so many preference values change and
+	 * many sentences are rescanned because of a changed label instead of a merge of their own.
+	 */
+	@Test
+	public void posWithHighThreshold() throws IOException {
+		assertBaseline("pos-t1.txt.gz", parser(1, options(true)), 1.0, false);
+	}
+
+	@Test
+	public void posWithHighThresholdOnFourThreads() throws IOException {
+		assertBaseline("pos-t1.txt.gz", parser(4, options(true)), 1.0, false);
+	}
+
+	@Test
+	public void wordsOnOneThread() throws IOException {
+		assertBaseline("words.txt.gz", parser(1, options(false)), THRESHOLD, false);
+	}
+
+	@Test
+	public void wordsOnFourThreads() throws IOException {
+		assertBaseline("words.txt.gz", parser(4, options(false)), THRESHOLD, false);
+	}
+
+	/**
+	 * The trees of safe learning alone, where each tree of a label sequence is projected onto
+	 * the other sentences with the same labels without being finished. Candidates of repeated
+	 * sequences count with their number of sentences towards the minimum frequency.
+	 */
+	@Test
+	public void posSafeLearningOnly() throws IOException {
+		assertBaseline("pos-safe.txt.gz", parser(1, options(true)), THRESHOLD, true);
+	}
+
+	@Test
+	public void wordsSafeLearningOnly() throws IOException {
+		assertBaseline("words-safe.txt.gz", parser(4, options(false)), THRESHOLD, true);
+	}
+
+	/**
+	 * With a store, learning reads the sentences from the file and writes merges back, and the trees
+	 * are finished in corpus order with a cache for repeated label sequences.
+	 */
+	@Test
+	public void posInStore() throws IOException {
+		assertBaseline("pos.txt.gz", parser(1, storeOptions(true)), THRESHOLD, false);
+	}
+
+	@Test
+	public void posInStoreOnFourThreads() throws IOException {
+		assertBaseline("pos.txt.gz", parser(4, storeOptions(true)), THRESHOLD, false);
+	}
+
+	@Test
+	public void posWithHighThresholdInStore() throws IOException {
+		assertBaseline("pos-t1.txt.gz", parser(4, storeOptions(true)), 1.0, false);
+	}
+
+	@Test
+	public void wordsInStore() throws IOException {
+		assertBaseline("words.txt.gz", parser(4, storeOptions(false)), THRESHOLD, false);
+	}
+
+	@Test
+	public void safeLearningOnlyInStore() throws IOException {
+		assertBaseline("pos-safe.txt.gz", parser(4, storeOptions(true)), THRESHOLD, true);
+		assertBaseline("words-safe.txt.gz", parser(1, storeOptions(false)), THRESHOLD, true);
+	}
+
+}
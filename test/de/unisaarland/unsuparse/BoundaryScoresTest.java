@@ -0,0 +1,103 @@
+package de.unisaarland.unsuparse;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Compares the segment tree of separation values with a linear scan over the remaining boundaries,
+ * the way the parser found the best merge before the tree was added.
+ */
+public class BoundaryScoresTest {
+	private static final double[] VALUES = {0.1, 0.2, 0.2, 0.5, Double.NaN, Double.POSITIVE_INFINITY, -1.0};
+
+	/**
+	 * Returns the gap position of the lowest value: the first boundary unless a later one has a value
+	 * that is lower by &lt;, so NaN never replaces a value and a NaN on the first boundary is never replaced.
+	 */
+	private static int linearBest(List<Integer> remaining, double[] values) {
+		if (remaining.isEmpty()) {
+			return -1;
+		}
+		int best = remaining.get(0);
+		double min = values[best];
+		for (int p : remaining) {
+			if (values[p] < min) {
+				min = values[p];
+				best = p;
+			}
+		}
+		return best;
+	}
+
+	private static void check(BoundaryScores scores, List<Integer> remaining, double[] values) {
+		assertEquals(remaining.size(), scores.size());
+		assertEquals(linearBest(remaining, values), scores.best());
+		for (int k = 0; k < remaining.size(); k++) {
+			assertEquals(remaining.get(k).intValue(), scores.select(k));
+			assertEquals(k, scores.rank(remaining.get(k)));
+		}
+		assertEquals(-1, scores.select(remaining.size()));
+	}
+
+	@Test
+	public void bestMatchesLinearScanWhileBoundariesAreMerged() {
+		Random random = new Random(3);
+		for (int round = 0; round < 500; round++) {
+			int n = 1 + random.nextInt(40);
+			BoundaryScores scores = new BoundaryScores(n);
+			double[] values = new double[n];
+			List<Integer> remaining = new ArrayList<Integer>();
+			for (int p = 0; p < n; p++) {
+				values[p] = VALUES[random.nextInt(VALUES.length)];
+				scores.set(p, values[p]);
+				remaining.add(p);
+			}
+			check(scores, remaining, values);
+			while (!remaining.isEmpty()) {
+				if (random.nextBoolean()) {
+					// merge the constituents around a boundary, like Sentence.merge
+					int k = random.nextInt(remaining.size());
+					scores.remove(scores.select(k));
+					remaining.remove(k);
+				} else {
+					int p = remaining.get(random.nextInt(remaining.size()));
+					values[p] = VALUES[random.nextInt(VALUES.length)];
+					scores.set(p, values[p]);
+				}
+				check(scores, remaining, values);
+			}
+			assertEquals(-1, scores.best());
+		}
+	}
+
+	@Test
+	public void nanOnTheFirstBoundaryIsKept() {
+		BoundaryScores scores = new BoundaryScores(3);
+		scores.set(0, Double.NaN);
+		scores.set(1, 0.5);
+		scores.set(2, 0.1);
+		assertEquals(0, scores.best());
+		scores.remove(0);
+		assertEquals(2, scores.best());
+	}
+
+	@Test
+	public void staleBoundariesAreTakenOnce() {
+		BoundaryScores scores = new BoundaryScores(5);
+		assertEquals(5, scores.takeStale().length);
+		assertEquals(0, scores.takeStale().length);
+		scores.markStale(3);
+		scores.markStale(1);
+		scores.markStale(3);
+		int[] stale = scores.takeStale();
+		assertEquals(2, stale.length);
+		assertEquals(3, stale[0]);
+		assertEquals(1, stale[1]);
+	}
+
+}
@@ -0,0 +1,173 @@
+package de.unisaarland.unsuparse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+/**
+ * Tests the grouping of proposals by label sequence when their hashes collide and when groups are
+ * released in the middle of a probe sequence.
+ */
+public class CandidateTableTest {
+
+	/**
+	 * Creates one sentence per string, with one label per space-separated name.
+	 */
+	static List<Sentence> sentences(Vocabulary vocab, String... texts) {
+		List<Sentence> sents = new ArrayList<Sentence>();
+		for (String text : texts) {
+			Sentence s = new Sentence();
+			for (String name : text.split(" ")) {
+				int id = vocab.find(name);
+				s.addWord(vocab.label(id < 0 ? vocab.add(name) : id), name);
+			}
+			sents.add(s);
+		}
+		return sents;
+	}
+
+	/**
+	 * Adds a proposal and returns the group it joined.
+	 */
+	private static int add(CandidateTable table, int i, int sentence, int start, int end, long hash, int weight) {
+		table.clearTouched();
+		table.add(i, sentence, start, end, hash, weight);
+		assertEquals(1, table.touchedCount());
+		return table.touched(0);
+	}
+
+	private static TreeSet<Integer> members(CandidateTable table, int g) {
+		TreeSet<Integer> members = new TreeSet<Integer>();
+		for (int i = table.first(g); i >= 0; i = table.next(i)) {
+			members.add(i);
+		}
+		return members;
+	}
+
+	@Test
+	public void collidingSequencesGetGroupsOfTheirOwn() {
+		List<Sentence> sents = sentences(new Vocabulary(), "A B", "C D", "A B", "C D");
+		CandidateTable table = new CandidateTable(sents);
+		int ab = add(table, 0, 0, 0, 2, 42, 1);
+		int cd = add(table, 1, 1, 0, 2, 42, 1);
+		assertNotEquals(ab, cd);
+		assertEquals(ab, add(table, 2, 2, 0, 2, 42, 3));
+		assertEquals(cd, add(table, 3, 3, 0, 2, 42, 1));
+		assertEquals(4, table.size(ab));
+		assertEquals(2, table.size(cd));
+		assertEquals(new TreeSet<Integer>(Arrays.asList(0, 2)), members(table, ab));
+		assertEquals(new TreeSet<Integer>(Arrays.asList(1, 3)), members(table, cd));
+	}
+
+	@Test
+	public void releasedGroupKeepsLaterGroupsReachable() {
+		List<Sentence> sents = sentences(new Vocabulary(), "A B", "C D", "E F", "C D", "E F");
+		CandidateTable table = new CandidateTable(sents);
+		// all three sequences have the same home slot, so C D and E F are found by probing past A B
+		int ab = add(table, 0, 0, 0, 2, 7, 1);
+		int cd = add(table, 1, 1, 0, 2, 7, 1);
+		int ef = add(table, 2, 2, 0, 2, 7, 1);
+		table.remove(0);
+		assertEquals(-1, table.first(ab));
+		assertEquals(cd, add(table, 3, 3, 0, 2, 7, 1));
+		assertEquals(ef, add(table, 4, 4, 0, 2, 7, 1));
+		assertEquals(2, table.size(cd));
+		assertEquals(2, table.size(ef));
+
+		// after the group of C D is released, E F is still found and C D starts a new group
+		table.removeGroup(cd);
+		table.remove(4);
+		assertEquals(ef, add(table, 4, 4, 0, 2, 7, 1));
+		int cd2 = add(table, 1, 1, 0, 2, 7, 1);
+		assertNotEquals(ef, cd2);
+		assertEquals(cd2, add(table, 3, 3, 0, 2, 7, 1));
+		assertEquals(new TreeSet<Integer>(Arrays.asList(1, 3)), members(table, cd2));
+		assertEquals(new TreeSet<Integer>(Arrays.asList(2, 4)), members(table, ef));
+	}
+
+	@Test
+	public void removingMembersUpdatesSizes() {
+		List<Sentence> sents = sentences(new Vocabulary(), "A B C", "A B C", "A B C");
+		CandidateTable table = new CandidateTable(sents);
+		int g = add(table, 0, 0, 1, 3, 5, 2);
+		add(table, 1, 1, 1, 3, 5, 3);
+		add(table, 2, 2, 1, 3, 5, 4);
+		table.remove(1);
+		assertEquals(6, table.size(g));
+		assertEquals(new TreeSet<Integer>(Arrays.asList(0, 2)), members(table, g));
+		table.remove(1); // not in a group any more
+		assertEquals(6, table.size(g));
+		table.remove(2);
+		table.remove(0);
+		assertEquals(-1, table.first(g));
+	}
+
+	/**
+	 * Adds and removes proposals at random with hashes from a tiny range whose home slots wrap around
+	 * the end of the index, and compares the groups with those of a map by label sequence.
+	 */
+	@Test
+	public void randomOperationsMatchGroupingByLabels() {
+		Random random = new Random(1);
+		String[] texts = new String[40];
+		for (int i = 0; i < texts.length; i++) {
+			texts[i] = "L" + random.nextInt(3) + " L" + random.nextInt(3);
+		}
+		List<Sentence> sents = sentences(new Vocabulary(), texts);
+		CandidateTable table = new CandidateTable(sents);
+		// the index of 40 proposal ids has 128 slots, so these hashes have the home slots 126, 127, 0 and 1
+		long[] hashes = {126, 127, 128, 129};
+		int[] groupOf = new int[texts.length];
+		int[] weight = new int[texts.length];
+		boolean[] present = new boolean[texts.length];
+		for (int step = 0; step < 5000; step++) {
+			int i = random.nextInt(texts.length);
+			int op = random.nextInt(10);
+			if (op == 0 && present[i]) {
+				for (int j = 0; j < texts.length; j++) {
+					if (present[j] && groupOf[j] == groupOf[i] && j != i) {
+						present[j] = false;
+					}
+				}
+				table.removeGroup(groupOf[i]);
+				present[i] = false;
+			} else if (present[i]) {
+				table.remove(i);
+				present[i] = false;
+			} else {
+				weight[i] = 1 + random.nextInt(3);
+				long hash = hashes[(texts[i].hashCode() & 0x7fffffff) % hashes.length];
+				groupOf[i] = add(table, i, i, 0, 2, hash, weight[i]);
+				present[i] = true;
+			}
+
+			HashMap<String, TreeSet<Integer>> expected = new HashMap<String, TreeSet<Integer>>();
+			HashMap<String, Integer> expectedSize = new HashMap<String, Integer>();
+			for (int j = 0; j < texts.length; j++) {
+				if (present[j]) {
+					if (!expected.containsKey(texts[j])) {
+						expected.put(texts[j], new TreeSet<Integer>());
+						expectedSize.put(texts[j], 0);
+					}
+					expected.get(texts[j]).add(j);
+					expectedSize.put(texts[j], expectedSize.get(texts[j]) + weight[j]);
+				}
+			}
+			for (int j = 0; j < texts.length; j++) {
+				if (present[j]) {
+					assertEquals(expected.get(texts[j]), members(table, groupOf[j]));
+					assertEquals((int) expectedSize.get(texts[j]), table.size(groupOf[j]));
+				}
+			}
+		}
+	}
+
+}
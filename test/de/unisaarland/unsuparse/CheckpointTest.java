@@ -0,0 +1,109 @@
+package de.unisaarland.unsuparse;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Writes checkpoints of merged sentences and restores them on a freshly read copy of the corpus.
+ */
+public class CheckpointTest {
+	private static final double THRESHOLD = 0.05;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Merges random constituents of the sentences and counts them in the preference counters.
+	 */
+	private static void mergeAtRandom(List<Sentence> sents, Vocabulary vocab) {
+		Random random = new Random(11);
+		for (int i = 0; i < sents.size(); i++) {
+			Sentence s = sents.get(i);
+			int merges = random.nextInt(4);
+			for (int k = 0; k < merges && s.length() > 1; k++) {
+				int index = random.nextInt(s.length() - 1);
+				vocab.addF(s.firstLabel(index).getId(), 1);
+				vocab.addL(s.lastLabel(index+1).getId(), 1);
+				s.merge(index, true);
+			}
+		}
+	}
+
+	private String write(Corpus corpus, int iteration) throws IOException {
+		List<Sentence> sents = corpus.getSentences();
+		mergeAtRandom(sents, corpus.getVocabulary());
+		String file = new File(this.folder.getRoot(), "checkpoint.bin").getPath();
+		Checkpoint.snapshot(sents, corpus.getVocabulary(), Checkpoint.hash(sents), true, false, THRESHOLD, iteration).write(file);
+		return file;
+	}
+
+	@Test
+	public void restoredSentencesHaveTheSameConstituents() throws IOException {
+		String corpusFile = ModelFileTest.corpus(this.folder, "corpus.txt", 300);
+		Corpus merged = new Corpus(corpusFile, true);
+		Checkpoint checkpoint = Checkpoint.read(write(merged, 7));
+		assertEquals(7, checkpoint.getIteration());
+
+		Corpus restored = new Corpus(corpusFile, true);
+		List<Sentence> sents = restored.getSentences();
+		checkpoint.restore(sents, restored.getVocabulary(), Checkpoint.hash(sents), true, false, THRESHOLD);
+		for (int i = 0; i < sents.size(); i++) {
+			Sentence expected = merged.getSentences().get(i);
+			Sentence s = sents.get(i);
+			assertEquals(expected.length(), s.length());
+			for (int c = 0; c < s.length(); c++) {
+				assertEquals(expected.constituentStart(c), s.constituentStart(c));
+				assertEquals(expected.constituentEnd(c), s.constituentEnd(c));
+			}
+		}
+		int labels = merged.getVocabulary().size();
+		assertArrayEquals(Arrays.copyOf(merged.getVocabulary().fCounts(), labels), Arrays.copyOf(restored.getVocabulary().fCounts(), labels));
+		assertArrayEquals(Arrays.copyOf(merged.getVocabulary().lCounts(), labels), Arrays.copyOf(restored.getVocabulary().lCounts(), labels));
+		for (int id = 0; id < labels; id++) {
+			assertEquals(merged.getVocabulary().pref(id), restored.getVocabulary().pref(id), 0);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void otherSettingsAreRejected() throws IOException {
+		String corpusFile = ModelFileTest.corpus(this.folder, "corpus.txt", 50);
+		Checkpoint checkpoint = Checkpoint.read(write(new Corpus(corpusFile, true), 1));
+		Corpus restored = new Corpus(corpusFile, true);
+		List<Sentence> sents = restored.getSentences();
+		checkpoint.restore(sents, restored.getVocabulary(), Checkpoint.hash(sents), true, true, THRESHOLD);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void otherCorpusIsRejected() throws IOException {
+		String corpusFile = ModelFileTest.corpus(this.folder, "corpus.txt", 50);
+		Checkpoint checkpoint = Checkpoint.read(write(new Corpus(corpusFile, true), 1));
+		Corpus other = new Corpus(ModelFileTest.corpus(this.folder, "other.txt", 51), true);
+		List<Sentence> sents = other.getSentences();
+		checkpoint.restore(sents, other.getVocabulary(), Checkpoint.hash(sents), true, false, THRESHOLD);
+	}
+
+	@Test(expected = IOException.class)
+	public void truncatedFileIsRejected() throws IOException {
+		String corpusFile = ModelFileTest.corpus(this.folder, "corpus.txt", 50);
+		String file = write(new Corpus(corpusFile, true), 1);
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(raf.length() - 8);
+		} finally {
+			raf.close();
+		}
+		Checkpoint.read(file);
+	}
+
+}
@@ -0,0 +1,112 @@
+package de.unisaarland.unsuparse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests which CoNLL-U lines are skipped and which columns are read.
+ */
+public class InputFormatTest {
+	private static final String[] CONLLU = {
+		"# sent_id = 1",
+		"# text = Im Haus gibt es Wein.",
+		"1-2\tIm\t_\t_\t_\t_\t_\t_\t_\t_",
+		"1\tIn\tin\tADP\tAPPR\t_\t2\tcase\t_\t_",
+		"2\tdem\tder\tDET\tART\t_\t3\tdet\t_\t_",
+		"3\tHaus\tHaus\tNOUN\tNN\t_\t4\tobl\t_\t_",
+		"4\tgibt\tgeben\tVERB\tVVFIN\t_\t0\troot\t_\t_",
+		"4.1\tgibt\tgeben\tVERB\tVVFIN\t_\t_\t_\t4:conj\t_",
+		"5\tes\tes\tPRON\tPPER\t_\t4\texpl\t_\t_",
+		"6\tWein\tWein\tNOUN\tNN\t_\t4\tobj\t_\t_",
+		"7\t.\t.\tPUNCT\t$.\t_\t4\tpunct\t_\t_",
+	};
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void conlluSkipsCommentsRangesAndEmptyNodes() {
+		InputFormat format = InputFormat.conllu(true, false);
+		assertTrue(format.skip("#"));
+		assertTrue(format.skip("#sent_id"));
+		assertTrue(format.skip("1-2"));
+		assertTrue(format.skip("10-11"));
+		assertTrue(format.skip("4.1"));
+		assertTrue(format.skip("0.1"));
+		assertFalse(format.skip("1"));
+		assertFalse(format.skip("12"));
+	}
+
+	@Test
+	public void plainFormatSkipsNothing() {
+		InputFormat format = InputFormat.plain(true);
+		assertFalse(format.skip("#"));
+		assertFalse(format.skip("1-2"));
+		assertFalse(format.skip("3.5"));
+		assertFalse(format.skip("z.B."));
+	}
+
+	@Test
+	public void formatIsChosenByFileName() {
+		assertTrue(InputFormat.forFile("train.conllu", true).isConllu());
+		assertTrue(InputFormat.forFile("train.conllu.gz", true).isConllu());
+		assertFalse(InputFormat.forFile("train.txt", true).isConllu());
+		assertFalse(InputFormat.forFile("train.txt.gz", false).isConllu());
+	}
+
+	private static String labels(Sentence s) {
+		StringBuilder sb = new StringBuilder();
+		for (int t = 0; t < s.tokens(); t++) {
+			sb.append(t > 0 ? " " : "").append(s.getWord(t)).append('/').append(s.getLabel(t).getText());
+		}
+		return sb.toString();
+	}
+
+	@Test
+	public void readerTakesFormAndUposOrXpos() {
+		Vocabulary vocab = new Vocabulary();
+		vocab.add(Vocabulary.UNKNOWN);
+		for (String tag : new String[] {"ADP", "DET", "NOUN", "VERB", "PRON", "APPR", "ART", "NN", "VVFIN", "PPER"}) {
+			vocab.add(tag);
+		}
+		List<String> lines = Arrays.asList(CONLLU);
+		Sentence upos = new SentenceReader(null, InputFormat.conllu(true, false), vocab).sentence(lines);
+		assertEquals("In/ADP dem/DET Haus/NOUN gibt/VERB es/PRON Wein/NOUN", labels(upos));
+		Sentence xpos = new SentenceReader(null, InputFormat.conllu(true, true), vocab).sentence(lines);
+		assertEquals("In/APPR dem/ART Haus/NN gibt/VVFIN es/PPER Wein/NN", labels(xpos));
+	}
+
+	@Test
+	public void corpusReadsConlluFile() throws IOException {
+		File file = new File(this.folder.getRoot(), "corpus.conllu");
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			for (int i = 0; i < 2; i++) {
+				for (String line : CONLLU) {
+					writer.write(line + "\n");
+				}
+				writer.write("\n");
+			}
+		} finally {
+			writer.close();
+		}
+		Corpus corpus = new Corpus(file.getPath(), true);
+		assertEquals(2, corpus.getSentenceCount());
+		assertEquals(6, corpus.getSentences().get(0).tokens());
+		assertEquals("In/ADP dem/DET Haus/NOUN gibt/VERB es/PRON Wein/NOUN", labels(corpus.getSentences().get(1)));
+	}
+
+}
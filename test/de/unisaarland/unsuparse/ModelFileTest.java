@@ -0,0 +1,94 @@
+package de.unisaarland.unsuparse;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Saves learned models and reads them back: a model read from a file has to write the same file
+ * again and parse like the parser it was saved from.
+ */
+public class ModelFileTest {
+	private static final double THRESHOLD = 0.05;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Writes a generated corpus with POS tags of the given number of sentences.
+	 */
+	static String corpus(TemporaryFolder folder, String name, long sentences) throws IOException {
+		String file = new File(folder.getRoot(), name).getPath();
+		CorpusGenerator generator = new CorpusGenerator(5);
+		generator.setVocabulary(300, 1.0);
+		generator.setLengths("uniform:2:15");
+		generator.write(file, sentences);
+		return file;
+	}
+
+	private String path(String name) {
+		return new File(this.folder.getRoot(), name).getPath();
+	}
+
+	private void roundTrip(String corpusFile, CorpusOptions options) throws IOException {
+		Parser parser = new Parser(corpusFile, 1, options);
+		parser.learn(THRESHOLD);
+		parser.saveModel(path("model.bin"), THRESHOLD);
+
+		ModelFile model = new ModelFile(path("model.bin"));
+		assertEquals(options.usesPos(), model.usesPos());
+		assertEquals(THRESHOLD, model.getThreshold(), 0);
+		Vocabulary learned = parser.getVocabulary();
+		Vocabulary read = model.getVocabulary();
+		assertEquals(learned.size(), read.size());
+		for (int id = 0; id < learned.size(); id++) {
+			assertEquals(learned.getName(id), read.getName(id));
+			assertEquals(id, read.find(learned.getName(id)));
+			assertEquals(learned.getFreq(id), read.getFreq(id), 0);
+			assertEquals(learned.pref(id), read.pref(id), 0);
+		}
+		assertEquals(learned.getSketch() != null, read.getSketch() != null);
+
+		ModelFile.write(path("again.bin"), model.getStatistics(), model.usesPos(), model.getThreshold());
+		assertArrayEquals(Files.readAllBytes(new File(path("model.bin")).toPath()),
+				Files.readAllBytes(new File(path("again.bin")).toPath()));
+
+		parser.parseStream(corpusFile, options.getFormat(), new TreeWriter(path("learned.txt"), false), THRESHOLD);
+		Parser loaded = new Parser(model, 1);
+		loaded.parseStream(corpusFile, options.getFormat(), new TreeWriter(path("loaded.txt"), false), THRESHOLD);
+		assertArrayEquals(Files.readAllBytes(new File(path("learned.txt")).toPath()),
+				Files.readAllBytes(new File(path("loaded.txt")).toPath()));
+		parser.getWorkers().shutdown();
+		loaded.getWorkers().shutdown();
+	}
+
+	@Test
+	public void posModelRoundTrip() throws IOException {
+		String corpusFile = corpus(this.folder, "corpus.txt", 500);
+		roundTrip(corpusFile, new CorpusOptions(corpusFile, true));
+	}
+
+	@Test
+	public void wordModelWithSketchRoundTrip() throws IOException {
+		String corpusFile = corpus(this.folder, "corpus.txt", 500);
+		CorpusOptions options = new CorpusOptions(corpusFile, false);
+		options.setBigramMemory(1 << 14);
+		roundTrip(corpusFile, options);
+		assertNotNull(new ModelFile(path("model.bin")).getVocabulary().getSketch());
+	}
+
+	@Test(expected = IOException.class)
+	public void otherFilesAreRejected() throws IOException {
+		String corpusFile = corpus(this.folder, "corpus.txt", 10);
+		new ModelFile(corpusFile);
+	}
+
+}
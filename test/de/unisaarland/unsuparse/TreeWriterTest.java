@@ -0,0 +1,144 @@
+package de.unisaarland.unsuparse;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Writes trees in the binary span format, reads the file back and compares the trees the spans
+ * describe with the bracketed text of the original trees.
+ */
+public class TreeWriterTest {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static ByteBuffer read(String filename) throws IOException {
+		InputStream in = new FileInputStream(filename);
+		if (filename.endsWith(".gz")) {
+			in = new GZIPInputStream(in);
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			byte[] buffer = new byte[1 << 16];
+			int n;
+			while ((n = in.read(buffer)) > 0) {
+				bytes.write(buffer, 0, n);
+			}
+		} finally {
+			in.close();
+		}
+		return ByteBuffer.wrap(bytes.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Returns the bracketed text of the span next[0] and its descendants, which follow it in preorder.
+	 */
+	private static String brackets(int[] spans, int m, String[] tokens, int[] next) {
+		int k = next[0];
+		next[0] += 1;
+		StringBuilder sb = new StringBuilder("[");
+		int t = spans[2*k];
+		while (t < spans[2*k+1]) {
+			sb.append(' ');
+			if (next[0] < m && spans[2*next[0]] == t) {
+				int child = next[0];
+				sb.append(brackets(spans, m, tokens, next));
+				t = spans[2*child+1];
+			} else {
+				sb.append(tokens[t]);
+				t += 1;
+			}
+		}
+		return sb.append(" ]").toString();
+	}
+
+	/**
+	 * Decodes a span file into the bracketed text of its trees.
+	 */
+	private static List<String> decode(String filename) throws IOException {
+		ByteBuffer buffer = read(filename);
+		assertEquals(0x4e50535055534e55L, buffer.getLong());
+		assertEquals(1, buffer.getInt());
+		List<String> trees = new ArrayList<String>();
+		while (buffer.hasRemaining()) {
+			int n = buffer.getInt();
+			int m = buffer.getInt();
+			int[] offsets = new int[n+1];
+			for (int i = 0; i <= n; i++) {
+				offsets[i] = buffer.getInt();
+			}
+			int[] spans = new int[2*m];
+			for (int i = 0; i < 2*m; i++) {
+				spans[i] = buffer.getInt();
+			}
+			byte[] text = new byte[offsets[n]];
+			buffer.get(text);
+			String[] tokens = new String[n];
+			for (int i = 0; i < n; i++) {
+				tokens[i] = new String(text, offsets[i], offsets[i+1] - offsets[i], UTF8);
+			}
+			assertEquals(0, spans[0]);
+			assertEquals(n, spans[1]);
+			int[] next = {0};
+			trees.add(brackets(spans, m, tokens, next));
+			assertEquals(m, next[0]);
+		}
+		return trees;
+	}
+
+	private void roundTrip(List<ConstituentTree> trees, String name) throws IOException {
+		String file = new File(this.folder.getRoot(), name).getPath();
+		TreeWriter writer = new TreeWriter(file, true);
+		for (ConstituentTree tree : trees) {
+			writer.write(tree);
+		}
+		writer.close();
+		List<String> decoded = decode(file);
+		assertEquals(trees.size(), decoded.size());
+		for (int i = 0; i < trees.size(); i++) {
+			assertEquals(trees.get(i).toString(), decoded.get(i));
+		}
+	}
+
+	@Test
+	public void parsedCorpusRoundTrip() throws IOException {
+		String corpusFile = ModelFileTest.corpus(this.folder, "corpus.txt", 300);
+		Parser parser = new Parser(corpusFile, true);
+		List<ConstituentTree> trees = parser.parseCorpus(0.05, false);
+		roundTrip(trees, "trees.spn");
+		roundTrip(trees, "trees.spn.gz");
+		parser.getWorkers().shutdown();
+	}
+
+	@Test
+	public void multibyteWordsRoundTrip() throws IOException {
+		List<Sentence> sents = CandidateTableTest.sentences(new Vocabulary(), "Jeder Mensch trägt eine Maske", "Größe", "ä ö");
+		Sentence s = sents.get(0);
+		s.merge(3, true); // eine Maske
+		s.merge(0, true); // Jeder Mensch
+		s.merge(1, false); // trägt [eine Maske]
+		List<ConstituentTree> trees = new ArrayList<ConstituentTree>();
+		for (Sentence sentence : sents) {
+			trees.add(sentence.tree());
+		}
+		assertEquals("[ [ Jeder Mensch ] [ trägt [ eine Maske ] ] ]", trees.get(0).toString());
+		roundTrip(trees, "words.spn");
+	}
+
+}